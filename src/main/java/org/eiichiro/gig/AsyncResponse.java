@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eiichiro.bootleg.Response;
+import org.eiichiro.bootleg.WebContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * {@code AsyncResponse} is the Bootleg {@code Response} which is completed 
+ * later by the other thread (the promise of the result of the Web endpoint 
+ * method). The endpoint returns it and the Servlet container thread is 
+ * released with the Servlet 3.0 {@code AsyncContext}; the result is written 
+ * as JSON (or as plain text if it is a {@code String}) on the thread which 
+ * completes it, with the Web context of the request bound (see 
+ * {@link RequestContext}), like this:
+ * <pre>
+ * &#064;Endpoint 
+ * public class Quote {
+ * 
+ *     public AsyncResponse&lt;Price&gt; get() {
+ *         return AsyncResponse.submit(executor, new Callable&lt;Price&gt;() {...});
+ *     }
+ * 
+ * }
+ * </pre>
+ * {@link GigFilter} and the Servlet must be declared with 
+ * <code>'&lt;async-supported&gt;true&lt;/async-supported&gt;'</code>. If the 
+ * request does not support async processing or the response is buffered 
+ * (the endpoint is {@link Cached} or {@link Coalesced}), the container 
+ * thread waits for the completion instead. The request which is not 
+ * completed within the timeout is responded as 
+ * <code>'503 Service Unavailable'</code>.
+ * 
+ * @param <T> The result type.
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class AsyncResponse<T> implements Response {
+	
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	private final long timeout;
+	
+	private final CountDownLatch completed = new CountDownLatch(1);
+	
+	// Set once by the completion or the timeout, whichever comes first.
+	private final AtomicBoolean done = new AtomicBoolean();
+	
+	private String mediaType = "application/json";
+	
+	private volatile T result;
+	
+	private volatile Throwable failure;
+	
+	private volatile Runnable callback;
+	
+	/** Constructs a new {@code AsyncResponse} which times out in 30 seconds. */
+	public AsyncResponse() {
+		this(30, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Constructs a new {@code AsyncResponse} which times out in the specified 
+	 * time.
+	 * 
+	 * @param timeout The timeout.
+	 * @param unit The time unit of the timeout.
+	 */
+	public AsyncResponse(long timeout, TimeUnit unit) {
+		Preconditions.checkArgument(timeout > 0, "Parameter 'timeout' must be greater than [0]");
+		Preconditions.checkNotNull(unit, "Parameter 'unit' must not be [null]");
+		this.timeout = unit.toMillis(timeout);
+	}
+	
+	/**
+	 * Runs the specified {@code Callable} on the specified executor within the 
+	 * Web context of the current thread and returns the {@code AsyncResponse} 
+	 * completed with its result.
+	 * 
+	 * @param <T> The result type.
+	 * @param executor The executor to run the specified {@code Callable} on.
+	 * @param callable The {@code Callable} to be run.
+	 * @return The {@code AsyncResponse} completed with the result of the 
+	 * specified {@code Callable}.
+	 */
+	public static <T> AsyncResponse<T> submit(ExecutorService executor, final Callable<? extends T> callable) {
+		Preconditions.checkNotNull(executor, "Parameter 'executor' must not be [null]");
+		Preconditions.checkNotNull(callable, "Parameter 'callable' must not be [null]");
+		final AsyncResponse<T> response = new AsyncResponse<T>();
+		executor.execute(RequestContext.capture().wrap(new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					response.complete(callable.call());
+				} catch (Throwable e) {
+					response.fail(e);
+				}
+			}
+			
+		}));
+		return response;
+	}
+	
+	/**
+	 * Completes this response with the specified result ({@code null} is 
+	 * responded as <code>'204 No Content'</code>).
+	 * 
+	 * @param result The result of the Web endpoint method.
+	 */
+	public void complete(T result) {
+		this.result = result;
+		completed.countDown();
+		run(callback);
+	}
+	
+	/**
+	 * Completes this response with the specified failure, which is responded 
+	 * as <code>'500 Internal Server Error'</code>.
+	 * 
+	 * @param failure The failure of the Web endpoint method.
+	 */
+	public void fail(Throwable failure) {
+		Preconditions.checkNotNull(failure, "Parameter 'failure' must not be [null]");
+		this.failure = failure;
+		completed.countDown();
+		run(callback);
+	}
+	
+	/**
+	 * Sets the media type of the response.
+	 * 
+	 * @param mediaType The media type of the response.
+	 */
+	@Override
+	public void mediaType(String mediaType) {
+		this.mediaType = mediaType;
+	}
+	
+	/**
+	 * Starts the async processing of the request of the specified 
+	 * {@code WebContext} and writes the result on completion, or waits for 
+	 * the completion if the request cannot be processed asynchronously.
+	 * 
+	 * @param context The {@code WebContext} of the current request.
+	 */
+	@Override
+	public void to(WebContext context) {
+		to(context.request(), context.response());
+	}
+	
+	void to(final HttpServletRequest request, final HttpServletResponse response) {
+		if (!request.isAsyncSupported() || response instanceof BufferedResponse) {
+			try {
+				if (!completed.await(timeout, TimeUnit.MILLISECONDS)) {
+					timeout(response);
+					return;
+				}
+				
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				timeout(response);
+				return;
+			}
+			
+			write(response);
+			return;
+		}
+		
+		final AsyncContext async = request.startAsync(request, response);
+		async.setTimeout(timeout);
+		async.addListener(new AsyncListener() {
+			
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				// The callback which has won completes the request by itself.
+				if (timeout((HttpServletResponse) async.getResponse())) {
+					async.complete();
+				}
+			}
+			
+			@Override
+			public void onStartAsync(AsyncEvent event) throws IOException {}
+			
+			@Override
+			public void onError(AsyncEvent event) throws IOException {
+				done.set(true);
+			}
+			
+			@Override
+			public void onComplete(AsyncEvent event) throws IOException {}
+			
+		});
+		callback = RequestContext.of(request).wrap(new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					write((HttpServletResponse) async.getResponse());
+				} finally {
+					async.complete();
+				}
+			}
+			
+		});
+		
+		// Completed before the callback has been set.
+		if (completed.getCount() == 0) {
+			run(callback);
+		}
+	}
+	
+	private void run(Runnable callback) {
+		if (callback != null && done.compareAndSet(false, true)) {
+			callback.run();
+		}
+	}
+	
+	// Returns whether the timeout has won over the completion.
+	private boolean timeout(HttpServletResponse response) {
+		if (!done.compareAndSet(false, true)) {
+			return false;
+		}
+		
+		try {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		} catch (IOException e) {
+			logger.debug("Failed to respond the timeout", e);
+		}
+		
+		return true;
+	}
+	
+	private void write(HttpServletResponse response) {
+		try {
+			if (failure != null) {
+				logger.error("Async Web endpoint method has failed", failure);
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+				return;
+			}
+			
+			T result = this.result;
+			
+			if (result == null) {
+				response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+				return;
+			}
+			
+			response.setContentType((result instanceof String) ? "text/plain" : mediaType);
+			response.setCharacterEncoding("UTF-8");
+			Writer writer = new UTF8Writer(response.getOutputStream(), BufferPool.shared());
+			
+			try {
+				if (result instanceof String) {
+					writer.write((String) result);
+				} else {
+					JSONEncoder.shared().encode(result, writer);
+				}
+				
+				writer.flush();
+			} finally {
+				writer.close();
+			}
+			
+		} catch (IOException e) {
+			logger.debug("Failed to write the async response", e);
+		}
+	}
+	
+}
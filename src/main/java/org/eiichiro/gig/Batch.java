@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code Batch} serves the batch request: the request which has the paths 
+ * (relative to the context path, with the query string) of the GET 
+ * sub-requests to the Web endpoint methods as the <code>'request'</code> 
+ * parameters, like:
+ * <pre>
+ * POST /context/batch 
+ * request=%2Fuser%2Fget%3Fid%3D1&amp;request=%2Fnews%2Flist
+ * </pre>
+ * The sub-requests are dispatched to {@link GigFilter} in parallel on the 
+ * executor (up to the concurrency limit per batch request), each with the 
+ * request of its own bound to {@code WebFilter}. The sub-request does not 
+ * share the state with the batch request (see {@link BatchRequest}) nor the 
+ * filter chain (the sub-request not served by {@code GigFilter} ends with 
+ * 404), and 
+ * the results are returned in the order of the parameters as the JSON array:
+ * <pre>
+ * [{"request":"/user/get?id=1","status":200,"contentType":"application/json","body":{...}},
+ *  {"request":"/news/list","status":500,"error":"..."}]
+ * </pre>
+ * The body is embedded as is if the content type of the sub-response is 
+ * JSON, or as JSON string otherwise. The failure of a sub-request is reported 
+ * in its item without failing the others. The batch request whose 
+ * sub-request is the batch path or the metrics path is rejected with 400, so 
+ * the batch requests are never nested.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class Batch {
+	
+	/** The parameter name of the sub-request. */
+	public static final String REQUEST = "request";
+	
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	private final GigFilter filter;
+	
+	private final ExecutorService executor;
+	
+	private final int size;
+	
+	private final int concurrency;
+	
+	/**
+	 * Constructs a new {@code Batch} which runs up to 4 sub-requests of a 
+	 * batch request at a time.
+	 * 
+	 * @param filter The {@link GigFilter} to dispatch the sub-requests to.
+	 * @param executor The executor to run the sub-requests on, or 
+	 * {@code null} to run them on the current thread one by one.
+	 * @param size The maximum number of the sub-requests in a batch request.
+	 */
+	public Batch(GigFilter filter, ExecutorService executor, int size) {
+		this(filter, executor, size, 4);
+	}
+	
+	/**
+	 * Constructs a new {@code Batch}.
+	 * 
+	 * @param filter The {@link GigFilter} to dispatch the sub-requests to.
+	 * @param executor The executor to run the sub-requests on, or 
+	 * {@code null} to run them on the current thread one by one.
+	 * @param size The maximum number of the sub-requests in a batch request.
+	 * @param concurrency The maximum number of the sub-requests of a batch 
+	 * request running on the executor at a time.
+	 */
+	public Batch(GigFilter filter, ExecutorService executor, int size, int concurrency) {
+		this.filter = filter;
+		this.executor = executor;
+		this.size = size;
+		this.concurrency = concurrency;
+	}
+	
+	/**
+	 * Serves the specified batch request.
+	 * 
+	 * @param request The batch request.
+	 * @param response The response to the batch request.
+	 * @param chain The filter chain.
+	 * @throws IOException If any I/O error has occurred.
+	 * @throws ServletException If the current thread is interrupted.
+	 */
+	public void execute(HttpServletRequest request, HttpServletResponse response, 
+			FilterChain chain) throws IOException, ServletException {
+		String[] paths = request.getParameterValues(REQUEST);
+		
+		if (paths == null || paths.length > size) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, 
+					"Batch request must have 1 to " + size + " '" + REQUEST + "' parameters");
+			return;
+		}
+		
+		final List<FutureTask<Result>> futures = new ArrayList<FutureTask<Result>>(paths.length);
+		
+		for (String path : paths) {
+			BatchRequest sub = new BatchRequest(request, path);
+			
+			if (filter.reserved(sub)) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, 
+						"Sub-request [" + path + "] must not be batch or metrics request");
+				return;
+			}
+			
+			futures.add(new FutureTask<Result>(call(sub, response)));
+		}
+		
+		if (executor == null) {
+			for (FutureTask<Result> future : futures) {
+				future.run();
+			}
+			
+		} else {
+			// Each worker runs the next sub-request until all of them are run, 
+			// so the batch request occupies the executor up to the concurrency.
+			final AtomicInteger next = new AtomicInteger();
+			Runnable worker = new Runnable() {
+				
+				@Override
+				public void run() {
+					for (int i = next.getAndIncrement(); i < futures.size(); i = next.getAndIncrement()) {
+						futures.get(i).run();
+					}
+				}
+				
+			};
+			
+			try {
+				for (int i = 0; i < Math.min(concurrency, futures.size()); i++) {
+					executor.execute(worker);
+				}
+				
+			} catch (RejectedExecutionException e) {
+				// Runs the rest on the current thread.
+				worker.run();
+			}
+		}
+		
+		response.setContentType("application/json; charset=UTF-8");
+		Writer writer = new UTF8Writer(response.getOutputStream(), BufferPool.shared());
+		
+		try {
+			writer.write('[');
+			
+			for (int i = 0; i < paths.length; i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				
+				Result result;
+				
+				try {
+					result = futures.get(i).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ServletException("Interrupted while waiting for the sub-requests", e);
+				} catch (ExecutionException e) {
+					result = new Result(null, e.getCause());
+				}
+				
+				try {
+					result.writeTo(paths[i], writer);
+				} finally {
+					result.release();
+				}
+			}
+			
+			writer.write(']');
+			writer.flush();
+		} finally {
+			writer.close();
+		}
+	}
+	
+	// The filter chain of the batch request is not shared with the 
+	// sub-requests; The sub-request which is not served by GigFilter ends 
+	// with 404.
+	private Callable<Result> call(final BatchRequest request, final HttpServletResponse response) {
+		return new Callable<Result>() {
+			
+			@Override
+			public Result call() throws Exception {
+				BufferedResponse buffered = new BufferedResponse(response);
+				
+				if (filter.route(request) == null) {
+					buffered.sendError(HttpServletResponse.SC_NOT_FOUND);
+					return new Result(buffered, null);
+				}
+				
+				try {
+					filter.doFilter(request, buffered, new FilterChain() {
+						
+						@Override
+						public void doFilter(ServletRequest request, ServletResponse response) 
+								throws IOException, ServletException {
+							((HttpServletResponse) response).sendError(HttpServletResponse.SC_NOT_FOUND);
+						}
+						
+					});
+					return new Result(buffered, null);
+				} catch (Exception e) {
+					logger.warn("Sub-request [" + request.path() + "] has failed", e);
+					return new Result(null, e);
+				}
+			}
+			
+		};
+	}
+	
+	private static final class Result {
+		
+		private final BufferedResponse response;
+		
+		private final Throwable failure;
+		
+		private Result(BufferedResponse response, Throwable failure) {
+			this.response = response;
+			this.failure = failure;
+		}
+		
+		private void release() {
+			if (response != null) {
+				response.release();
+			}
+		}
+		
+		private void writeTo(String path, Writer writer) throws IOException {
+			writer.write("{\"request\":");
+			JSONEncoder.string(path, writer);
+			writer.write(",\"status\":");
+			
+			if (failure != null) {
+				writer.write("500,\"error\":");
+				JSONEncoder.string(String.valueOf(failure), writer);
+				writer.write('}');
+				return;
+			}
+			
+			JSONEncoder.integer(response.status(), writer);
+			String contentType = response.getContentType();
+			
+			if (contentType != null) {
+				writer.write(",\"contentType\":");
+				JSONEncoder.string(contentType, writer);
+			}
+			
+			byte[] body = response.body();
+			
+			if (body.length > 0) {
+				writer.write(",\"body\":");
+				String string = new String(body, response.getCharacterEncoding());
+				
+				if (contentType != null && contentType.toLowerCase(Locale.ENGLISH).contains("json")) {
+					writer.write(string);
+				} else {
+					JSONEncoder.string(string, writer);
+				}
+			}
+			
+			writer.write('}');
+		}
+		
+	}
+	
+}
@@ -0,0 +1,530 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.security.Principal;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpSession;
+
+import org.eiichiro.reverb.lang.UncheckedException;
+
+/**
+ * {@code BatchRequest} is the GET request to the path (relative to the 
+ * context path, with the query string) of a sub-request in {@link Batch} on 
+ * the batch request. The sub-requests run in parallel on the other threads, 
+ * while the batch request is not thread-safe, so the state of the batch 
+ * request (the headers, the cookies, the attributes, the session and so on) 
+ * is copied on construction (on the thread of the batch request) and the 
+ * sub-request never reads the batch request afterwards. The parameters are 
+ * parsed from the query string, and the attributes set on the sub-request 
+ * are kept apart from the batch request and the other sub-requests. 
+ * The sub-request does not support the async processing, creating the 
+ * session or reading the body.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+class BatchRequest extends HttpServletRequestWrapper {
+	
+	private static final String ENCODING = "UTF-8";
+	
+	private final String path;
+	
+	private final String queryString;
+	
+	private final Map<String, String[]> parameters;
+	
+	private final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+	
+	private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+	
+	private final Cookie[] cookies;
+	
+	private final List<Locale> locales = new ArrayList<Locale>();
+	
+	private final HttpSession session;
+	
+	private final String contextPath;
+	
+	private final String scheme;
+	
+	private final String serverName;
+	
+	private final int serverPort;
+	
+	private final String protocol;
+	
+	private final boolean secure;
+	
+	private final String remoteAddr;
+	
+	private final String remoteHost;
+	
+	private final int remotePort;
+	
+	private final String localName;
+	
+	private final String localAddr;
+	
+	private final int localPort;
+	
+	private final String authType;
+	
+	private final String remoteUser;
+	
+	private final Principal userPrincipal;
+	
+	private final String requestedSessionId;
+	
+	private volatile String characterEncoding;
+	
+	BatchRequest(HttpServletRequest request, String path) {
+		super(request);
+		int query = path.indexOf('?');
+		this.path = (query < 0) ? path : path.substring(0, query);
+		this.queryString = (query < 0) ? null : path.substring(query + 1);
+		this.parameters = Collections.unmodifiableMap(parameters(queryString));
+		
+		for (Enumeration<?> names = request.getAttributeNames(); names != null && names.hasMoreElements();) {
+			String name = (String) names.nextElement();
+			Object value = request.getAttribute(name);
+			
+			if (value != null) {
+				attributes.put(name, value);
+			}
+		}
+		
+		for (Enumeration<?> names = request.getHeaderNames(); names != null && names.hasMoreElements();) {
+			String name = (String) names.nextElement();
+			List<String> values = new ArrayList<String>();
+			
+			for (Enumeration<?> e = request.getHeaders(name); e != null && e.hasMoreElements();) {
+				values.add((String) e.nextElement());
+			}
+			
+			headers.put(name, values);
+		}
+		
+		for (Enumeration<?> e = request.getLocales(); e != null && e.hasMoreElements();) {
+			locales.add((Locale) e.nextElement());
+		}
+		
+		if (locales.isEmpty()) {
+			locales.add(Locale.getDefault());
+		}
+		
+		Cookie[] cookies = request.getCookies();
+		this.cookies = (cookies == null) ? null : cookies.clone();
+		this.session = request.getSession(false);
+		this.contextPath = request.getContextPath();
+		this.scheme = request.getScheme();
+		this.serverName = request.getServerName();
+		this.serverPort = request.getServerPort();
+		this.protocol = request.getProtocol();
+		this.secure = request.isSecure();
+		this.remoteAddr = request.getRemoteAddr();
+		this.remoteHost = request.getRemoteHost();
+		this.remotePort = request.getRemotePort();
+		this.localName = request.getLocalName();
+		this.localAddr = request.getLocalAddr();
+		this.localPort = request.getLocalPort();
+		this.authType = request.getAuthType();
+		this.remoteUser = request.getRemoteUser();
+		this.userPrincipal = request.getUserPrincipal();
+		this.requestedSessionId = request.getRequestedSessionId();
+		this.characterEncoding = request.getCharacterEncoding();
+	}
+	private static Map<String, String[]> parameters(String queryString) {
+		Map<String, List<String>> parameters = new LinkedHashMap<String, List<String>>();
+		
+		if (queryString != null) {
+			for (String parameter : queryString.split("&")) {
+				if (parameter.length() == 0) {
+					continue;
+				}
+				
+				int equals = parameter.indexOf('=');
+				String name = decode((equals < 0) ? parameter : parameter.substring(0, equals));
+				String value = (equals < 0) ? "" : decode(parameter.substring(equals + 1));
+				List<String> values = parameters.get(name);
+				
+				if (values == null) {
+					values = new ArrayList<String>();
+					parameters.put(name, values);
+				}
+				
+				values.add(value);
+			}
+		}
+		
+		Map<String, String[]> map = new LinkedHashMap<String, String[]>();
+		
+		for (Map.Entry<String, List<String>> entry : parameters.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+		}
+		
+		return map;
+	}
+	
+	private static String decode(String string) {
+		try {
+			return URLDecoder.decode(string, ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new UncheckedException(e);
+		}
+	}
+	
+	/**
+	 * Returns the path of the sub-request relative to the context path.
+	 * 
+	 * @return The path of the sub-request relative to the context path.
+	 */
+	String path() {
+		return path;
+	}
+	
+	@Override
+	public String getMethod() {
+		return "GET";
+	}
+	
+	@Override
+	public String getRequestURI() {
+		return getContextPath() + path;
+	}
+	
+	@Override
+	public StringBuffer getRequestURL() {
+		StringBuffer url = new StringBuffer();
+		url.append(getScheme()).append("://").append(getServerName()).append(':').append(getServerPort());
+		return url.append(getRequestURI());
+	}
+	
+	@Override
+	public String getServletPath() {
+		return path;
+	}
+	
+	@Override
+	public String getPathInfo() {
+		return null;
+	}
+	
+	@Override
+	public String getQueryString() {
+		return queryString;
+	}
+	
+	@Override
+	public String getContentType() {
+		return null;
+	}
+	
+	@Override
+	public int getContentLength() {
+		return -1;
+	}
+	
+	@Override
+	public String getParameter(String name) {
+		String[] values = parameters.get(name);
+		return (values == null) ? null : values[0];
+	}
+	
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Map getParameterMap() {
+		return parameters;
+	}
+	
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Enumeration getParameterNames() {
+		return Collections.enumeration(parameters.keySet());
+	}
+	
+	@Override
+	public String[] getParameterValues(String name) {
+		String[] values = parameters.get(name);
+		return (values == null) ? null : values.clone();
+	}
+	
+	@Override
+	public Object getAttribute(String name) {
+		return attributes.get(name);
+	}
+	
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Enumeration getAttributeNames() {
+		return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
+	}
+	
+	@Override
+	public void setAttribute(String name, Object o) {
+		if (o == null) {
+			removeAttribute(name);
+			return;
+		}
+		
+		attributes.put(name, o);
+	}
+	
+	@Override
+	public void removeAttribute(String name) {
+		attributes.remove(name);
+	}
+	
+	@Override
+	public String getHeader(String name) {
+		List<String> values = headers.get(name);
+		return (values == null || values.isEmpty()) ? null : values.get(0);
+	}
+	
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Enumeration getHeaders(String name) {
+		List<String> values = headers.get(name);
+		return Collections.enumeration((values == null) ? Collections.<String>emptyList() : values);
+	}
+	
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Enumeration getHeaderNames() {
+		return Collections.enumeration(headers.keySet());
+	}
+	
+	@Override
+	public int getIntHeader(String name) {
+		String value = getHeader(name);
+		return (value == null) ? -1 : Integer.parseInt(value);
+	}
+	
+	@Override
+	public long getDateHeader(String name) {
+		String value = getHeader(name);
+		
+		if (value == null) {
+			return -1;
+		}
+		
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		
+		try {
+			return format.parse(value).getTime();
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Header [" + name + "] is not a date [" + value + "]", e);
+		}
+	}
+	
+	@Override
+	public Cookie[] getCookies() {
+		return (cookies == null) ? null : cookies.clone();
+	}
+	
+	@Override
+	public Locale getLocale() {
+		return locales.get(0);
+	}
+	
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Enumeration getLocales() {
+		return Collections.enumeration(locales);
+	}
+	
+	@Override
+	public HttpSession getSession() {
+		return getSession(true);
+	}
+	
+	@Override
+	public HttpSession getSession(boolean create) {
+		if (session == null && create) {
+			throw new IllegalStateException("Sub-request of batch request cannot create the session");
+		}
+		
+		return session;
+	}
+	
+	@Override
+	public String getRequestedSessionId() {
+		return requestedSessionId;
+	}
+	
+	@Override
+	public boolean isRequestedSessionIdValid() {
+		return session != null && session.getId().equals(requestedSessionId);
+	}
+	
+	@Override
+	public String getContextPath() {
+		return contextPath;
+	}
+	
+	@Override
+	public String getPathTranslated() {
+		return null;
+	}
+	
+	@Override
+	public String getScheme() {
+		return scheme;
+	}
+	
+	@Override
+	public String getServerName() {
+		return serverName;
+	}
+	
+	@Override
+	public int getServerPort() {
+		return serverPort;
+	}
+	
+	@Override
+	public String getProtocol() {
+		return protocol;
+	}
+	
+	@Override
+	public boolean isSecure() {
+		return secure;
+	}
+	
+	@Override
+	public String getRemoteAddr() {
+		return remoteAddr;
+	}
+	
+	@Override
+	public String getRemoteHost() {
+		return remoteHost;
+	}
+	
+	@Override
+	public int getRemotePort() {
+		return remotePort;
+	}
+	
+	@Override
+	public String getLocalName() {
+		return localName;
+	}
+	
+	@Override
+	public String getLocalAddr() {
+		return localAddr;
+	}
+	
+	@Override
+	public int getLocalPort() {
+		return localPort;
+	}
+	
+	@Override
+	public String getAuthType() {
+		return authType;
+	}
+	
+	@Override
+	public String getRemoteUser() {
+		return remoteUser;
+	}
+	
+	@Override
+	public Principal getUserPrincipal() {
+		return userPrincipal;
+	}
+	
+	// The roles cannot be copied, so the batch request is read while the 
+	// other sub-requests are excluded.
+	@Override
+	public boolean isUserInRole(String role) {
+		synchronized (getRequest()) {
+			return super.isUserInRole(role);
+		}
+	}
+	
+	@Override
+	public String getCharacterEncoding() {
+		return characterEncoding;
+	}
+	
+	@Override
+	public void setCharacterEncoding(String env) {
+		characterEncoding = env;
+	}
+	
+	@Override
+	public ServletInputStream getInputStream() throws IOException {
+		throw new IllegalStateException("Sub-request of batch request has no body");
+	}
+	
+	@Override
+	public BufferedReader getReader() throws IOException {
+		throw new IllegalStateException("Sub-request of batch request has no body");
+	}
+	
+	@Override
+	public boolean isAsyncSupported() {
+		return false;
+	}
+	
+	@Override
+	public boolean isAsyncStarted() {
+		return false;
+	}
+	
+	@Override
+	public AsyncContext startAsync() {
+		throw new IllegalStateException("Sub-request of batch request does not support async processing");
+	}
+	
+	@Override
+	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+		throw new IllegalStateException("Sub-request of batch request does not support async processing");
+	}
+	
+	@Override
+	public AsyncContext getAsyncContext() {
+		throw new IllegalStateException("Sub-request of batch request does not support async processing");
+	}
+	
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code BootReport} records where the boot time of Gig application goes: the 
+ * wall time and the allocation (on the startup thread) of each phase, the 
+ * scan time of each classpath entry and the install time of each component.
+ * {@link GigListener} emits the report as a single-line JSON log and sets it 
+ * to the {@code ServletContext} as the attribute
+ * <code>'org.eiichiro.gig.boot'</code>.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class BootReport {
+	
+	/** The number of the slowest component installs to be reported. */
+	public static final int SLOW_INSTALLS = 10;
+	
+	private static final ThreadLocal<BootReport> current = new ThreadLocal<BootReport>();
+	
+	private static final Method allocatedBytes;
+	
+	static {
+		Method method = null;
+		
+		try {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+			
+			if (type.isInstance(bean)
+					&& (Boolean) type.getMethod("isThreadAllocatedMemorySupported").invoke(bean)) {
+				method = type.getMethod("getThreadAllocatedBytes", long.class);
+			}
+			
+		} catch (Throwable e) {
+			// Not supported on this JVM.
+		}
+		
+		allocatedBytes = method;
+	}
+	
+	private final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+	
+	private final Map<String, long[]> running = new ConcurrentHashMap<String, long[]>();
+	
+	private final Map<String, Long> entries = new ConcurrentHashMap<String, Long>();
+	
+	private final Map<String, Long> installs = new ConcurrentHashMap<String, Long>();
+	
+	/**
+	 * Returns the {@code BootReport} bound to the current thread or 
+	 * {@code null} if the current thread is not booting Gig application.
+	 * 
+	 * @return The {@code BootReport} bound to the current thread.
+	 */
+	public static BootReport current() {
+		return current.get();
+	}
+	
+	/**
+	 * Binds the specified {@code BootReport} to the current thread.
+	 * 
+	 * @param report The {@code BootReport} to be bound. {@code null} unbinds.
+	 */
+	public static void current(BootReport report) {
+		if (report == null) {
+			current.remove();
+		} else {
+			current.set(report);
+		}
+	}
+	
+	/**
+	 * Starts the measurement of the specified phase on the current thread.
+	 * 
+	 * @param phase The phase name.
+	 */
+	public void start(String phase) {
+		running.put(phase, new long[] {System.nanoTime(), allocated()});
+	}
+	
+	/**
+	 * Stops the measurement of the specified phase on the current thread and 
+	 * records the wall time and the allocation.
+	 * 
+	 * @param phase The phase name.
+	 */
+	public void stop(String phase) {
+		long[] start = running.remove(phase);
+		
+		if (start == null) {
+			return;
+		}
+		
+		long bytes = (start[1] < 0) ? -1 : allocated() - start[1];
+		phase(phase, System.nanoTime() - start[0], bytes);
+	}
+	
+	/**
+	 * Records the wall time and the allocation of the specified phase.
+	 * 
+	 * @param phase The phase name.
+	 * @param nanos The wall time in nanoseconds.
+	 * @param bytes The allocated bytes or <code>-1</code> if not measured.
+	 */
+	public synchronized void phase(String phase, long nanos, long bytes) {
+		phases.put(phase, new long[] {nanos, bytes});
+	}
+	
+	/**
+	 * Records the scan time of the specified classpath entry.
+	 * 
+	 * @param entry The classpath entry.
+	 * @param nanos The scan time in nanoseconds.
+	 */
+	public void entry(String entry, long nanos) {
+		entries.put(entry, nanos);
+	}
+	
+	/**
+	 * Records the install time of the specified component.
+	 * 
+	 * @param component The component class.
+	 * @param nanos The install time in nanoseconds.
+	 */
+	public void install(Class<?> component, long nanos) {
+		installs.put(component.getName(), nanos);
+	}
+	
+	/**
+	 * Returns the wall time of the specified phase in nanoseconds or
+	 * <code>-1</code> if it has not been recorded.
+	 * 
+	 * @param phase The phase name.
+	 * @return The wall time of the specified phase in nanoseconds.
+	 */
+	public synchronized long nanos(String phase) {
+		long[] measured = phases.get(phase);
+		return (measured == null) ? -1 : measured[0];
+	}
+	
+	/**
+	 * Returns the allocated bytes of the specified phase on the startup thread 
+	 * or <code>-1</code> if it has not been recorded or measured.
+	 * 
+	 * @param phase The phase name.
+	 * @return The allocated bytes of the specified phase.
+	 */
+	public synchronized long bytes(String phase) {
+		long[] measured = phases.get(phase);
+		return (measured == null) ? -1 : measured[1];
+	}
+	
+	/**
+	 * Returns the scan time of each classpath entry in nanoseconds.
+	 * 
+	 * @return The scan time of each classpath entry in nanoseconds.
+	 */
+	public Map<String, Long> entries() {
+		return Collections.unmodifiableMap(entries);
+	}
+	
+	/**
+	 * Returns the {@link #SLOW_INSTALLS} slowest component installs in 
+	 * nanoseconds, in descending order.
+	 * 
+	 * @return The slowest component installs in nanoseconds.
+	 */
+	public Map<String, Long> slowInstalls() {
+		List<Entry<String, Long>> list = new ArrayList<Entry<String, Long>>(installs.entrySet());
+		Collections.sort(list, new Comparator<Entry<String, Long>>() {
+			
+			@Override
+			public int compare(Entry<String, Long> o1, Entry<String, Long> o2) {
+				return o2.getValue().compareTo(o1.getValue());
+			}
+			
+		});
+		Map<String, Long> slowInstalls = new LinkedHashMap<String, Long>();
+		
+		for (Entry<String, Long> entry : list.subList(0, Math.min(SLOW_INSTALLS, list.size()))) {
+			slowInstalls.put(entry.getKey(), entry.getValue());
+		}
+		
+		return slowInstalls;
+	}
+	
+	/**
+	 * Returns this report as a single-line JSON. The times are in milliseconds.
+	 * 
+	 * @return This report as a single-line JSON.
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder builder = new StringBuilder("{\"phases\":{");
+		boolean first = true;
+		
+		for (Entry<String, long[]> phase : phases.entrySet()) {
+			if (!first) {
+				builder.append(',');
+			}
+			
+			first = false;
+			builder.append(quote(phase.getKey())).append(":{\"ms\":")
+					.append(millis(phase.getValue()[0])).append(",\"bytes\":")
+					.append(phase.getValue()[1]).append('}');
+		}
+		
+		builder.append("},\"entries\":");
+		append(builder, entries());
+		builder.append(",\"slowInstalls\":");
+		append(builder, slowInstalls());
+		return builder.append('}').toString();
+	}
+	
+	private static void append(StringBuilder builder, Map<String, Long> map) {
+		builder.append('{');
+		boolean first = true;
+		
+		for (Entry<String, Long> entry : map.entrySet()) {
+			if (!first) {
+				builder.append(',');
+			}
+			
+			first = false;
+			builder.append(quote(entry.getKey())).append(':').append(millis(entry.getValue()));
+		}
+		
+		builder.append('}');
+	}
+	
+	private static String quote(String string) {
+		return "\"" + string.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+	
+	private static double millis(long nanos) {
+		return (double) TimeUnit.NANOSECONDS.toMicros(nanos) / 1000;
+	}
+	
+	private static long allocated() {
+		if (allocatedBytes == null) {
+			return -1;
+		}
+		
+		try {
+			return (Long) allocatedBytes.invoke(ManagementFactory.getThreadMXBean(),
+					Thread.currentThread().getId());
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+	
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@code BufferPool} is the striped pool of the reusable fixed-size 
+ * {@code ByteBuffer}s used to write the responses. 
+ * The buffers are kept in the slots striped by the thread, and are acquired 
+ * and released with compare-and-set, so the threads rarely contend for the 
+ * same slot. Unlike thread-local buffers, the pooled buffers do not pile up 
+ * with the number of the threads (e.g. virtual threads).
+ * If the stripe of the current thread has no buffer, a new buffer is 
+ * allocated (pool miss) and it is pooled on the release if the stripe has 
+ * a free slot.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class BufferPool {
+	
+	private static final BufferPool SHARED = new BufferPool(
+			Runtime.getRuntime().availableProcessors() * 2, 4, 8192);
+	
+	private final int stripes;
+	
+	private final int slots;
+	
+	private final int capacity;
+	
+	private final AtomicReferenceArray<ByteBuffer> buffers;
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Constructs a new {@code BufferPool}.
+	 * 
+	 * @param stripes The number of the stripes.
+	 * @param slots The number of the slots per stripe.
+	 * @param capacity The capacity of each buffer in bytes.
+	 */
+	public BufferPool(int stripes, int slots, int capacity) {
+		this.stripes = stripes;
+		this.slots = slots;
+		this.capacity = capacity;
+		buffers = new AtomicReferenceArray<ByteBuffer>(stripes * slots);
+	}
+	
+	/**
+	 * Returns the {@code BufferPool} shared in the JVM.
+	 * 
+	 * @return The {@code BufferPool} shared in the JVM.
+	 */
+	public static BufferPool shared() {
+		return SHARED;
+	}
+	
+	/**
+	 * Acquires the cleared buffer from the pool, or allocates a new one if the 
+	 * stripe of the current thread has no buffer.
+	 * 
+	 * @return The cleared buffer.
+	 */
+	public ByteBuffer acquire() {
+		int stripe = stripe();
+		
+		for (int i = stripe; i < stripe + slots; i++) {
+			ByteBuffer buffer = buffers.get(i);
+			
+			if (buffer != null && buffers.compareAndSet(i, buffer, null)) {
+				hits.incrementAndGet();
+				buffer.clear();
+				return buffer;
+			}
+		}
+		
+		misses.incrementAndGet();
+		return ByteBuffer.allocate(capacity);
+	}
+	
+	/**
+	 * Releases the specified buffer to the pool. The buffer must not be used 
+	 * after the release.
+	 * 
+	 * @param buffer The buffer acquired from this pool.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer.capacity() != capacity) {
+			return;
+		}
+		
+		int stripe = stripe();
+		
+		for (int i = stripe; i < stripe + slots; i++) {
+			if (buffers.get(i) == null && buffers.compareAndSet(i, null, buffer)) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the capacity of each buffer in bytes.
+	 * 
+	 * @return The capacity of each buffer in bytes.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns the number of the acquisitions served from the pool.
+	 * 
+	 * @return The number of the pool hits.
+	 */
+	public long hits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of the acquisitions which have allocated a new buffer.
+	 * 
+	 * @return The number of the pool misses.
+	 */
+	public long misses() {
+		return misses.get();
+	}
+	
+	private int stripe() {
+		return (int) (Thread.currentThread().getId() % stripes) * slots;
+	}
+	
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * {@code BufferedResponse} is the {@code HttpServletResponse} which records 
+ * the status, the headers and the body written by the request processing 
+ * pipeline instead of sending them to the client, so the response can be 
+ * inspected, stored and replayed to one or more actual responses later with 
+ * {@link #writeTo(HttpServletResponse)}. The body is kept in the buffers 
+ * acquired from the shared {@link BufferPool}, which are returned to the 
+ * pool with {@link #release()} once the response is no longer replayed.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class BufferedResponse extends HttpServletResponseWrapper {
+	
+	private static final String DEFAULT_ENCODING = "ISO-8859-1";
+	
+	private int status = SC_OK;
+	
+	private String message;
+	
+	private String location;
+	
+	private boolean error;
+	
+	private final List<String[]> headers = new ArrayList<String[]>();
+	
+	private final List<Cookie> cookies = new ArrayList<Cookie>();
+	
+	private String contentType;
+	
+	private String characterEncoding;
+	
+	private final List<ByteBuffer> body = new ArrayList<ByteBuffer>();
+	
+	private int size;
+	
+	private final OutputStream sink = new OutputStream() {
+		
+		@Override
+		public void write(int b) throws IOException {
+			buffer().put((byte) b);
+			size++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				ByteBuffer buffer = buffer();
+				int length = Math.min(len, buffer.remaining());
+				buffer.put(b, off, length);
+				off += length;
+				len -= length;
+				size += length;
+			}
+		}
+		
+	};
+	
+	private ServletOutputStream outputStream;
+	
+	private PrintWriter writer;
+	
+	/**
+	 * Constructs a new {@code BufferedResponse} on the specified 
+	 * {@code HttpServletResponse}. The specified response is used only to 
+	 * encode URLs and to get the locale.
+	 * 
+	 * @param response The actual {@code HttpServletResponse}.
+	 */
+	public BufferedResponse(HttpServletResponse response) {
+		super(response);
+	}
+	
+	/**
+	 * Returns the status code.
+	 * 
+	 * @return The status code.
+	 */
+	public int status() {
+		return status;
+	}
+	
+	/**
+	 * Returns the value of the specified header or {@code null} if it has not 
+	 * been set.
+	 * 
+	 * @param name The header name.
+	 * @return The value of the specified header.
+	 */
+	public String header(String name) {
+		for (String[] header : headers) {
+			if (header[0].equalsIgnoreCase(name)) {
+				return header[1];
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Returns the cookies added.
+	 * 
+	 * @return The cookies added.
+	 */
+	public List<Cookie> cookies() {
+		return Collections.unmodifiableList(cookies);
+	}
+	
+	/**
+	 * Returns whether the response sets the cookies (with 
+	 * {@link #addCookie(Cookie)} or the <code>'Set-Cookie'</code> header), 
+	 * which must not be shared with the other users.
+	 * 
+	 * @return Whether the response sets the cookies.
+	 */
+	public boolean setsCookies() {
+		return !cookies.isEmpty() || header("Set-Cookie") != null;
+	}
+	
+	/**
+	 * Returns the body written so far.
+	 * 
+	 * @return The body written so far.
+	 */
+	public byte[] body() {
+		if (writer != null) {
+			writer.flush();
+		}
+		
+		byte[] bytes = new byte[size];
+		int position = 0;
+		
+		for (ByteBuffer buffer : body) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset(), bytes, position, buffer.position());
+			position += buffer.position();
+		}
+		
+		return bytes;
+	}
+	
+	/**
+	 * Returns the buffers of the body to the {@link BufferPool}. This 
+	 * response must not be written or replayed after the release.
+	 */
+	public void release() {
+		for (ByteBuffer buffer : body) {
+			BufferPool.shared().release(buffer);
+		}
+		
+		body.clear();
+		size = 0;
+	}
+	
+	/**
+	 * Writes the status, the headers and the body recorded to the specified 
+	 * {@code HttpServletResponse}.
+	 * 
+	 * @param response The {@code HttpServletResponse} to be written.
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	public void writeTo(HttpServletResponse response) throws IOException {
+		writeHeaders(response);
+		
+		if (location != null) {
+			response.sendRedirect(location);
+		} else if (error) {
+			if (message == null) {
+				response.sendError(status);
+			} else {
+				response.sendError(status, message);
+			}
+			
+		} else {
+			if (writer != null) {
+				writer.flush();
+			}
+			
+			response.setStatus(status);
+			response.setContentLength(size);
+			OutputStream out = response.getOutputStream();
+			
+			for (ByteBuffer buffer : body) {
+				out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+			}
+			
+		}
+	}
+	
+	/**
+	 * Writes the headers (including the content type and the cookies) 
+	 * recorded to the specified {@code HttpServletResponse}.
+	 * 
+	 * @param response The {@code HttpServletResponse} to be written.
+	 */
+	public void writeHeaders(HttpServletResponse response) {
+		for (String[] header : headers) {
+			response.addHeader(header[0], header[1]);
+		}
+		
+		for (Cookie cookie : cookies) {
+			response.addCookie(cookie);
+		}
+		
+		if (contentType != null) {
+			response.setContentType(contentType);
+		}
+		
+		if (characterEncoding != null) {
+			response.setCharacterEncoding(characterEncoding);
+		}
+	}
+	
+	@Override
+	public void setStatus(int sc) {
+		status = sc;
+	}
+	
+	@SuppressWarnings("deprecation")
+	@Override
+	public void setStatus(int sc, String sm) {
+		status = sc;
+	}
+	
+	@Override
+	public void sendError(int sc) throws IOException {
+		sendError(sc, null);
+	}
+	
+	@Override
+	public void sendError(int sc, String msg) throws IOException {
+		status = sc;
+		message = msg;
+		error = true;
+	}
+	
+	@Override
+	public void sendRedirect(String location) throws IOException {
+		status = SC_FOUND;
+		this.location = location;
+	}
+	
+	@Override
+	public void addCookie(Cookie cookie) {
+		cookies.add(cookie);
+	}
+	
+	@Override
+	public boolean containsHeader(String name) {
+		return header(name) != null;
+	}
+	
+	@Override
+	public void setHeader(String name, String value) {
+		for (Iterator<String[]> iterator = headers.iterator(); iterator.hasNext();) {
+			if (iterator.next()[0].equalsIgnoreCase(name)) {
+				iterator.remove();
+			}
+		}
+		
+		addHeader(name, value);
+	}
+	
+	@Override
+	public void addHeader(String name, String value) {
+		headers.add(new String[] {name, value});
+	}
+	
+	@Override
+	public void setIntHeader(String name, int value) {
+		setHeader(name, String.valueOf(value));
+	}
+	
+	@Override
+	public void addIntHeader(String name, int value) {
+		addHeader(name, String.valueOf(value));
+	}
+	
+	@Override
+	public void setDateHeader(String name, long date) {
+		setHeader(name, date(date));
+	}
+	
+	@Override
+	public void addDateHeader(String name, long date) {
+		addHeader(name, date(date));
+	}
+	
+	@Override
+	public void setContentType(String type) {
+		contentType = type;
+		int charset = (type == null) ? -1 : type.toLowerCase(Locale.ENGLISH).indexOf("charset=");
+		
+		if (charset >= 0) {
+			characterEncoding = type.substring(charset + "charset=".length()).trim();
+		}
+	}
+	
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+	
+	@Override
+	public void setCharacterEncoding(String charset) {
+		characterEncoding = charset;
+	}
+	
+	@Override
+	public String getCharacterEncoding() {
+		return (characterEncoding == null) ? DEFAULT_ENCODING : characterEncoding;
+	}
+	
+	@Override
+	public void setContentLength(int len) {}
+	
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (writer != null) {
+			throw new IllegalStateException("getWriter() has already been called");
+		}
+		
+		if (outputStream == null) {
+			outputStream = new ServletOutputStream() {
+				
+				@Override
+				public void write(int b) throws IOException {
+					sink.write(b);
+				}
+				
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					sink.write(b, off, len);
+				}
+				
+			};
+		}
+		
+		return outputStream;
+	}
+	
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (outputStream != null) {
+			throw new IllegalStateException("getOutputStream() has already been called");
+		}
+		
+		if (writer == null) {
+			writer = new PrintWriter(new OutputStreamWriter(sink, getCharacterEncoding()));
+		}
+		
+		return writer;
+	}
+	
+	@Override
+	public void flushBuffer() throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+	
+	@Override
+	public boolean isCommitted() {
+		return false;
+	}
+	
+	@Override
+	public void reset() {
+		status = SC_OK;
+		message = null;
+		location = null;
+		error = false;
+		headers.clear();
+		cookies.clear();
+		contentType = null;
+		characterEncoding = null;
+		resetBuffer();
+	}
+	
+	@Override
+	public void resetBuffer() {
+		if (writer != null) {
+			writer.flush();
+		}
+		
+		release();
+	}
+	
+	private ByteBuffer buffer() {
+		ByteBuffer buffer = body.isEmpty() ? null : body.get(body.size() - 1);
+		
+		if (buffer == null || !buffer.hasRemaining()) {
+			buffer = BufferPool.shared().acquire();
+			body.add(buffer);
+		}
+		
+		return buffer;
+	}
+	
+	private static String date(long date) {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(date));
+	}
+	
+}
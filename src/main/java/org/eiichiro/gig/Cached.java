@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * {@code Cached} declares that the responses of the GET requests to the Web 
+ * endpoint method (or all the methods of the Web endpoint class) are cached 
+ * by {@link GigFilter} for the specified time to live. The cached responses 
+ * are keyed by the request path, the request parameters and the values of 
+ * the request headers specified as {@code vary} (which are sent as 
+ * <code>'Vary'</code> header), and served with <code>'ETag'</code> header 
+ * (or as <code>'304 Not Modified'</code> to the conditional GET) without 
+ * instantiating the Web endpoint. The responses which set the cookies are 
+ * not cached.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Cached {
+	
+	/** The time to live of the cached response in seconds. */
+	int ttl() default 60;
+	
+	/** The names of the request headers the response varies by. */
+	String[] vary() default {};
+	
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code ClassFile} is a lightweight class file reader to read the access 
+ * flags, the super class and the annotation tables out of the class file 
+ * without loading it or building any bytecode model.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public final class ClassFile {
+	
+	private static final int MAGIC = 0xCAFEBABE;
+	
+	private static final int ACC_SUPER = 0x0020;
+	
+	private final String name;
+	
+	private final String superclass;
+	
+	private final int modifiers;
+	
+	private final List<String> visibleAnnotations;
+	
+	private final List<String> invisibleAnnotations;
+	
+	private ClassFile(String name, String superclass, int modifiers,
+			List<String> visibleAnnotations, List<String> invisibleAnnotations) {
+		this.name = name;
+		this.superclass = superclass;
+		this.modifiers = modifiers;
+		this.visibleAnnotations = visibleAnnotations;
+		this.invisibleAnnotations = invisibleAnnotations;
+	}
+	
+	/**
+	 * Reads the class file from the specified {@code InputStream}.
+	 * The stream is not closed by this method.
+	 * 
+	 * @param in The {@code InputStream} to read the class file.
+	 * @return The {@code ClassFile} read.
+	 * @throws IOException If the stream could not be read or it is not a 
+	 * class file.
+	 */
+	public static ClassFile read(InputStream in) throws IOException {
+		DataInputStream input = new DataInputStream(in);
+		
+		if (input.readInt() != MAGIC) {
+			throw new IOException("Not a class file");
+		}
+		
+		input.readUnsignedShort();	// minor_version
+		input.readUnsignedShort();	// major_version
+		int count = input.readUnsignedShort();
+		String[] utf8s = new String[count];
+		int[] classes = new int[count];
+		
+		for (int i = 1; i < count; i++) {
+			int tag = input.readUnsignedByte();
+			
+			switch (tag) {
+			case 1:		// Utf8
+				utf8s[i] = input.readUTF();
+				break;
+			case 7:		// Class
+				classes[i] = input.readUnsignedShort();
+				break;
+			case 8:		// String
+			case 16:	// MethodType
+			case 19:	// Module
+			case 20:	// Package
+				input.skipBytes(2);
+				break;
+			case 15:	// MethodHandle
+				input.skipBytes(3);
+				break;
+			case 3:		// Integer
+			case 4:		// Float
+			case 9:		// Fieldref
+			case 10:	// Methodref
+			case 11:	// InterfaceMethodref
+			case 12:	// NameAndType
+			case 17:	// Dynamic
+			case 18:	// InvokeDynamic
+				input.skipBytes(4);
+				break;
+			case 5:		// Long
+			case 6:		// Double
+				input.skipBytes(8);
+				i++;
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag [" + tag + "]");
+			}
+		}
+		
+		int modifiers = input.readUnsignedShort() & ~ACC_SUPER;
+		int thisClass = input.readUnsignedShort();
+		int superClass = input.readUnsignedShort();
+		String name = binaryName(utf8s[classes[thisClass]]);
+		String superclass = (superClass == 0) ? null : binaryName(utf8s[classes[superClass]]);
+		input.skipBytes(input.readUnsignedShort() * 2);	// interfaces
+		skipMembers(input);	// fields
+		skipMembers(input);	// methods
+		List<String> visibleAnnotations = Collections.emptyList();
+		List<String> invisibleAnnotations = Collections.emptyList();
+		
+		for (int i = input.readUnsignedShort(); i > 0; i--) {
+			String attribute = utf8s[input.readUnsignedShort()];
+			int length = input.readInt();
+			
+			if ("RuntimeVisibleAnnotations".equals(attribute)) {
+				visibleAnnotations = annotations(input, utf8s);
+			} else if ("RuntimeInvisibleAnnotations".equals(attribute)) {
+				invisibleAnnotations = annotations(input, utf8s);
+			} else if ("InnerClasses".equals(attribute)) {
+				// The access flags of the nested class are recorded only in
+				// 'InnerClasses' attribute (e.g. 'protected' or 'static').
+				for (int j = input.readUnsignedShort(); j > 0; j--) {
+					int inner = input.readUnsignedShort();
+					input.skipBytes(4);
+					int flags = input.readUnsignedShort();
+					
+					if (inner == thisClass) {
+						modifiers = flags & ~ACC_SUPER;
+					}
+				}
+				
+			} else {
+				input.skipBytes(length);
+			}
+		}
+		
+		return new ClassFile(name, superclass, modifiers,
+				visibleAnnotations, invisibleAnnotations);
+	}
+	
+	private static void skipMembers(DataInputStream input) throws IOException {
+		for (int i = input.readUnsignedShort(); i > 0; i--) {
+			input.skipBytes(6);
+			
+			for (int j = input.readUnsignedShort(); j > 0; j--) {
+				input.skipBytes(2);
+				input.skipBytes(input.readInt());
+			}
+		}
+	}
+	
+	private static List<String> annotations(DataInputStream input, String[] utf8s)
+			throws IOException {
+		int count = input.readUnsignedShort();
+		List<String> annotations = new ArrayList<String>(count);
+		
+		for (int i = 0; i < count; i++) {
+			annotations.add(annotation(input, utf8s));
+		}
+		
+		return annotations;
+	}
+	
+	private static String annotation(DataInputStream input, String[] utf8s)
+			throws IOException {
+		String descriptor = utf8s[input.readUnsignedShort()];
+		
+		for (int i = input.readUnsignedShort(); i > 0; i--) {
+			input.skipBytes(2);
+			skipElementValue(input, utf8s);
+		}
+		
+		return binaryName(descriptor.substring(1, descriptor.length() - 1));
+	}
+	
+	private static void skipElementValue(DataInputStream input, String[] utf8s)
+			throws IOException {
+		int tag = input.readUnsignedByte();
+		
+		switch (tag) {
+		case 'e':
+			input.skipBytes(4);
+			break;
+		case '@':
+			annotation(input, utf8s);
+			break;
+		case '[':
+			for (int i = input.readUnsignedShort(); i > 0; i--) {
+				skipElementValue(input, utf8s);
+			}
+			
+			break;
+		default:
+			input.skipBytes(2);
+			break;
+		}
+	}
+	
+	private static String binaryName(String internalName) {
+		return internalName.replace('/', '.');
+	}
+	
+	/**
+	 * Returns the binary name of this class.
+	 * 
+	 * @return The binary name of this class.
+	 */
+	public String name() {
+		return name;
+	}
+	
+	/**
+	 * Returns the binary name of the super class or {@code null} if this class 
+	 * is {@code java.lang.Object}.
+	 * 
+	 * @return The binary name of the super class.
+	 */
+	public String superclass() {
+		return superclass;
+	}
+	
+	/**
+	 * Returns the modifiers of this class as {@code java.lang.reflect.Modifier} 
+	 * represents. If this class is a nested class, the modifiers declared in 
+	 * the source code are returned.
+	 * 
+	 * @return The modifiers of this class.
+	 */
+	public int modifiers() {
+		return modifiers;
+	}
+	
+	/**
+	 * Returns whether this class is an interface (including annotation type).
+	 * 
+	 * @return Whether this class is an interface.
+	 */
+	public boolean isInterface() {
+		return Modifier.isInterface(modifiers);
+	}
+	
+	/**
+	 * Returns the binary names of the annotation types which are retained at 
+	 * runtime (annotated with {@code @Retention(RUNTIME)}).
+	 * 
+	 * @return The binary names of the runtime-visible annotation types.
+	 */
+	public List<String> visibleAnnotations() {
+		return visibleAnnotations;
+	}
+	
+	/**
+	 * Returns the binary names of all the annotation types recorded in this 
+	 * class file (runtime-visible annotations followed by class-retained 
+	 * ones).
+	 * 
+	 * @return The binary names of all the annotation types.
+	 */
+	public List<String> annotations() {
+		List<String> annotations = new ArrayList<String>(
+				visibleAnnotations.size() + invisibleAnnotations.size());
+		annotations.addAll(visibleAnnotations);
+		annotations.addAll(invisibleAnnotations);
+		return annotations;
+	}
+	
+}
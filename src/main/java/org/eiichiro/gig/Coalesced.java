@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * {@code Coalesced} declares that the concurrent identical GET requests to 
+ * the Web endpoint method (or all the methods of the Web endpoint class) are 
+ * coalesced by {@link GigFilter}: while one request is being processed, the 
+ * other requests with the same request path, request parameters and values 
+ * of the request headers specified as {@code vary} wait for it and the same 
+ * buffered response is written to each of them instead of invoking the Web 
+ * endpoint again. The response which sets the cookies is not shared: the 
+ * waiting requests invoke the Web endpoint themselves. The waiting requests 
+ * also invoke the Web endpoint themselves if the response is not completed 
+ * within the {@code timeout}.
+ * If the Web endpoint method is also annotated with {@link Cached}, the 
+ * requests missing the cache are coalesced by the cache key.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Coalesced {
+	
+	/** The names of the request headers the response varies by. */
+	String[] vary() default {};
+	
+	/** The maximum time in seconds to wait for the coalesced request. */
+	int timeout() default 10;
+	
+}
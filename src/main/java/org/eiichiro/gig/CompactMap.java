@@ -0,0 +1,489 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@code CompactMap} is the compact map of the strings to the byte arrays, 
+ * which keeps the entries in a byte arena (off-heap with the direct buffer) 
+ * rather than as the objects on the heap. 
+ * The keys are UTF-8 encoded and each entry is a record of the key and the 
+ * value appended to the arena, which is indexed with the open-addressed 
+ * (linear probing) table of the hashes and the offsets of the records, so 
+ * the map costs a few bytes per entry in addition to the bytes of the key and 
+ * the value and the garbage collector never traces the entries.
+ * The arena is compacted (and grown or shrunk) when it is full or half of it 
+ * is occupied by the removed records.
+ * All the operations are synchronized and {@link #entrySet()} returns the 
+ * snapshot of the entries.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class CompactMap extends AbstractMap<String, byte[]> implements ConcurrentMap<String, byte[]> {
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private static final int EMPTY = 0;
+	
+	private static final int REMOVED = -1;
+	
+	private static final int HEADER = 8;
+	
+	// The arena of the released map, which is replaced on the next append.
+	private static final ByteBuffer RELEASED = ByteBuffer.allocate(0);
+	
+	private final boolean direct;
+	
+	private final int slots;
+	
+	private final int bytes;
+	
+	private int[] hashes;
+	
+	// The offsets of the records + 1, EMPTY or REMOVED.
+	private int[] offsets;
+	
+	private ByteBuffer arena;
+	
+	private int size;
+	
+	private int removed;
+	
+	private int garbage;
+	
+	/**
+	 * Constructs a new {@code CompactMap} with 16 slots and 1024 bytes of the 
+	 * arena.
+	 * 
+	 * @param direct Whether the arena is allocated off-heap.
+	 */
+	public CompactMap(boolean direct) {
+		this(direct, 16, 1024);
+	}
+	
+	/**
+	 * Constructs a new {@code CompactMap} with the specified initial capacity.
+	 * 
+	 * @param direct Whether the arena is allocated off-heap.
+	 * @param slots The initial number of the slots (power of 2).
+	 * @param bytes The initial size of the arena in bytes.
+	 */
+	public CompactMap(boolean direct, int slots, int bytes) {
+		this.direct = direct;
+		this.slots = Integer.highestOneBit(Math.max(slots, 2) - 1) << 1;
+		this.bytes = bytes;
+		clear();
+	}
+	
+	/**
+	 * Returns the value of the specified key or {@code null} if it is absent.
+	 * 
+	 * @param key The key.
+	 * @return The value of the specified key.
+	 */
+	@Override
+	public synchronized byte[] get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		
+		int index = index((String) key, encode((String) key));
+		return (index < 0) ? null : value(offsets[index] - 1);
+	}
+	
+	/**
+	 * Returns whether the specified key is present.
+	 * 
+	 * @param key The key.
+	 * @return {@code true} if the specified key is present.
+	 */
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return key instanceof String && index((String) key, encode((String) key)) >= 0;
+	}
+	
+	/**
+	 * Puts the specified key and value.
+	 * 
+	 * @param key The key.
+	 * @param value The value.
+	 * @return The previous value of the specified key or {@code null} if it 
+	 * has been absent.
+	 */
+	@Override
+	public synchronized byte[] put(String key, byte[] value) {
+		byte[] k = encode(key);
+		return put(key, k, index(key, k), value);
+	}
+	
+	/**
+	 * Puts the specified key and value if the key is absent.
+	 * 
+	 * @param key The key.
+	 * @param value The value.
+	 * @return The current value of the specified key or {@code null} if it 
+	 * has been absent.
+	 */
+	@Override
+	public synchronized byte[] putIfAbsent(String key, byte[] value) {
+		byte[] k = encode(key);
+		int index = index(key, k);
+		
+		if (index >= 0) {
+			return value(offsets[index] - 1);
+		}
+		
+		return put(key, k, index, value);
+	}
+	
+	/**
+	 * Replaces the value of the specified key if the key is present.
+	 * 
+	 * @param key The key.
+	 * @param value The value.
+	 * @return The previous value of the specified key or {@code null} if it 
+	 * has been absent.
+	 */
+	@Override
+	public synchronized byte[] replace(String key, byte[] value) {
+		byte[] k = encode(key);
+		int index = index(key, k);
+		return (index < 0) ? null : put(key, k, index, value);
+	}
+	
+	/**
+	 * Replaces the value of the specified key if the current value is equal 
+	 * to the specified old value.
+	 * 
+	 * @param key The key.
+	 * @param oldValue The expected current value.
+	 * @param newValue The new value.
+	 * @return {@code true} if the value has been replaced.
+	 */
+	@Override
+	public synchronized boolean replace(String key, byte[] oldValue, byte[] newValue) {
+		byte[] k = encode(key);
+		int index = index(key, k);
+		
+		if (index < 0 || !Arrays.equals(value(offsets[index] - 1), oldValue)) {
+			return false;
+		}
+		
+		put(key, k, index, newValue);
+		return true;
+	}
+	
+	/**
+	 * Removes the specified key.
+	 * 
+	 * @param key The key.
+	 * @return The removed value or {@code null} if it has been absent.
+	 */
+	@Override
+	public synchronized byte[] remove(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		
+		int index = index((String) key, encode((String) key));
+		
+		if (index < 0) {
+			return null;
+		}
+		
+		byte[] value = value(offsets[index] - 1);
+		remove(index);
+		return value;
+	}
+	
+	/**
+	 * Removes the specified key if the current value is equal to the 
+	 * specified value.
+	 * 
+	 * @param key The key.
+	 * @param value The expected current value.
+	 * @return {@code true} if the key has been removed.
+	 */
+	@Override
+	public synchronized boolean remove(Object key, Object value) {
+		if (!(key instanceof String) || !(value instanceof byte[])) {
+			return false;
+		}
+		
+		int index = index((String) key, encode((String) key));
+		
+		if (index < 0 || !Arrays.equals(value(offsets[index] - 1), (byte[]) value)) {
+			return false;
+		}
+		
+		remove(index);
+		return true;
+	}
+	
+	/**
+	 * Returns the number of the entries.
+	 * 
+	 * @return The number of the entries.
+	 */
+	@Override
+	public synchronized int size() {
+		return size;
+	}
+	
+	/** Removes all the entries and releases the arena. */
+	@Override
+	public synchronized void clear() {
+		hashes = new int[slots];
+		offsets = new int[slots];
+		arena = allocate(bytes);
+		size = 0;
+		removed = 0;
+		garbage = 0;
+	}
+	
+	/**
+	 * Removes all the entries and drops the arena without allocating the new 
+	 * one (it is allocated on the next put), e.g. when the owner of this map 
+	 * is discarded.
+	 */
+	public synchronized void release() {
+		hashes = new int[2];
+		offsets = new int[2];
+		arena = RELEASED;
+		size = 0;
+		removed = 0;
+		garbage = 0;
+	}
+	
+	/**
+	 * Returns the snapshot of the entries.
+	 * 
+	 * @return The snapshot of the entries.
+	 */
+	@Override
+	public synchronized Set<Map.Entry<String, byte[]>> entrySet() {
+		Set<Map.Entry<String, byte[]>> entries = new LinkedHashSet<Map.Entry<String, byte[]>>();
+		
+		for (int offset : offsets) {
+			if (offset > 0) {
+				entries.add(new SimpleImmutableEntry<String, byte[]>(key(offset - 1), value(offset - 1)));
+			}
+		}
+		
+		return entries;
+	}
+	
+	/**
+	 * Returns the heap memory used by this map (the index, and the arena if it 
+	 * is not direct) in bytes.
+	 * 
+	 * @return The heap memory used by this map in bytes.
+	 */
+	public synchronized long heap() {
+		return (long) offsets.length * 8 + (direct ? 0 : arena.capacity());
+	}
+	
+	/**
+	 * Returns the off-heap memory used by this map (the direct arena) in bytes.
+	 * 
+	 * @return The off-heap memory used by this map in bytes.
+	 */
+	public synchronized long offHeap() {
+		return direct ? arena.capacity() : 0;
+	}
+	
+	private static byte[] encode(String key) {
+		return key.getBytes(UTF_8);
+	}
+	
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
+	// Returns the index of the slot of the specified key, or -(the index of the 
+	// slot to insert it) - 1 if it is absent.
+	private int index(String key, byte[] k) {
+		int hash = hash(key);
+		int mask = offsets.length - 1;
+		int insertion = -1;
+		
+		for (int i = hash & mask; ; i = (i + 1) & mask) {
+			int offset = offsets[i];
+			
+			if (offset == EMPTY) {
+				return -((insertion < 0) ? i : insertion) - 1;
+			} else if (offset == REMOVED) {
+				if (insertion < 0) {
+					insertion = i;
+				}
+				
+			} else if (hashes[i] == hash && matches(offset - 1, k)) {
+				return i;
+			}
+		}
+	}
+	
+	private boolean matches(int offset, byte[] key) {
+		if (arena.getInt(offset) != key.length) {
+			return false;
+		}
+		
+		for (int i = 0; i < key.length; i++) {
+			if (arena.get(offset + HEADER + i) != key[i]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private String key(int offset) {
+		byte[] key = new byte[arena.getInt(offset)];
+		read(offset + HEADER, key);
+		return new String(key, UTF_8);
+	}
+	
+	private byte[] value(int offset) {
+		byte[] value = new byte[arena.getInt(offset + 4)];
+		read(offset + HEADER + arena.getInt(offset), value);
+		return value;
+	}
+	
+	private void read(int offset, byte[] bytes) {
+		ByteBuffer buffer = arena.duplicate();
+		buffer.position(offset);
+		buffer.get(bytes);
+	}
+	
+	private static int length(ByteBuffer arena, int offset) {
+		return HEADER + arena.getInt(offset) + arena.getInt(offset + 4);
+	}
+	
+	private byte[] put(String key, byte[] k, int index, byte[] value) {
+		// The arena may be compacted on the append, which moves the records 
+		// but not the slots.
+		int offset = append(k, value);
+		
+		if (index >= 0) {
+			byte[] previous = value(offsets[index] - 1);
+			garbage += length(arena, offsets[index] - 1);
+			offsets[index] = offset + 1;
+			return previous;
+		}
+		
+		index = -index - 1;
+		
+		if (offsets[index] == REMOVED) {
+			removed--;
+		}
+		
+		hashes[index] = hash(key);
+		offsets[index] = offset + 1;
+		size++;
+		
+		if ((size + removed) * 4 >= offsets.length * 3) {
+			rehash((size * 2 >= offsets.length) ? offsets.length * 2 : offsets.length);
+		}
+		
+		return null;
+	}
+	
+	private void remove(int index) {
+		garbage += length(arena, offsets[index] - 1);
+		offsets[index] = REMOVED;
+		size--;
+		removed++;
+		
+		if (garbage > bytes && garbage * 2 > arena.position()) {
+			compact(0);
+		}
+	}
+	
+	private int append(byte[] key, byte[] value) {
+		int length = HEADER + key.length + value.length;
+		
+		if (arena.remaining() < length) {
+			compact(length);
+		}
+		
+		int offset = arena.position();
+		arena.putInt(key.length).putInt(value.length).put(key).put(value);
+		return offset;
+	}
+	
+	// Copies the live records into the new arena large enough to append the 
+	// specified length, which shrinks the arena if it is mostly garbage.
+	private void compact(int length) {
+		int live = arena.position() - garbage + length;
+		int capacity = bytes;
+		
+		while (capacity < live * 2 && capacity < Integer.MAX_VALUE / 2) {
+			capacity *= 2;
+		}
+		
+		ByteBuffer compacted = allocate(Math.max(capacity, live));
+		
+		for (int i = 0; i < offsets.length; i++) {
+			if (offsets[i] > 0) {
+				int offset = offsets[i] - 1;
+				int position = compacted.position();
+				ByteBuffer record = arena.duplicate();
+				record.limit(offset + length(arena, offset)).position(offset);
+				compacted.put(record);
+				offsets[i] = position + 1;
+			}
+		}
+		
+		arena = compacted;
+		garbage = 0;
+	}
+	
+	private void rehash(int capacity) {
+		int[] hashes = this.hashes;
+		int[] offsets = this.offsets;
+		this.hashes = new int[capacity];
+		this.offsets = new int[capacity];
+		removed = 0;
+		int mask = capacity - 1;
+		
+		for (int i = 0; i < offsets.length; i++) {
+			if (offsets[i] > 0) {
+				int j = hashes[i] & mask;
+				
+				while (this.offsets[j] != EMPTY) {
+					j = (j + 1) & mask;
+				}
+				
+				this.hashes[j] = hashes[i];
+				this.offsets[j] = offsets[i];
+			}
+		}
+	}
+	
+	private ByteBuffer allocate(int capacity) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+	
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eiichiro.gig.ComponentScanner.Reason;
+import org.eiichiro.reverb.lang.UncheckedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code ComponentIndex} is the on-disk cache of the component scan results 
+ * per classpath entry. Each entry is keyed by the path and fingerprinted by 
+ * the size, the last modified time and the content hash, so the classpath 
+ * entries which have not been changed since the last scan are not scanned 
+ * again on the next boot.
+ * For a jar file, the content hash is calculated only when the last modified 
+ * time has been changed but the size has not. For a directory, the fingerprint 
+ * is calculated from the paths, the sizes and the last modified times of the 
+ * class files under the directory.
+ * The scan results of an entry may depend on the super classes and the 
+ * stereotype annotations in the other entries, so {@link ComponentScanner} 
+ * scans all the entries again when any of them has been changed. The entries 
+ * neither looked up nor put since the index file was read (the entries no 
+ * longer on the classpath) are dropped on {@link #store()}.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ComponentIndex {
+	
+	private static final String HEADER = "# Gig component index 1";
+	
+	private static final String CHARSET = "UTF-8";
+	
+	private static final String ENTRY = "E";
+	
+	private static final String COMPONENT = "C";
+	
+	private static final String SCOPE = "S";
+	
+	private static final String SEPARATOR = "\t";
+	
+	private Logger logger = LoggerFactory.getLogger(getClass());
+	
+	private final File file;
+	
+	private final String scope;
+	
+	private Map<String, Fingerprint> entries;
+	
+	private final Set<String> used = new HashSet<String>();
+	
+	private boolean modified;
+	
+	/**
+	 * Constructs a new {@code ComponentIndex} with the specified index file.
+	 * The file is read at the first lookup and written by {@link #store()}.
+	 * 
+	 * @param file The index file.
+	 */
+	public ComponentIndex(File file) {
+		this(file, "");
+	}
+	
+	/**
+	 * Constructs a new {@code ComponentIndex} with the specified index file and 
+	 * the scope the components are scanned within (typically the string 
+	 * representation of {@link ScanScope}). If the index file has been stored 
+	 * with the different scope, the indexed entries are discarded.
+	 * 
+	 * @param file The index file.
+	 * @param scope The scope the components are scanned within.
+	 */
+	public ComponentIndex(File file, String scope) {
+		this.file = file;
+		this.scope = scope.replace('\n', ' ');
+	}
+	
+	/**
+	 * Returns the components indexed for the specified classpath entry or 
+	 * {@code null} if it has not been indexed or has been changed since it 
+	 * was indexed.
+	 * 
+	 * @param url The classpath entry.
+	 * @return The binary names of the component classes and the reasons why 
+	 * they have been matched.
+	 */
+	public synchronized Map<String, Reason> get(URL url) {
+		used.add(url.toString());
+		Fingerprint indexed = entries().get(url.toString());
+		
+		if (indexed == null) {
+			return null;
+		}
+		
+		File file = ComponentScanner.file(url);
+		
+		if (file == null || !file.exists()) {
+			return null;
+		}
+		
+		try {
+			if (file.isDirectory()) {
+				Fingerprint current = fingerprint(file);
+				return (current.hash.equals(indexed.hash)) ? indexed.components : null;
+			}
+			
+			if (file.length() != indexed.size) {
+				return null;
+			}
+			
+			if (file.lastModified() == indexed.modified) {
+				return indexed.components;
+			}
+			
+			if (hash(file).equals(indexed.hash)) {
+				// Touched but not changed.
+				indexed.modified = file.lastModified();
+				modified = true;
+				return indexed.components;
+			}
+			
+		} catch (IOException e) {
+			logger.warn("Failed to fingerprint classpath entry [" + url + "]", e);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Indexes the components scanned from the specified classpath entry with 
+	 * the current fingerprint of the entry.
+	 * 
+	 * @param url The classpath entry.
+	 * @param components The binary names of the component classes and the 
+	 * reasons why they have been matched.
+	 */
+	public synchronized void put(URL url, Map<String, Reason> components) {
+		File file = ComponentScanner.file(url);
+		
+		if (file == null || !file.exists()) {
+			return;
+		}
+		
+		try {
+			Fingerprint fingerprint = (file.isDirectory()) ? fingerprint(file)
+					: new Fingerprint(file.length(), file.lastModified(), hash(file));
+			fingerprint.components = new HashMap<String, Reason>(components);
+			entries().put(url.toString(), fingerprint);
+			used.add(url.toString());
+			modified = true;
+		} catch (IOException e) {
+			logger.warn("Failed to fingerprint classpath entry [" + url + "]", e);
+		}
+	}
+	
+	/**
+	 * Writes this index to the index file if it has been modified. The entries 
+	 * neither looked up by {@link #get(URL)} nor put by 
+	 * {@link #put(URL, Map)} are dropped.
+	 * The failure is logged and ignored because the index is just a cache.
+	 */
+	public synchronized void store() {
+		if (entries().keySet().retainAll(used)) {
+			modified = true;
+		}
+		
+		if (!modified) {
+			return;
+		}
+		
+		File directory = file.getAbsoluteFile().getParentFile();
+		
+		if (directory != null && !directory.exists()) {
+			directory.mkdirs();
+		}
+		
+		File temporary = new File(file.getPath() + ".tmp");
+		
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(temporary), CHARSET));
+			
+			try {
+				writer.write(HEADER + "\n");
+				writer.write(SCOPE + SEPARATOR + scope + "\n");
+				
+				for (Entry<String, Fingerprint> entry : entries.entrySet()) {
+					Fingerprint fingerprint = entry.getValue();
+					writer.write(ENTRY + SEPARATOR + entry.getKey() + SEPARATOR
+							+ fingerprint.size + SEPARATOR + fingerprint.modified
+							+ SEPARATOR + fingerprint.hash + "\n");
+					
+					for (Entry<String, Reason> component : fingerprint.components.entrySet()) {
+						writer.write(COMPONENT + SEPARATOR + component.getKey()
+								+ SEPARATOR + component.getValue().name() + "\n");
+					}
+				}
+				
+			} finally {
+				writer.close();
+			}
+			
+			if ((file.exists() && !file.delete()) || !temporary.renameTo(file)) {
+				throw new IOException("Failed to replace [" + file + "]");
+			}
+			
+			modified = false;
+			logger.debug("Component index has been stored to [" + file + "]");
+		} catch (IOException e) {
+			logger.warn("Failed to store component index [" + file + "]", e);
+			temporary.delete();
+		}
+	}
+	
+	private Map<String, Fingerprint> entries() {
+		if (entries != null) {
+			return entries;
+		}
+		
+		entries = new HashMap<String, Fingerprint>();
+		
+		if (!file.exists()) {
+			return entries;
+		}
+		
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), CHARSET));
+			
+			try {
+				if (!HEADER.equals(reader.readLine())) {
+					logger.warn("Component index [" + file + "] has unknown format; Ignored");
+					return entries;
+				}
+				
+				if (!(SCOPE + SEPARATOR + scope).equals(reader.readLine())) {
+					logger.debug("Component index [" + file + "] has been stored with different scan scope; Ignored");
+					return entries;
+				}
+				
+				Fingerprint fingerprint = null;
+				String line;
+				
+				while ((line = reader.readLine()) != null) {
+					String[] fields = line.split(SEPARATOR);
+					
+					if (fields[0].equals(ENTRY) && fields.length == 5) {
+						fingerprint = new Fingerprint(Long.parseLong(fields[2]),
+								Long.parseLong(fields[3]), fields[4]);
+						entries.put(fields[1], fingerprint);
+					} else if (fields[0].equals(COMPONENT) && fields.length == 3
+							&& fingerprint != null) {
+						fingerprint.components.put(fields[1], Reason.valueOf(fields[2]));
+					} else {
+						throw new IOException("Malformed line [" + line + "]");
+					}
+				}
+				
+			} finally {
+				reader.close();
+			}
+			
+			logger.debug("Component index has been loaded from [" + file + "]");
+		} catch (Exception e) {
+			logger.warn("Failed to load component index [" + file + "]; Ignored", e);
+			entries.clear();
+		}
+		
+		return entries;
+	}
+	
+	private static Fingerprint fingerprint(File directory) throws IOException {
+		MessageDigest digest = digest();
+		long[] stats = new long[2];
+		fingerprint(directory, "", digest, stats);
+		return new Fingerprint(stats[0], stats[1], hex(digest.digest()));
+	}
+	
+	private static void fingerprint(File directory, String path,
+			MessageDigest digest, long[] stats) throws IOException {
+		File[] files = directory.listFiles();
+		
+		if (files == null) {
+			return;
+		}
+		
+		for (File file : files) {
+			String name = path + "/" + file.getName();
+			
+			if (file.isDirectory()) {
+				fingerprint(file, name, digest, stats);
+			} else if (file.getName().endsWith(".class")) {
+				long length = file.length();
+				long modified = file.lastModified();
+				digest.update((name + ":" + length + ":" + modified + "\n").getBytes(CHARSET));
+				stats[0] += length;
+				stats[1] = Math.max(stats[1], modified);
+			}
+		}
+	}
+	
+	private static String hash(File file) throws IOException {
+		MessageDigest digest = digest();
+		InputStream in = new FileInputStream(file);
+		
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+			
+		} finally {
+			in.close();
+		}
+		
+		return hex(digest.digest());
+	}
+	
+	private static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new UncheckedException(e);
+		}
+	}
+	
+	private static String hex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		
+		for (byte b : bytes) {
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+			builder.append(Character.forDigit(b & 0xF, 16));
+		}
+		
+		return builder.toString();
+	}
+	
+	private static class Fingerprint {
+		
+		private final long size;
+		
+		private long modified;
+		
+		private final String hash;
+		
+		private Map<String, Reason> components = new HashMap<String, Reason>();
+		
+		private Fingerprint(long size, long modified, String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+		
+	}
+	
+}
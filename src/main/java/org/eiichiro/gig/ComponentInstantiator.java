@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.lang.annotation.Annotation;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eiichiro.bootleg.Instantiator;
+import org.eiichiro.jaguar.Container;
+import org.eiichiro.jaguar.Descriptor;
+import org.eiichiro.jaguar.Jaguar;
+import org.eiichiro.jaguar.Stereotype;
+import org.eiichiro.jaguar.scope.Context;
+import org.eiichiro.jaguar.scope.Scope;
+import org.eiichiro.jaguar.scope.Singleton;
+
+/**
+ * {@code ComponentInstantiator} is the {@code Instantiator} which instantiates 
+ * Web endpoint classes with Jaguar, resolving the instantiation plan of each 
+ * class only once:
+ * <ul>
+ * <li>If the class is installed as exactly one component, the 
+ * {@code Descriptor} is cached and the instance is built from it directly, 
+ * so the descriptor lookup is skipped on the subsequent requests.</li>
+ * <li>If the class is annotated with {@code @Singleton}, the instance is 
+ * cached in the per-class slot and returned straight from it.</li>
+ * <li>If the class is annotated with the other scope (directly or through the 
+ * stereotype), the {@code Context} component of the scope is cached and the 
+ * instance already in the current context is returned from it. Jaguar 
+ * instantiates the component only when the current context does not have 
+ * it yet.</li>
+ * <li>Otherwise (e.g. an interface or a class qualified with the deployment), 
+ * the instance is looked up with {@code Jaguar#component(Class)} as before.
+ * </li>
+ * </ul>
+ * The plans are bound to the Jaguar {@code Container} they have been resolved 
+ * on and resolved again after the container is restarted.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ComponentInstantiator implements Instantiator {
+	
+	private final ConcurrentMap<Class<?>, Plan<?>> plans = new ConcurrentHashMap<Class<?>, Plan<?>>();
+	
+	private final Metrics metrics;
+	
+	/** Constructs a new {@code ComponentInstantiator}. */
+	public ComponentInstantiator() {
+		this(null);
+	}
+	
+	/**
+	 * Constructs a new {@code ComponentInstantiator} which records the 
+	 * instantiation time of each class to the specified {@link Metrics}.
+	 * 
+	 * @param metrics The {@link Metrics} to record the instantiation time. 
+	 * {@code null} means no recording.
+	 */
+	public ComponentInstantiator(Metrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Instantiates the specified class with Jaguar through the cached plan.
+	 * 
+	 * @param clazz The class to be instantiated.
+	 * @return The instance of the specified class or {@code null} if the 
+	 * class has not been installed as a component.
+	 */
+	@Override
+	public <T> T instantiate(Class<T> clazz) {
+		if (metrics == null) {
+			return instantiate0(clazz);
+		}
+		
+		long start = System.nanoTime();
+		
+		try {
+			return instantiate0(clazz);
+		} finally {
+			metrics.instantiation(clazz).record(System.nanoTime() - start);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> T instantiate0(Class<T> clazz) {
+		Container container = (Jaguar.running()) ? Jaguar.container() : null;
+		
+		if (container == null) {
+			return Jaguar.component(clazz);
+		}
+		
+		Plan<T> plan = (Plan<T>) plans.get(clazz);
+		
+		if (plan == null || plan.container != container) {
+			plan = plan(container, clazz);
+			
+			if (plan == null) {
+				return Jaguar.component(clazz);
+			}
+			
+			plans.put(clazz, plan);
+		}
+		
+		return plan.instantiate();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> Plan<T> plan(Container container, Class<T> clazz) {
+		List<Descriptor<?>> descriptors = container.components().get(clazz);
+		
+		if (descriptors == null || descriptors.isEmpty()) {
+			// Not installed (yet).
+			return null;
+		}
+		
+		Descriptor<T> descriptor = (descriptors.size() == 1) ? (Descriptor<T>) descriptors.get(0) : null;
+		return new Plan<T>(container, clazz, descriptor, scope(clazz));
+	}
+	
+	private static Class<? extends Annotation> scope(Class<?> clazz) {
+		for (Annotation annotation : clazz.getAnnotations()) {
+			if (annotation.annotationType().isAnnotationPresent(Scope.class)) {
+				return annotation.annotationType();
+			}
+		}
+		
+		for (Annotation annotation : clazz.getAnnotations()) {
+			if (annotation.annotationType().isAnnotationPresent(Stereotype.class)) {
+				for (Annotation a : annotation.annotationType().getAnnotations()) {
+					if (a.annotationType().isAnnotationPresent(Scope.class)) {
+						return a.annotationType();
+					}
+				}
+			}
+		}
+		
+		return null;
+	}
+	
+	private static final class Plan<T> {
+		
+		private final Container container;
+		
+		private final Class<T> clazz;
+		
+		private final Descriptor<T> descriptor;
+		
+		private final Class<? extends Annotation> scope;
+		
+		private final boolean singleton;
+		
+		private volatile T instance;
+		
+		// Context component resolves the current context (e.g. the session of 
+		// the current request) on each access, so the instance can be shared.
+		private volatile Context context;
+		
+		private Plan(Container container, Class<T> clazz, Descriptor<T> descriptor, Class<? extends Annotation> scope) {
+			this.container = container;
+			this.clazz = clazz;
+			this.descriptor = descriptor;
+			this.scope = scope;
+			this.singleton = (scope == Singleton.class);
+		}
+		
+		private T instantiate() {
+			T instance = this.instance;
+			
+			if (instance != null) {
+				return instance;
+			}
+			
+			Context context = this.context;
+			
+			if (context != null) {
+				instance = context.get(descriptor);
+				
+				if (instance != null) {
+					return instance;
+				}
+			}
+			
+			instance = (descriptor == null) ? container.component(clazz) : container.component(descriptor);
+			
+			if (singleton) {
+				// Jaguar returns the same singleton instance, so the race is benign.
+				this.instance = instance;
+			} else if (context == null && scope != null && descriptor != null) {
+				// Jaguar installs the context of the scope on the first use.
+				Descriptor<? extends Context> contextDescriptor = container.contexts().get(scope);
+				
+				if (contextDescriptor != null) {
+					this.context = container.component(contextDescriptor);
+				}
+			}
+			
+			return instance;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,565 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eiichiro.bootleg.annotation.Endpoint;
+import org.eiichiro.jaguar.Builtin;
+import org.eiichiro.jaguar.Component;
+import org.eiichiro.jaguar.Stereotype;
+import org.eiichiro.jaguar.deployment.Deployment;
+import org.eiichiro.jaguar.inject.Binding;
+import org.eiichiro.jaguar.scope.Scope;
+import org.eiichiro.reverb.lang.UncheckedException;
+
+/**
+ * {@code ComponentScanner} scans the component classes from the runtime 
+ * classpath by reading the class files directly (with {@link ClassFile}) 
+ * instead of loading them or building Javassist {@code CtClass}.
+ * Every classpath entry (jar file or directory) is scanned in parallel.
+ * 
+ * The classes are matched with the same rules that Gig has applied to detect 
+ * the components:
+ * <ul>
+ * <li>A public class (including interface and abstract class) annotated with 
+ * {@code @Endpoint}.</li>
+ * <li>A public concrete class not annotated with {@code @Builtin} and extends 
+ * {@code Component}.</li>
+ * <li>A public concrete class not annotated with {@code @Builtin} and 
+ * annotated with the annotation which is qualified with {@code @Stereotype}, 
+ * {@code @Deployment}, {@code @Binding} or {@code @Scope}.</li>
+ * </ul>
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ComponentScanner {
+	
+	private static final String CLASS = ".class";
+	
+	private static final String ENDPOINT = Endpoint.class.getName();
+	
+	private static final String BUILTIN = Builtin.class.getName();
+	
+	private static final String COMPONENT = Component.class.getName();
+	
+	private static final String OBJECT = Object.class.getName();
+	
+	private static final Map<String, Reason> QUALIFIERS = new HashMap<String, Reason>();
+	
+	static {
+		QUALIFIERS.put(Stereotype.class.getName(), Reason.STEREOTYPE);
+		QUALIFIERS.put(Deployment.class.getName(), Reason.DEPLOYMENT);
+		QUALIFIERS.put(Binding.class.getName(), Reason.BINDING);
+		QUALIFIERS.put(Scope.class.getName(), Reason.SCOPE);
+	}
+	
+	/**
+	 * The reason why the class has been matched as a component.
+	 * 
+	 * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static enum Reason {
+		
+		/** Annotated with {@code @Endpoint}. */
+		ENDPOINT, 
+		
+		/** Extends {@code Component}. */
+		COMPONENT, 
+		
+		/** Annotated with the stereotype (qualified with {@code @Stereotype}). */
+		STEREOTYPE, 
+		
+		/** Annotated with the deployment (qualified with {@code @Deployment}). */
+		DEPLOYMENT, 
+		
+		/** Annotated with the binding (qualified with {@code @Binding}). */
+		BINDING, 
+		
+		/** Annotated with the scope (qualified with {@code @Scope}). */
+		SCOPE
+		
+	}
+	
+	private final ClassLoader loader;
+	
+	private final ComponentIndex index;
+	
+	private final ScanScope scope;
+	
+	private final ConcurrentMap<String, ClassFile> classFiles = new ConcurrentHashMap<String, ClassFile>();
+	
+	private final Set<String> missings = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	/**
+	 * Constructs a new {@code ComponentScanner} with the specified 
+	 * {@code ClassLoader}. The super classes and the annotation types of the 
+	 * scanned classes are read through the {@code ClassLoader}.
+	 * 
+	 * @param loader The {@code ClassLoader} to resolve the runtime classpath.
+	 */
+	public ComponentScanner(ClassLoader loader) {
+		this(loader, null);
+	}
+	
+	/**
+	 * Constructs a new {@code ComponentScanner} with the specified 
+	 * {@code ClassLoader} and {@code ComponentIndex}. The classpath entries 
+	 * which have not been changed since the last scan are not scanned but 
+	 * loaded from the {@code ComponentIndex}.
+	 * 
+	 * @param loader The {@code ClassLoader} to resolve the runtime classpath.
+	 * @param index The {@code ComponentIndex} to cache the scan results. 
+	 * {@code null} means no cache.
+	 */
+	public ComponentScanner(ClassLoader loader, ComponentIndex index) {
+		this(loader, index, ScanScope.ALL);
+	}
+	
+	/**
+	 * Constructs a new {@code ComponentScanner} with the specified 
+	 * {@code ClassLoader}, {@code ComponentIndex} and {@code ScanScope}. The 
+	 * classpath entries, the packages and the jar files out of the 
+	 * {@code ScanScope} are pruned before their class files are read.
+	 * 
+	 * @param loader The {@code ClassLoader} to resolve the runtime classpath.
+	 * @param index The {@code ComponentIndex} to cache the scan results. 
+	 * {@code null} means no cache.
+	 * @param scope The {@code ScanScope} to restrict the scan.
+	 */
+	public ComponentScanner(ClassLoader loader, ComponentIndex index, ScanScope scope) {
+		this.loader = loader;
+		this.index = index;
+		this.scope = scope;
+	}
+	
+	/**
+	 * Returns the runtime classpath entries: the URLs of the 
+	 * {@code URLClassLoader}s from the {@code ClassLoader} specified on the 
+	 * construction up to the bootstrap and the entries of
+	 * <code>'java.class.path'</code> system property. The entries under
+	 * <code>'java.home'</code> (Java runtime libraries) are excluded.
+	 * If the {@code ScanScope} specifies the roots, this method returns the 
+	 * roots instead.
+	 * 
+	 * @return The runtime classpath entries.
+	 */
+	public Set<URL> urls() {
+		Set<URL> urls = new LinkedHashSet<URL>();
+		
+		if (!scope.roots().isEmpty()) {
+			for (URL url : scope.roots()) {
+				add(urls, url);
+			}
+			
+			return urls;
+		}
+		
+		for (ClassLoader l = loader; l != null; l = l.getParent()) {
+			if (l instanceof URLClassLoader) {
+				for (URL url : ((URLClassLoader) l).getURLs()) {
+					add(urls, url);
+				}
+			}
+		}
+		
+		String classpath = System.getProperty("java.class.path", "");
+		
+		for (String path : classpath.split(File.pathSeparator)) {
+			if (path.length() > 0) {
+				try {
+					add(urls, new File(path).toURI().toURL());
+				} catch (IOException e) {
+					// Go through.
+				}
+			}
+		}
+		
+		return urls;
+	}
+	
+	private void add(Set<URL> urls, URL url) {
+		File file = file(url);
+		
+		if (file == null) {
+			return;
+		}
+		
+		String home = new File(System.getProperty("java.home", "")).getAbsolutePath();
+		
+		if (file.getAbsolutePath().startsWith(home)) {
+			return;
+		}
+		
+		try {
+			urls.add(file.getAbsoluteFile().toURI().toURL());
+		} catch (IOException e) {
+			// Go through.
+		}
+	}
+	
+	/**
+	 * Scans the component classes from all the runtime classpath entries 
+	 * {@link #urls()} returns, in parallel.
+	 * 
+	 * @return The binary names of the component classes and the reasons why 
+	 * they have been matched.
+	 */
+	public Map<String, Reason> scan() {
+		return scan(urls());
+	}
+	
+	/**
+	 * Scans the component classes from the specified classpath entries. Each 
+	 * entry is scanned on the separated thread. If the {@code ComponentIndex} 
+	 * is specified and none of the entries has been changed since the last 
+	 * scan, the scan results are loaded from the index. Otherwise all the 
+	 * entries are scanned (a component class may extend the class or be 
+	 * annotated with the stereotype in the changed entry) and the index is 
+	 * updated with them.
+	 * The scan time of each entry is recorded to the current 
+	 * {@link BootReport} if any. The jar files skipped by the 
+	 * {@code ScanScope} are not opened.
+	 * 
+	 * @param urls The classpath entries to be scanned.
+	 * @return The binary names of the component classes and the reasons why 
+	 * they have been matched.
+	 */
+	public Map<String, Reason> scan(Set<URL> urls) {
+		Map<String, Reason> components = new HashMap<String, Reason>();
+		Set<URL> accepted = new LinkedHashSet<URL>();
+		boolean changed = false;
+		
+		for (URL url : urls) {
+			if (!scope.accepts(url)) {
+				continue;
+			}
+			
+			accepted.add(url);
+			Map<String, Reason> indexed = (index == null) ? null : index.get(url);
+			
+			if (indexed == null) {
+				changed = true;
+			} else {
+				components.putAll(indexed);
+			}
+		}
+		
+		if (!changed) {
+			if (index != null) {
+				index.store();
+			}
+			
+			return components;
+		}
+		
+		components.clear();
+		int threads = Math.max(1, Math.min(accepted.size(),
+				Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final BootReport report = BootReport.current();
+		
+		try {
+			Map<URL, Future<Map<String, Reason>>> futures = new LinkedHashMap<URL, Future<Map<String, Reason>>>();
+			
+			for (final URL url : accepted) {
+				futures.put(url, executor.submit(new Callable<Map<String, Reason>>() {
+					
+					@Override
+					public Map<String, Reason> call() throws Exception {
+						long start = System.nanoTime();
+						Map<String, Reason> components = scan(url);
+						
+						if (report != null) {
+							report.entry(url.toString(), System.nanoTime() - start);
+						}
+						
+						return components;
+					}
+					
+				}));
+			}
+			
+			for (Entry<URL, Future<Map<String, Reason>>> future : futures.entrySet()) {
+				Map<String, Reason> scanned = future.getValue().get();
+				components.putAll(scanned);
+				
+				if (index != null) {
+					index.put(future.getKey(), scanned);
+				}
+			}
+			
+			if (index != null) {
+				index.store();
+			}
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedException(e);
+		} catch (ExecutionException e) {
+			throw new UncheckedException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		return components;
+	}
+	
+	/**
+	 * Scans the component classes from the specified classpath entry (jar file 
+	 * or directory).
+	 * 
+	 * @param url The classpath entry to be scanned.
+	 * @return The binary names of the component classes and the reasons why 
+	 * they have been matched.
+	 * @throws IOException If the classpath entry could not be read.
+	 */
+	public Map<String, Reason> scan(URL url) throws IOException {
+		Map<String, Reason> components = new HashMap<String, Reason>();
+		File file = file(url);
+		
+		if (file == null || !file.exists()) {
+			return components;
+		}
+		
+		if (file.isDirectory()) {
+			scan(file, "", components);
+			return components;
+		}
+		
+		ZipFile zip = new ZipFile(file);
+		
+		try {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				
+				String name = entry.getName();
+				
+				if (entry.isDirectory() || !name.endsWith(CLASS)
+						|| name.startsWith("META-INF/")) {
+					continue;
+				}
+				
+				int slash = name.lastIndexOf('/');
+				
+				if (!scope.accepts((slash < 0) ? "" : name.substring(0, slash).replace('/', '.'))) {
+					continue;
+				}
+				
+				InputStream in = new BufferedInputStream(zip.getInputStream(entry));
+				
+				try {
+					match(in, components);
+				} finally {
+					in.close();
+				}
+			}
+			
+		} finally {
+			zip.close();
+		}
+		
+		return components;
+	}
+	
+	private void scan(File directory, String pkg, Map<String, Reason> components) throws IOException {
+		File[] files = directory.listFiles();
+		
+		if (files == null) {
+			return;
+		}
+		
+		boolean accepts = scope.accepts(pkg);
+		
+		for (File file : files) {
+			if (file.isDirectory()) {
+				String subpackage = (pkg.length() == 0) ? file.getName() : pkg + "." + file.getName();
+				
+				if (scope.traverses(subpackage)) {
+					scan(file, subpackage, components);
+				}
+				
+			} else if (accepts && file.getName().endsWith(CLASS)) {
+				InputStream in = new BufferedInputStream(new FileInputStream(file));
+				
+				try {
+					match(in, components);
+				} finally {
+					in.close();
+				}
+			}
+		}
+	}
+	
+	private void match(InputStream in, Map<String, Reason> components) {
+		try {
+			ClassFile classFile = ClassFile.read(in);
+			Reason reason = match(classFile);
+			
+			if (reason != null) {
+				components.put(classFile.name(), reason);
+			}
+			
+		} catch (IOException e) {
+			// Ignore the broken class file.
+		}
+	}
+	
+	/**
+	 * Returns whether the specified class file is a component class or not.
+	 * 
+	 * @param classFile The class file to be matched.
+	 * @return Whether the specified class file is a component class or not.
+	 */
+	public boolean matches(ClassFile classFile) {
+		return match(classFile) != null;
+	}
+	
+	/**
+	 * Returns the reason why the specified class file is a component class or 
+	 * {@code null} if it is not a component class.
+	 * 
+	 * @param classFile The class file to be matched.
+	 * @return The reason why the specified class file is a component class.
+	 */
+	public Reason match(ClassFile classFile) {
+		int modifiers = classFile.modifiers();
+		
+		if (!Modifier.isPublic(modifiers)) {
+			return null;
+		}
+		
+		List<String> annotations = classFile.annotations();
+		
+		if (annotations.contains(ENDPOINT)) {
+			return Reason.ENDPOINT;
+		}
+		
+		if (classFile.isInterface() || Modifier.isAbstract(modifiers)
+				|| annotations.contains(BUILTIN)) {
+			return null;
+		}
+		
+		// Javassist fails with the class the super class of which cannot be
+		// resolved, and so does this.
+		String superclass = classFile.superclass();
+		
+		while (superclass != null && !superclass.equals(OBJECT)) {
+			if (superclass.equals(COMPONENT)) {
+				return Reason.COMPONENT;
+			}
+			
+			ClassFile s = classFile(superclass);
+			
+			if (s == null) {
+				return null;
+			}
+			
+			superclass = s.superclass();
+		}
+		
+		for (String annotation : annotations) {
+			ClassFile type = classFile(annotation);
+			
+			if (type == null) {
+				return null;
+			}
+			
+			for (String qualifier : type.visibleAnnotations()) {
+				Reason reason = QUALIFIERS.get(qualifier);
+				
+				if (reason != null) {
+					return reason;
+				}
+			}
+		}
+		
+		return null;
+	}
+	
+	private ClassFile classFile(String name) {
+		ClassFile classFile = classFiles.get(name);
+		
+		if (classFile != null || missings.contains(name)) {
+			return classFile;
+		}
+		
+		InputStream in = loader.getResourceAsStream(name.replace('.', '/') + CLASS);
+		
+		if (in == null) {
+			missings.add(name);
+			return null;
+		}
+		
+		try {
+			classFile = ClassFile.read(new BufferedInputStream(in));
+			classFiles.putIfAbsent(name, classFile);
+			return classFile;
+		} catch (IOException e) {
+			missings.add(name);
+			return null;
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// Go through.
+			}
+		}
+	}
+	
+	static File file(URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+		
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return new File(url.getPath());
+		} catch (IllegalArgumentException e) {
+			return new File(url.getPath());
+		}
+	}
+	
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * {@code ConcurrencyLimiter} is the adaptive limit of the concurrent requests 
+ * in AIMD (additive increase / multiplicative decrease) style. 
+ * The limit grows by 1 per round of the limit's worth of the successful 
+ * requests while the requests are using most of it, and is cut by the backoff 
+ * ratio (at most once per the smoothed latency) when a request fails or its 
+ * latency exceeds the smoothed latency by the tolerance ratio, so the 
+ * concurrency converges to what the Web endpoint can serve without queueing.
+ * The smoothed latency follows every request which has not failed, so the 
+ * limit recovers after the latency of the Web endpoint shifts for good.
+ * The requests over the limit are rejected by {@link #acquire()} instead of 
+ * being queued.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ConcurrencyLimiter {
+	
+	private static final double BACKOFF = 0.9;
+	
+	private static final double TOLERANCE = 2.0;
+	
+	private static final double SMOOTHING = 0.05;
+	
+	private final int min;
+	
+	private final int max;
+	
+	private volatile double limit;
+	
+	private final AtomicInteger inFlight = new AtomicInteger();
+	
+	private final AtomicLong rejections = new AtomicLong();
+	
+	private double latency;
+	
+	private long decreased = System.nanoTime();
+	
+	/**
+	 * Constructs a new {@code ConcurrencyLimiter} with the specified bounds.
+	 * 
+	 * @param initial The initial limit.
+	 * @param min The minimum limit.
+	 * @param max The maximum limit.
+	 */
+	public ConcurrencyLimiter(int initial, int min, int max) {
+		Preconditions.checkArgument(min > 0 && min <= max, 
+				"Parameter 'min' must be in [1, " + max + "] but [" + min + "]");
+		Preconditions.checkArgument(initial >= min && initial <= max, 
+				"Parameter 'initial' must be in [" + min + ", " + max + "] but [" + initial + "]");
+		this.min = min;
+		this.max = max;
+		this.limit = initial;
+	}
+	
+	/**
+	 * Acquires a permit for the request. The caller must call 
+	 * {@link #release(long, boolean)} (or {@link #cancel()}) after the 
+	 * request if the permit has been acquired.
+	 * 
+	 * @return {@code true} if the permit has been acquired, {@code false} if 
+	 * the request has been rejected for the limit.
+	 */
+	public boolean acquire() {
+		for (int current = inFlight.get(); ; current = inFlight.get()) {
+			if (current >= (int) limit) {
+				rejections.incrementAndGet();
+				return false;
+			}
+			
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Releases the permit and adjusts the limit by the result of the request.
+	 * 
+	 * @param nanos The latency of the request in nanoseconds.
+	 * @param dropped {@code true} if the request has failed for the overload 
+	 * (e.g. exception or <code>'5xx'</code> status).
+	 */
+	public void release(long nanos, boolean dropped) {
+		int current = inFlight.getAndDecrement();
+		
+		synchronized (this) {
+			long now = System.nanoTime();
+			
+			if (latency == 0) {
+				latency = nanos;
+			}
+			
+			if (dropped || nanos > latency * TOLERANCE) {
+				if (now - decreased > latency) {
+					limit = Math.max(min, limit * BACKOFF);
+					decreased = now;
+				}
+				
+			} else if (current * 2 >= limit) {
+				limit = Math.min(max, limit + 1 / limit);
+			}
+			
+			// The slow requests are smoothed in as well, so the lasting rise 
+			// of the latency becomes the new baseline instead of backing off 
+			// the limit for good.
+			if (!dropped) {
+				latency += (nanos - latency) * SMOOTHING;
+			}
+		}
+	}
+	
+	/** Releases the permit without adjusting the limit. */
+	public void cancel() {
+		inFlight.decrementAndGet();
+	}
+	
+	/**
+	 * Returns the current limit.
+	 * 
+	 * @return The current limit.
+	 */
+	public int limit() {
+		return (int) limit;
+	}
+	
+	/**
+	 * Returns the number of the requests in flight.
+	 * 
+	 * @return The number of the requests in flight.
+	 */
+	public int inFlight() {
+		return inFlight.get();
+	}
+	
+	/**
+	 * Returns the number of the rejected requests.
+	 * 
+	 * @return The number of the rejected requests.
+	 */
+	public long rejections() {
+		return rejections.get();
+	}
+	
+}
@@ -15,6 +15,8 @@
  */
 package org.eiichiro.gig;
 
+import java.util.concurrent.ExecutorService;
+
 import org.eiichiro.jaguar.Module;
 
 /**
@@ -29,6 +31,12 @@ import org.eiichiro.jaguar.Module;
  *     &lt;param-value&gt;type.of.your.own.CustomGigConfiguration&lt;/param-value&gt;
  * &lt;/context-param&gt;
  * </pre>
+ * Note that {@link #endpoints()}, {@link #executor()}, {@link #shutdown()}, 
+ * {@link #metrics()} and {@link #scanScope()} have been added to this 
+ * interface, so the custom {@code Configuration} which implements this 
+ * interface directly must implement them as well. Extend 
+ * {@link DefaultConfiguration} and override only what you need to inherit 
+ * the default implementations of them.
  * 
  * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
  */
@@ -48,4 +56,42 @@ public interface Configuration extends org.eiichiro.bootleg.Configuration {
 	 */
 	public Module module();
 	
+	/**
+	 * Returns the {@link Endpoints} registry built from the components which 
+	 * the {@code Module} packages.
+	 * 
+	 * @return The {@link Endpoints} registry.
+	 */
+	public Endpoints endpoints();
+
+	/**
+	 * Returns the {@code ExecutorService} for the Web endpoints to run the 
+	 * tasks within the current Web context on the other threads 
+	 * (see {@link ContextExecutor}).
+	 * 
+	 * @return The {@code ExecutorService} for the Web endpoints.
+	 */
+	public ExecutorService executor();
+
+	/**
+	 * Shuts down the {@code ExecutorService} for the Web endpoints if it has 
+	 * been created.
+	 */
+	public void shutdown();
+
+	/**
+	 * Returns the {@link Metrics} registry of Gig application.
+	 * 
+	 * @return The {@link Metrics} registry of Gig application.
+	 */
+	public Metrics metrics();
+
+	/**
+	 * Returns the {@code ScanScope} which restricts the classpath entries, 
+	 * the packages and the jar files to scan the components from.
+	 * 
+	 * @return The {@code ScanScope} which restricts the component scan.
+	 */
+	public ScanScope scanScope();
+
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code ContextExecutor} is the {@code ExecutorService} which runs the tasks 
+ * within the Web context ({@link RequestContext}) of the thread submitting 
+ * them. The Web context is captured on the submission as the immutable 
+ * {@code RequestContext} and bound to the worker thread only while the task 
+ * runs, so the request and the session scoped components resolved in the 
+ * tasks are the same as the ones of the submitting request.
+ * {@link #virtual()} returns the {@code ExecutorService} which starts a new 
+ * virtual thread for each task on Java 21 or later, to run a lot of blocking 
+ * I/O tasks concurrently.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ContextExecutor extends AbstractExecutorService {
+	
+	private final ExecutorService executor;
+	
+	/**
+	 * Constructs a new {@code ContextExecutor} with the specified 
+	 * {@code ExecutorService} to run the tasks.
+	 * 
+	 * @param executor The {@code ExecutorService} to run the tasks.
+	 */
+	public ContextExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * Returns the {@code ExecutorService} which starts a new virtual thread for 
+	 * each task or {@code null} if the Java runtime does not support virtual 
+	 * threads (before Java 21).
+	 * 
+	 * @return The {@code ExecutorService} which starts a new virtual thread for 
+	 * each task.
+	 */
+	public static ExecutorService virtual() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Runs the specified task within the Web context of the current thread.
+	 * 
+	 * @param command The task to be run.
+	 */
+	@Override
+	public void execute(Runnable command) {
+		executor.execute(RequestContext.capture().wrap(command));
+	}
+	
+	/** Shuts down the underlying {@code ExecutorService}. */
+	@Override
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	/**
+	 * Shuts down the underlying {@code ExecutorService} immediately.
+	 * 
+	 * @return The tasks never commenced execution.
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		return executor.shutdownNow();
+	}
+	
+	/**
+	 * Returns whether the underlying {@code ExecutorService} has been shut down.
+	 * 
+	 * @return Whether the underlying {@code ExecutorService} has been shut down.
+	 */
+	@Override
+	public boolean isShutdown() {
+		return executor.isShutdown();
+	}
+	
+	/**
+	 * Returns whether all the tasks have completed following shut down.
+	 * 
+	 * @return Whether all the tasks have completed following shut down.
+	 */
+	@Override
+	public boolean isTerminated() {
+		return executor.isTerminated();
+	}
+	
+	/**
+	 * Blocks until all the tasks have completed after a shutdown request, or 
+	 * the timeout occurs.
+	 * 
+	 * @param timeout The maximum time to wait.
+	 * @param unit The time unit of the timeout argument.
+	 * @return Whether the underlying {@code ExecutorService} has terminated.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+	
+}
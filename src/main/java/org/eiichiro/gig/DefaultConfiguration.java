@@ -15,36 +15,32 @@
  */
 package org.eiichiro.gig;
 
-import static org.eiichiro.jaguar.Jaguar.*;
-
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Modifier;
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javassist.CtClass;
-
-import org.eiichiro.jaguar.Builtin;
-import org.eiichiro.jaguar.Component;
 import org.eiichiro.jaguar.Module;
-import org.eiichiro.jaguar.Stereotype;
-import org.eiichiro.jaguar.deployment.Deployment;
 import org.eiichiro.jaguar.deployment.Production;
-import org.eiichiro.jaguar.inject.Binding;
-import org.eiichiro.jaguar.scope.Scope;
-import org.eiichiro.bootleg.CtClassClassResolver;
 import org.eiichiro.bootleg.Instantiator;
 import org.eiichiro.bootleg.Loader;
-import org.eiichiro.bootleg.annotation.Endpoint;
-import org.eiichiro.reverb.lang.ClassResolver;
 import org.eiichiro.reverb.lang.UncheckedException;
-import org.eiichiro.reverb.lang.ClassResolver.Matcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Sets;
-
 /**
  * {@code DefaultConfiguration} is the default implementation of {@link Configuration}.
  * You can extend this class to declare your own {@code Configuration}.
@@ -54,31 +50,44 @@ import com.google.common.collect.Sets;
 public class DefaultConfiguration extends
 		org.eiichiro.bootleg.DefaultConfiguration implements Configuration {
 
+	/** The system property name to specify the component index file. */
+	public static final String INDEX = "org.eiichiro.gig.index";
+	
+	/** The system property name to defer the component class initialization. */
+	public static final String DEFERRED = "org.eiichiro.gig.deferred";
+
+	/** The system property name to run the tasks of the Web endpoints on virtual threads. */
+	public static final String VIRTUAL = "org.eiichiro.gig.virtual";
+	
+	/** The system property name to specify the maximum number of the worker threads for the Web endpoints. */
+	public static final String THREADS = "org.eiichiro.gig.threads";
+	
+	/** The system property name to specify the capacity of the task queue for the Web endpoints. */
+	public static final String QUEUE = "org.eiichiro.gig.queue";
+
+	/** The system property name to specify the packages to be scanned (comma-separated). */
+	public static final String INCLUDES = "org.eiichiro.gig.includes";
+	
+	/** The system property name to specify the packages not to be scanned (comma-separated). */
+	public static final String EXCLUDES = "org.eiichiro.gig.excludes";
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 	
 	private Module module;
 	
-	private Instantiator instantiator = new Instantiator() {
-
-		@Override
-		public <T> T instantiate(Class<T> clazz) {
-			return component(clazz);
-		}
-		
-	};
+	private Endpoints endpoints;
 	
+	private ExecutorService executor;
+
+	private final Metrics metrics = new Metrics();
+
+	private Instantiator instantiator = new ComponentInstantiator(metrics);
+
 	private Loader loader = new Loader() {
 
 		@Override
 		public Set<Class<?>> load() {
-			return Sets.filter(module().components(), new Predicate<Class<?>>() {
-
-				@Override
-				public boolean apply(Class<?> clazz) {
-					return clazz.isAnnotationPresent(Endpoint.class);
-				}
-				
-			});
+			return endpoints().endpoints();
 		}
 		
 	};
@@ -95,10 +104,16 @@ public class DefaultConfiguration extends
 
 	/**
 	 * Returns the {@code Module} instance.
-	 * Returns {@code org.eiichiro.gig.Module_} (the {@code Module} 
-	 * implementation that the 'modgen' tool generates) if it could be found on 
-	 * the classpath. If it could not be found, this method returns an anonymous 
-	 * {@code Module} instance which scans components from runtime classpath.
+	 * If {@code org.eiichiro.gig.Module_} (the {@code Module} implementation 
+	 * that {@link ModuleProcessor} or the 'modgen' tool generates) could be 
+	 * found on the classpath, this method returns the {@code Module} instance 
+	 * which has the component classes listed by {@code ModuleProcessor} or 
+	 * {@code Module_} itself if no component list has been found. If it could 
+	 * not be found, this method returns an anonymous 
+	 * {@code Module} instance which scans components from runtime classpath 
+	 * with {@link ComponentScanner}. The component classes listed or scanned 
+	 * are loaded with {@link #load(Set, ClassLoader, boolean)} in the mode 
+	 * {@link #deferred()} returns.
 	 * 
 	 * @return The {@code Module} instance.
 	 */
@@ -108,9 +123,18 @@ public class DefaultConfiguration extends
 			return module;
 		}
 		
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		Set<String> names = null;
+		
 		try {
-			module = (Module) Class.forName("org.eiichiro.gig.Module_").newInstance();
-			return module;
+			Class<?> generated = Class.forName("org.eiichiro.gig.Module_");
+			names = ModuleProcessor.components(loader);
+			
+			if (names.isEmpty()) {
+				module = (Module) generated.newInstance();
+				return module;
+			}
+			
 		} catch (ClassNotFoundException e) {
 			// Go through.
 		} catch (Exception e) {
@@ -118,73 +142,19 @@ public class DefaultConfiguration extends
 			throw new UncheckedException(e);
 		}
 		
-		final Set<Class<?>> components = new HashSet<Class<?>>();
+		final Set<Class<?>> components;
 		
 		try {
-			ClassResolver<CtClass> resolver = new CtClassClassResolver();
-			logger.debug("Scanning components from runtime classpath [" + resolver.urls() + "]");
-			Set<CtClass> ctClasses = resolver.resolve(new Matcher<CtClass>() {
-				
-				@Override
-				public boolean matches(CtClass ctClass) {
-					try {
-						int modifiers = ctClass.getModifiers();
-						
-						if (!Modifier.isPublic(modifiers)) {
-							ctClass.detach();
-							return false;
-						}
-						
-						if (ctClass.getAnnotation(Endpoint.class) != null) {
-							return true;
-						}
-						
-						if (ctClass.isInterface() || Modifier.isAbstract(modifiers)
-								|| ctClass.hasAnnotation(Builtin.class)) {
-							ctClass.detach();
-							return false;
-						}
-						
-						CtClass superclass = ctClass.getSuperclass();
-						
-						while (superclass != null) {
-							if (superclass.getName().equals(Component.class.getName())) {
-								return true;
-							}
-							
-							superclass = superclass.getSuperclass();
-						}
-						
-						for (Object object : ctClass.getAnnotations()) {
-							Class<? extends Annotation> annotationType = ((Annotation) object).annotationType();
-							
-							if (annotationType.isAnnotationPresent(Stereotype.class) 
-									|| annotationType.isAnnotationPresent(Deployment.class) 
-									|| annotationType.isAnnotationPresent(Binding.class) 
-									|| annotationType.isAnnotationPresent(Scope.class)) {
-								return true;
-							}
-						}
-						
-					} catch (Exception e) {
-//						e.printStackTrace();
-					}
-					
-					ctClass.detach();
-					return false;
-				}
-			});
-			logger.debug("Slow? Generate module class on ahead with 'modgen' CLI tool to make the spinup faster");
-			
-			for (CtClass ctClass : ctClasses) {
-				try {
-					components.add(Class.forName(ctClass.getName(), true, 
-							Thread.currentThread().getContextClassLoader()));
-				} catch (Exception e) {
-					logger.error("Failed to load component class", e);
-				}
+			if (names == null) {
+				ComponentScanner scanner = new ComponentScanner(loader, index(), scanScope());
+				Set<URL> urls = scanner.urls();
+				logger.debug("Scanning components from runtime classpath [" + urls + "]");
+				names = scanner.scan(urls).keySet();
+				logger.debug("Slow? Generate module class on ahead with ModuleProcessor (put Gig on the javac classpath) "
+						+ "or 'modgen' CLI tool to make the spinup faster");
 			}
 			
+			components = load(names, loader, deferred());
 		} catch (Exception e) {
 			logger.error("Failed to load component classes", e);
 			throw new UncheckedException(e);
@@ -201,6 +171,270 @@ public class DefaultConfiguration extends
 		return module;
 	}
 	
+	/**
+	 * Returns the {@link Endpoints} registry built from the components which 
+	 * {@link #module()} returns. The registry is built once on the first 
+	 * invocation and shared afterwards.
+	 * 
+	 * @return The {@link Endpoints} registry.
+	 */
+	@Override
+	public synchronized Endpoints endpoints() {
+		if (endpoints == null) {
+			endpoints = new Endpoints(module().components());
+		}
+		
+		return endpoints;
+	}
+	
+	/**
+	 * Returns the {@link ContextExecutor} for the Web endpoints. 
+	 * If {@link #virtual()} returns {@code true} and the Java runtime supports 
+	 * virtual threads, each task is run on a new virtual thread. Otherwise, 
+	 * the tasks are run on the daemon thread pool of up to {@link #threads()} 
+	 * threads with the task queue of {@link #queue()} capacity; When the pool 
+	 * is saturated, the task is run on the submitting thread.
+	 * 
+	 * @return The {@link ContextExecutor} for the Web endpoints.
+	 */
+	@Override
+	public synchronized ExecutorService executor() {
+		if (executor != null) {
+			return executor;
+		}
+		
+		ExecutorService virtual = (virtual()) ? ContextExecutor.virtual() : null;
+		
+		if (virtual == null) {
+			if (virtual()) {
+				logger.warn("Virtual threads are not supported on this Java runtime; "
+						+ "Platform threads are used instead");
+			}
+			
+			// The task is run on the submitting thread when all the workers 
+			// are busy and the queue is full, so the submitters are slowed down.
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(threads(), threads(), 
+					60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queue()), new ThreadFactory() {
+				
+				private final AtomicInteger count = new AtomicInteger();
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "gig-worker-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+				
+			}, new ThreadPoolExecutor.CallerRunsPolicy());
+			pool.allowCoreThreadTimeOut(true);
+			executor = new ContextExecutor(pool);
+		} else {
+			executor = new ContextExecutor(virtual);
+		}
+		
+		return executor;
+	}
+	
+	/**
+	 * Shuts down the {@link ContextExecutor} for the Web endpoints if 
+	 * {@link #executor()} has created it. The running tasks are interrupted 
+	 * if they have not completed in 10 seconds.
+	 */
+	@Override
+	public synchronized void shutdown() {
+		if (executor == null) {
+			return;
+		}
+		
+		executor.shutdown();
+		
+		try {
+			if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+				logger.warn("Tasks of Web endpoints have not completed in 10 seconds; Interrupted");
+				executor.shutdownNow();
+			}
+			
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Loads the specified component classes with the specified 
+	 * {@code ClassLoader}. If the initialization is deferred, the classes are 
+	 * loaded in parallel without initialization and the static initializers 
+	 * are run by JVM when Jaguar instantiates the component for the first 
+	 * time (the classes are not initialized in parallel because it could 
+	 * deadlock on the circular initialization). Otherwise, the classes are 
+	 * loaded and initialized one by one on the current thread. The class 
+	 * which failed to be loaded is logged and skipped.
+	 * 
+	 * @param names The binary names of the component classes.
+	 * @param loader The {@code ClassLoader} to load the component classes.
+	 * @param deferred Whether the initialization is deferred or not.
+	 * @return The component classes loaded.
+	 * @throws InterruptedException If the current thread is interrupted.
+	 */
+	public static Set<Class<?>> load(Set<String> names, final ClassLoader loader, 
+			boolean deferred) throws InterruptedException {
+		Logger logger = LoggerFactory.getLogger(DefaultConfiguration.class);
+		Set<Class<?>> classes = new HashSet<Class<?>>();
+		
+		if (!deferred) {
+			for (String name : names) {
+				try {
+					classes.add(Class.forName(name, true, loader));
+				} catch (Exception e) {
+					logger.error("Failed to load component class", e);
+				}
+			}
+			
+			return classes;
+		}
+		
+		if (names.isEmpty()) {
+			return classes;
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, 
+				Math.min(names.size(), Runtime.getRuntime().availableProcessors())));
+		
+		try {
+			List<Future<Class<?>>> futures = new ArrayList<Future<Class<?>>>(names.size());
+			
+			for (final String name : names) {
+				futures.add(executor.submit(new Callable<Class<?>>() {
+					
+					@Override
+					public Class<?> call() throws Exception {
+						return Class.forName(name, false, loader);
+					}
+					
+				}));
+			}
+			
+			for (Future<Class<?>> future : futures) {
+				try {
+					classes.add(future.get());
+				} catch (ExecutionException e) {
+					logger.error("Failed to load component class", e.getCause());
+				}
+			}
+			
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		return classes;
+	}
+	
+	/**
+	 * Returns whether the component classes scanned from the runtime classpath 
+	 * (or listed by {@link ModuleProcessor}) are loaded in parallel without 
+	 * initialization (deferred until Jaguar instantiates the component for the 
+	 * first time) or not. 
+	 * This method returns {@code true} if the system property 
+	 * <code>'org.eiichiro.gig.deferred'</code> is <code>'true'</code>. 
+	 * By default, the component classes are loaded and initialized one by one 
+	 * on the startup thread.
+	 * 
+	 * @return Whether the initialization of the component classes is deferred.
+	 */
+	protected boolean deferred() {
+		return Boolean.getBoolean(DEFERRED);
+	}
+
+	/**
+	 * Returns whether the tasks of the Web endpoints are run on virtual threads 
+	 * (Java 21 or later) or not. 
+	 * This method returns {@code true} if the system property 
+	 * <code>'org.eiichiro.gig.virtual'</code> is <code>'true'</code>.
+	 * 
+	 * @return Whether the tasks of the Web endpoints are run on virtual threads.
+	 */
+	protected boolean virtual() {
+		return Boolean.getBoolean(VIRTUAL);
+	}
+
+	/**
+	 * Returns the maximum number of the worker threads for the Web endpoints 
+	 * (when the virtual threads are not used). 
+	 * This method returns the system property 
+	 * <code>'org.eiichiro.gig.threads'</code> or 8 times the number of the 
+	 * processors if it is not specified.
+	 * 
+	 * @return The maximum number of the worker threads for the Web endpoints.
+	 */
+	protected int threads() {
+		return Integer.getInteger(THREADS, 8 * Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Returns the capacity of the queue of the tasks waiting for the worker 
+	 * threads for the Web endpoints (when the virtual threads are not used). 
+	 * This method returns the system property 
+	 * <code>'org.eiichiro.gig.queue'</code> or 1024 if it is not specified.
+	 * 
+	 * @return The capacity of the task queue for the Web endpoints.
+	 */
+	protected int queue() {
+		return Integer.getInteger(QUEUE, 1024);
+	}
+	
+	/**
+	 * Returns the {@code ComponentIndex} to cache the component scan results 
+	 * across the restarts. 
+	 * This method returns the index on the file specified as the system 
+	 * property <code>'org.eiichiro.gig.index'</code> or {@code null} (the 
+	 * components are scanned on every boot) if it is not specified.
+	 * 
+	 * @return The {@code ComponentIndex} to cache the component scan results.
+	 */
+	protected ComponentIndex index() {
+		String index = System.getProperty(INDEX);
+		return (index == null) ? null : new ComponentIndex(new File(index), scanScope().toString());
+	}
+	
+	/**
+	 * Returns the {@code ScanScope} which restricts the component scan.
+	 * This method returns the {@code ScanScope} which scans the packages 
+	 * specified as the system property <code>'org.eiichiro.gig.includes'</code> 
+	 * (all the packages if not specified) except the packages specified as 
+	 * <code>'org.eiichiro.gig.excludes'</code> on the runtime classpath, and 
+	 * skips the well-known third-party jar files 
+	 * ({@link ScanScope#DEFAULT_SKIPS}).
+	 * 
+	 * @return The {@code ScanScope} which restricts the component scan.
+	 */
+	@Override
+	public ScanScope scanScope() {
+		return new ScanScope(Collections.<URL>emptySet(), packages(INCLUDES),
+				packages(EXCLUDES), ScanScope.DEFAULT_SKIPS);
+	}
+	
+	private static List<String> packages(String property) {
+		List<String> packages = new ArrayList<String>();
+		
+		for (String pkg : System.getProperty(property, "").split(",")) {
+			if (pkg.trim().length() > 0) {
+				packages.add(pkg.trim());
+			}
+		}
+		
+		return packages;
+	}
+
+	/**
+	 * Returns the {@link Metrics} registry of Gig application.
+	 * 
+	 * @return The {@link Metrics} registry of Gig application.
+	 */
+	@Override
+	public Metrics metrics() {
+		return metrics;
+	}
+	
 	/**
 	 * Returns the {@code Instantiator} which instantiates an Web endpoint 
 	 * class with Jaguar.
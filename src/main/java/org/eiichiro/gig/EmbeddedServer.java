@@ -0,0 +1,635 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.eiichiro.jaguar.Jaguar;
+import org.eiichiro.reverb.lang.UncheckedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code EmbeddedServer} is the small NIO-based HTTP/1.1 server which hosts 
+ * the Web endpoints of Gig application without the Servlet container.
+ * It installs the components of the {@link Endpoints} registry the 
+ * {@link Configuration} returns into Jaguar, accepts and parses the requests 
+ * on a single selector thread (with keep-alive and pipelining) and invokes 
+ * the Web endpoint methods the requests are routed to on the executor the 
+ * {@code Configuration} returns. The results are written as JSON with 
+ * {@link JSONEncoder} (or as plain text if the result is a 
+ * {@code String}), and the latencies are recorded to the {@link Metrics}.
+ * The request parameters (the query string and the URL-encoded form body) 
+ * are passed to the Web endpoint methods which take a {@code Map} as the 
+ * only parameter. The Web endpoint methods which take the other parameters 
+ * or use the Web contexts (request and session scopes) need the Servlet 
+ * container, and they are responded as <code>'501 Not Implemented'</code>.
+ * So are the requests other than GET, HEAD (responded without the body) and 
+ * POST, and the requests with {@code Transfer-Encoding}, whose connection is 
+ * closed.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class EmbeddedServer implements Runnable {
+	
+	private static final int MAX_HEADER_SIZE = 8192;
+	
+	private static final int MAX_BODY_SIZE = 1024 * 1024;
+	
+	private static final String ENCODING = "UTF-8";
+	
+	private static final Map<Integer, String> REASONS = new HashMap<Integer, String>();
+	
+	static {
+		REASONS.put(200, "OK");
+		REASONS.put(204, "No Content");
+		REASONS.put(400, "Bad Request");
+		REASONS.put(404, "Not Found");
+		REASONS.put(413, "Request Entity Too Large");
+		REASONS.put(500, "Internal Server Error");
+		REASONS.put(501, "Not Implemented");
+	}
+	
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	private final Configuration configuration;
+	
+	private final InetSocketAddress address;
+	
+	private final Queue<Connection> ready = new ConcurrentLinkedQueue<Connection>();
+	
+	private Endpoints endpoints;
+	
+	private ExecutorService executor;
+	
+	private Selector selector;
+	
+	private ServerSocketChannel server;
+	
+	private Thread thread;
+	
+	private volatile boolean running;
+	
+	/**
+	 * Constructs a new {@code EmbeddedServer}.
+	 * 
+	 * @param configuration The {@link Configuration} of Gig application.
+	 * @param address The address to listen on.
+	 */
+	public EmbeddedServer(Configuration configuration, InetSocketAddress address) {
+		this.configuration = configuration;
+		this.address = address;
+	}
+	
+	/**
+	 * Boots Gig application and starts listening on the address.
+	 * 
+	 * @throws IOException If the server socket cannot be opened.
+	 */
+	public synchronized void start() throws IOException {
+		BootReport report = new BootReport();
+		report.start("total");
+		report.start("bootstrap");
+		Jaguar.bootstrap();
+		report.stop("bootstrap");
+		report.start("module");
+		endpoints = configuration.endpoints();
+		report.stop("module");
+		GigListener.install(endpoints, report);
+		report.start("codec");
+		
+		for (Route route : endpoints.routes()) {
+			JSONEncoder.shared().prepare(route.method().getGenericReturnType());
+		}
+		
+		report.stop("codec");
+		report.start("listen");
+		executor = configuration.executor();
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.configureBlocking(false);
+		server.socket().setReuseAddress(true);
+		server.socket().bind(address);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		running = true;
+		thread = new Thread(this, "gig-server");
+		thread.start();
+		report.stop("listen");
+		report.stop("total");
+		logger.info("Gig boot report " + report);
+		logger.info("Gig embedded server is listening on " + server.socket().getLocalSocketAddress());
+	}
+	
+	/**
+	 * Returns the port the server is listening on.
+	 * 
+	 * @return The port the server is listening on.
+	 */
+	public int port() {
+		return server.socket().getLocalPort();
+	}
+	
+	/** Stops listening and shuts down Gig application. */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		
+		running = false;
+		selector.wakeup();
+		
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		configuration.shutdown();
+		Jaguar.shutdown();
+	}
+	
+	/** Runs the selector loop. */
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				selector.select();
+				
+				for (Connection connection = ready.poll(); connection != null; connection = ready.poll()) {
+					if (connection.key.isValid()) {
+						connection.key.interestOps(SelectionKey.OP_WRITE);
+					}
+				}
+				
+				for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext();) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					
+					try {
+						if (!key.isValid()) {
+							continue;
+						} else if (key.isAcceptable()) {
+							accept();
+						} else if (key.isReadable()) {
+							((Connection) key.attachment()).read();
+						} else if (key.isWritable()) {
+							((Connection) key.attachment()).write();
+						}
+						
+					} catch (IOException e) {
+						logger.debug("Connection has been closed", e);
+						close(key);
+					}
+				}
+			}
+			
+		} catch (IOException e) {
+			logger.error("Gig embedded server has stopped", e);
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				close(key);
+			}
+			
+			try {
+				selector.close();
+			} catch (IOException e) {
+				logger.debug("Failed to close selector", e);
+			}
+		}
+	}
+	
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		
+		if (channel == null) {
+			return;
+		}
+		
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+		key.attach(new Connection(key));
+	}
+	
+	private static void close(SelectionKey key) {
+		key.cancel();
+		
+		try {
+			key.channel().close();
+		} catch (IOException e) {}
+	}
+	
+	/**
+	 * Invokes the Web endpoint method the specified request is routed to and 
+	 * returns the response.
+	 * 
+	 * @param exchange The request.
+	 * @return The HTTP response.
+	 */
+	Reply dispatch(Exchange exchange) {
+		if (!exchange.method.equals("GET") && !exchange.method.equals("HEAD") 
+				&& !exchange.method.equals("POST")) {
+			return response(501, null, null, exchange.keepAlive);
+		}
+		
+		Route route = endpoints.route(exchange.path);
+		
+		if (route == null) {
+			return response(404, null, null, exchange.keepAlive);
+		}
+		
+		int outcome = EndpointMetrics.EXCEPTION;
+		long start = System.nanoTime();
+		
+		try {
+			Reply reply = invoke(route, exchange);
+			outcome = EndpointMetrics.outcome(reply.status);
+			return reply;
+		} catch (Exception e) {
+			logger.error("Failed to invoke [" + route + "]", e);
+			return response(500, null, null, exchange.keepAlive);
+		} finally {
+			configuration.metrics().endpoint(route).record(outcome, System.nanoTime() - start);
+		}
+	}
+	
+	private Reply invoke(Route route, Exchange exchange) throws Exception {
+		Method method = route.method();
+		Class<?>[] types = method.getParameterTypes();
+		Object[] args;
+		
+		if (types.length == 0) {
+			args = new Object[0];
+		} else if (types.length == 1 && types[0].isAssignableFrom(Map.class)) {
+			args = new Object[] {exchange.parameters};
+		} else {
+			return response(501, null, null, exchange.keepAlive);
+		}
+		
+		Object endpoint = configuration.instantiator().instantiate(route.endpoint());
+		
+		if (endpoint == null) {
+			return response(404, null, null, exchange.keepAlive);
+		}
+		
+		Object result;
+		
+		try {
+			method.setAccessible(true);
+			result = method.invoke(endpoint, args);
+		} catch (InvocationTargetException e) {
+			throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+		}
+		
+		if (result == null) {
+			return response(204, null, null, exchange.keepAlive);
+		}
+		
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		Writer writer = new UTF8Writer(body, BufferPool.shared());
+		
+		try {
+			if (result instanceof String) {
+				writer.write((String) result);
+			} else {
+				JSONEncoder.shared().encode(result, writer);
+			}
+			
+		} finally {
+			writer.close();
+		}
+		
+		return response(200, (result instanceof String) ? "text/plain; charset=UTF-8" 
+				: "application/json; charset=UTF-8", body.toByteArray(), exchange.keepAlive, 
+				exchange.method.equals("HEAD"));
+	}
+	
+	private static Reply response(int status, String contentType, byte[] body, boolean keepAlive) {
+		return response(status, contentType, body, keepAlive, false);
+	}
+	
+	// The response to HEAD request has the headers of the body without the 
+	// body.
+	private static Reply response(int status, String contentType, byte[] body, 
+			boolean keepAlive, boolean head) {
+		StringBuilder header = new StringBuilder("HTTP/1.1 ");
+		header.append(status).append(' ').append(REASONS.get(status)).append("\r\n");
+		
+		if (contentType != null) {
+			header.append("Content-Type: ").append(contentType).append("\r\n");
+		}
+		
+		int length = (body == null) ? 0 : body.length;
+		
+		if (status != 204) {
+			header.append("Content-Length: ").append(length).append("\r\n");
+		}
+		
+		header.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+		
+		try {
+			byte[] bytes = header.toString().getBytes("ISO-8859-1");
+			
+			if (body == null || head) {
+				return new Reply(status, bytes);
+			}
+			
+			byte[] response = new byte[bytes.length + length];
+			System.arraycopy(bytes, 0, response, 0, bytes.length);
+			System.arraycopy(body, 0, response, bytes.length, length);
+			
+			return new Reply(status, response);
+		} catch (UnsupportedEncodingException e) {
+			throw new UncheckedException(e);
+		}
+	}
+	
+	/**
+	 * Parses the HTTP request at the beginning of the specified bytes.
+	 * 
+	 * @param bytes The received bytes.
+	 * @param length The length of the received bytes.
+	 * @return The parsed request, or {@code null} if the request has not been 
+	 * received completely.
+	 * @throws IllegalArgumentException If the request is malformed.
+	 * @throws UnsupportedOperationException If the request has the body with 
+	 * {@code Transfer-Encoding} (e.g. chunked), which is not supported.
+	 */
+	static Exchange parse(byte[] bytes, int length) {
+		int end = -1;
+		
+		for (int i = 3; i < length; i++) {
+			if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+				end = i + 1;
+				break;
+			}
+		}
+		
+		if (end < 0) {
+			if (length >= MAX_HEADER_SIZE) {
+				throw new IllegalArgumentException("Request header is too large");
+			}
+			
+			return null;
+		}
+		
+		try {
+			String[] lines = new String(bytes, 0, end - 4, "ISO-8859-1").split("\r\n");
+			String[] line = lines[0].split(" ");
+			
+			if (line.length != 3 || !line[2].startsWith("HTTP/1.")) {
+				throw new IllegalArgumentException("Malformed request line [" + lines[0] + "]");
+			}
+			
+			Map<String, String> headers = new HashMap<String, String>();
+			
+			for (int i = 1; i < lines.length; i++) {
+				int colon = lines[i].indexOf(':');
+				
+				if (colon > 0) {
+					String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+					String value = lines[i].substring(colon + 1).trim();
+					String previous = headers.put(name, value);
+					
+					if (previous != null && !previous.equals(value)) {
+						throw new IllegalArgumentException("Conflicting [" + name + "] headers");
+					}
+				}
+			}
+			
+			// The body framed by the transfer coding cannot be found without 
+			// decoding it, so the request is rejected (and the connection is 
+			// closed) rather than the body is taken as the next request.
+			if (headers.containsKey("transfer-encoding")) {
+				throw new UnsupportedOperationException("Transfer-Encoding is not supported");
+			}
+			
+			String contentLength = headers.get("content-length");
+			int size = (contentLength == null) ? 0 : Integer.parseInt(contentLength);
+			
+			if (size < 0 || size > MAX_BODY_SIZE) {
+				throw new IllegalArgumentException("Request body is too large");
+			}
+			
+			if (length < end + size) {
+				return null;
+			}
+			
+			String connection = headers.get("connection");
+			boolean keepAlive = line[2].equals("HTTP/1.1") 
+					? !"close".equalsIgnoreCase(connection) : "keep-alive".equalsIgnoreCase(connection);
+			int query = line[1].indexOf('?');
+			Map<String, String> parameters = new LinkedHashMap<String, String>();
+			
+			if (query >= 0) {
+				parameters(line[1].substring(query + 1), parameters);
+			}
+			
+			String contentType = headers.get("content-type");
+			
+			if (size > 0 && contentType != null 
+					&& contentType.toLowerCase(Locale.ENGLISH).startsWith("application/x-www-form-urlencoded")) {
+				parameters(new String(bytes, end, size, "ISO-8859-1"), parameters);
+			}
+			
+			return new Exchange(line[0], (query < 0) ? line[1] : line[1].substring(0, query), 
+					parameters, keepAlive, end + size);
+		} catch (UnsupportedEncodingException e) {
+			throw new UncheckedException(e);
+		}
+	}
+	
+	private static void parameters(String string, Map<String, String> parameters) 
+			throws UnsupportedEncodingException {
+		for (String parameter : string.split("&")) {
+			if (parameter.length() == 0) {
+				continue;
+			}
+			
+			int equals = parameter.indexOf('=');
+			String name = URLDecoder.decode((equals < 0) ? parameter : parameter.substring(0, equals), ENCODING);
+			
+			if (!parameters.containsKey(name)) {
+				parameters.put(name, (equals < 0) ? "" : URLDecoder.decode(parameter.substring(equals + 1), ENCODING));
+			}
+		}
+	}
+	
+	/**
+	 * The parsed HTTP request.
+	 * 
+	 * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	static final class Exchange {
+		
+		final String method;
+		
+		final String path;
+		
+		final Map<String, String> parameters;
+		
+		final boolean keepAlive;
+		
+		final int length;
+		
+		private Exchange(String method, String path, Map<String, String> parameters, 
+				boolean keepAlive, int length) {
+			this.method = method;
+			this.path = path;
+			this.parameters = parameters;
+			this.keepAlive = keepAlive;
+			this.length = length;
+		}
+		
+	}
+	
+	/**
+	 * The HTTP response.
+	 * 
+	 * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	static final class Reply {
+		
+		final int status;
+		
+		final byte[] bytes;
+		
+		private Reply(int status, byte[] bytes) {
+			this.status = status;
+			this.bytes = bytes;
+		}
+		
+	}
+	
+	private final class Connection {
+		
+		private final SelectionKey key;
+		
+		private final SocketChannel channel;
+		
+		private byte[] in = new byte[1024];
+		
+		private int length;
+		
+		private ByteBuffer out;
+		
+		private boolean keepAlive;
+		
+		private Connection(SelectionKey key) {
+			this.key = key;
+			this.channel = (SocketChannel) key.channel();
+		}
+		
+		private void read() throws IOException {
+			if (length == in.length) {
+				byte[] bytes = new byte[Math.min(in.length * 2, MAX_HEADER_SIZE + MAX_BODY_SIZE)];
+				System.arraycopy(in, 0, bytes, 0, length);
+				in = bytes;
+			}
+			
+			int read = channel.read(ByteBuffer.wrap(in, length, in.length - length));
+			
+			if (read < 0) {
+				close(key);
+				return;
+			}
+			
+			length += read;
+			process();
+		}
+		
+		private void process() {
+			final Exchange exchange;
+			
+			try {
+				exchange = parse(in, length);
+			} catch (IllegalArgumentException e) {
+				logger.debug("Malformed request", e);
+				key.interestOps(0);
+				respond(response(e.getMessage().endsWith("too large") ? 413 : 400, null, null, false), false);
+				return;
+			} catch (UnsupportedOperationException e) {
+				logger.debug("Unsupported request", e);
+				key.interestOps(0);
+				respond(response(501, null, null, false), false);
+				return;
+			}
+			
+			if (exchange == null) {
+				return;
+			}
+			
+			System.arraycopy(in, exchange.length, in, 0, length - exchange.length);
+			length -= exchange.length;
+			key.interestOps(0);
+			executor.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					respond(dispatch(exchange), exchange.keepAlive);
+				}
+				
+			});
+		}
+		
+		private void respond(Reply reply, boolean keepAlive) {
+			out = ByteBuffer.wrap(reply.bytes);
+			this.keepAlive = keepAlive;
+			ready.add(this);
+			selector.wakeup();
+		}
+		
+		private void write() throws IOException {
+			channel.write(out);
+			
+			if (out.hasRemaining()) {
+				return;
+			}
+			
+			out = null;
+			
+			if (!keepAlive) {
+				close(key);
+				return;
+			}
+			
+			key.interestOps(SelectionKey.OP_READ);
+			process();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@code EndpointMetrics} is the request count and the latency histogram of 
+ * the Web endpoint method ({@link Route}) per outcome (the status class of 
+ * the response or the exception).
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class EndpointMetrics implements EndpointMetricsMBean {
+	
+	/** The outcome labels: the status classes and the exception. */
+	public static final String[] OUTCOMES = {"1xx", "2xx", "3xx", "4xx", "5xx", "exception"};
+	
+	/** The outcome index of the request failed with the exception. */
+	public static final int EXCEPTION = 5;
+	
+	private final String route;
+	
+	private final Histogram latency = new Histogram();
+	
+	private final AtomicReferenceArray<Histogram> outcomes = new AtomicReferenceArray<Histogram>(OUTCOMES.length);
+	
+	private final Histogram instantiation;
+	
+	/**
+	 * Constructs a new {@code EndpointMetrics}.
+	 * 
+	 * @param route The route name.
+	 * @param instantiation The histogram of the endpoint instantiation time.
+	 */
+	public EndpointMetrics(String route, Histogram instantiation) {
+		this.route = route;
+		this.instantiation = instantiation;
+	}
+	
+	/**
+	 * Returns the outcome index of the specified HTTP status.
+	 * 
+	 * @param status The HTTP status.
+	 * @return The outcome index of the specified HTTP status.
+	 */
+	public static int outcome(int status) {
+		return Math.min(Math.max(status / 100, 1), 5) - 1;
+	}
+	
+	/**
+	 * Records the latency of the request.
+	 * 
+	 * @param outcome The outcome index.
+	 * @param nanos The latency in nanoseconds.
+	 */
+	public void record(int outcome, long nanos) {
+		latency.record(nanos);
+		histogram(outcome).record(nanos);
+	}
+	
+	/**
+	 * Returns the latency histogram of the specified outcome.
+	 * 
+	 * @param outcome The outcome index.
+	 * @return The latency histogram of the specified outcome.
+	 */
+	public Histogram histogram(int outcome) {
+		Histogram histogram = outcomes.get(outcome);
+		
+		if (histogram == null) {
+			outcomes.compareAndSet(outcome, null, new Histogram());
+			histogram = outcomes.get(outcome);
+		}
+		
+		return histogram;
+	}
+	
+	/**
+	 * Returns the latency histogram of all the outcomes.
+	 * 
+	 * @return The latency histogram of all the outcomes.
+	 */
+	public Histogram latency() {
+		return latency;
+	}
+	
+	/**
+	 * Returns the histogram of the endpoint instantiation time.
+	 * 
+	 * @return The histogram of the endpoint instantiation time.
+	 */
+	public Histogram instantiation() {
+		return instantiation;
+	}
+	
+	@Override
+	public String getRoute() {
+		return route;
+	}
+	
+	@Override
+	public long getRequests() {
+		return latency.count();
+	}
+	
+	@Override
+	public long getClientErrors() {
+		return count(3);
+	}
+	
+	@Override
+	public long getServerErrors() {
+		return count(4) + count(EXCEPTION);
+	}
+	
+	@Override
+	public double getMeanMillis() {
+		return latency.mean() / 1000000;
+	}
+	
+	@Override
+	public double getP50Millis() {
+		return millis(latency.quantile(0.5));
+	}
+	
+	@Override
+	public double getP99Millis() {
+		return millis(latency.quantile(0.99));
+	}
+	
+	@Override
+	public double getP999Millis() {
+		return millis(latency.quantile(0.999));
+	}
+	
+	@Override
+	public double getMaxMillis() {
+		return millis(latency.max());
+	}
+	
+	@Override
+	public double getInstantiationP99Millis() {
+		return millis(instantiation.quantile(0.99));
+	}
+	
+	/**
+	 * Returns the number of the requests of the specified outcome.
+	 * 
+	 * @param outcome The outcome index.
+	 * @return The number of the requests of the specified outcome.
+	 */
+	public long count(int outcome) {
+		Histogram histogram = outcomes.get(outcome);
+		return (histogram == null) ? 0 : histogram.count();
+	}
+	
+	private static double millis(long nanos) {
+		return (double) nanos / 1000000;
+	}
+	
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+/**
+ * {@code EndpointMetricsMBean} is the JMX management interface of 
+ * {@link EndpointMetrics}. The latencies are in milliseconds.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public interface EndpointMetricsMBean {
+	
+	/**
+	 * Returns the route name.
+	 * 
+	 * @return The route name.
+	 */
+	public String getRoute();
+	
+	/**
+	 * Returns the number of the requests processed.
+	 * 
+	 * @return The number of the requests processed.
+	 */
+	public long getRequests();
+	
+	/**
+	 * Returns the number of the requests responded with the status 4xx.
+	 * 
+	 * @return The number of the requests responded with the status 4xx.
+	 */
+	public long getClientErrors();
+	
+	/**
+	 * Returns the number of the requests responded with the status 5xx or 
+	 * failed with the exception.
+	 * 
+	 * @return The number of the requests failed on the server.
+	 */
+	public long getServerErrors();
+	
+	/**
+	 * Returns the mean latency.
+	 * 
+	 * @return The mean latency.
+	 */
+	public double getMeanMillis();
+	
+	/**
+	 * Returns the median latency.
+	 * 
+	 * @return The median latency.
+	 */
+	public double getP50Millis();
+	
+	/**
+	 * Returns the 99th percentile latency.
+	 * 
+	 * @return The 99th percentile latency.
+	 */
+	public double getP99Millis();
+	
+	/**
+	 * Returns the 99.9th percentile latency.
+	 * 
+	 * @return The 99.9th percentile latency.
+	 */
+	public double getP999Millis();
+	
+	/**
+	 * Returns the maximum latency.
+	 * 
+	 * @return The maximum latency.
+	 */
+	public double getMaxMillis();
+	
+	/**
+	 * Returns the 99th percentile time spent on the endpoint instantiation.
+	 * 
+	 * @return The 99th percentile time spent on the endpoint instantiation.
+	 */
+	public double getInstantiationP99Millis();
+	
+}
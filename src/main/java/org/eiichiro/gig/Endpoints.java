@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eiichiro.bootleg.annotation.Endpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * {@code Endpoints} is the immutable registry of the components and the Web 
+ * endpoints deployed on Gig application. The registry is built once from the 
+ * component classes of the {@code Module} on the startup, so the lookups 
+ * never iterate the components nor inspect the annotations again.
+ * The Web endpoints are indexed by the class and by the route (the value of 
+ * {@code @Endpoint} or the simple class name if the value is omitted).
+ * The overloaded Web endpoint methods are not routed, since which of them is 
+ * invoked is not determined by the method name.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class Endpoints {
+	
+	private static final Logger logger = LoggerFactory.getLogger(Endpoints.class);
+	
+	private final Set<Class<?>> components;
+	
+	private final Map<Class<?>, String> endpoints;
+	
+	private final Map<String, Class<?>> routes;
+	
+	private final Map<String, Route> methods;
+	
+	/**
+	 * Constructs a new {@code Endpoints} from the specified component classes.
+	 * 
+	 * @param components The component classes.
+	 */
+	public Endpoints(Set<Class<?>> components) {
+		Set<Class<?>> concretes = new LinkedHashSet<Class<?>>();
+		Map<Class<?>, String> endpoints = new LinkedHashMap<Class<?>, String>();
+		Map<String, Class<?>> routes = new LinkedHashMap<String, Class<?>>();
+		Map<String, Route> methods = new LinkedHashMap<String, Route>();
+		
+		for (Class<?> component : components) {
+			if (!component.isInterface() && !Modifier.isAbstract(component.getModifiers())) {
+				concretes.add(component);
+			}
+			
+			Endpoint endpoint = component.getAnnotation(Endpoint.class);
+			
+			if (endpoint == null) {
+				continue;
+			}
+			
+			String route = (endpoint.value().length() == 0) ? component.getSimpleName() : endpoint.value();
+			endpoints.put(component, route);
+			Class<?> duplicate = routes.get(route);
+			
+			if (duplicate == null) {
+				routes.put(route, component);
+				Set<String> overloads = new LinkedHashSet<String>();
+				
+				for (Method method : component.getMethods()) {
+					String name = route + "/" + method.getName();
+					
+					if (method.getDeclaringClass() == Object.class) {
+						continue;
+					}
+					
+					Route existing = methods.get(name);
+					
+					// The bridge method has the same parameters as the method 
+					// it bridges to, which has the annotations.
+					if (existing == null || (existing.method().isBridge() && !method.isBridge() 
+							&& Arrays.equals(existing.method().getParameterTypes(), method.getParameterTypes()))) {
+						methods.put(name, new Route(name, component, method));
+					} else if (!Arrays.equals(existing.method().getParameterTypes(), method.getParameterTypes())) {
+						overloads.add(name);
+					}
+				}
+				
+				// The order of the overloaded methods is unspecified, so none 
+				// of them is routed rather than the arbitrary one.
+				for (String name : overloads) {
+					methods.remove(name);
+					logger.warn("Web endpoint [" + component + "] has the overloaded methods for the route ["
+							+ name + "]; Not routed");
+				}
+				
+			} else {
+				logger.warn("Web endpoint [" + component + "] has the same route ["
+						+ route + "] as [" + duplicate + "]; Not routed");
+			}
+		}
+		
+		this.components = ImmutableSet.copyOf(concretes);
+		this.endpoints = ImmutableMap.copyOf(endpoints);
+		this.routes = ImmutableMap.copyOf(routes);
+		this.methods = ImmutableMap.copyOf(methods);
+	}
+	
+	/**
+	 * Returns the concrete component classes to be installed to the Jaguar 
+	 * container (interfaces and abstract classes are excluded).
+	 * 
+	 * @return The concrete component classes.
+	 */
+	public Set<Class<?>> components() {
+		return components;
+	}
+	
+	/**
+	 * Returns the Web endpoint classes (the component classes annotated with 
+	 * {@code @Endpoint}).
+	 * 
+	 * @return The Web endpoint classes.
+	 */
+	public Set<Class<?>> endpoints() {
+		return endpoints.keySet();
+	}
+	
+	/**
+	 * Returns whether the specified class is a Web endpoint or not.
+	 * 
+	 * @param clazz The class to be examined.
+	 * @return Whether the specified class is a Web endpoint or not.
+	 */
+	public boolean contains(Class<?> clazz) {
+		return endpoints.containsKey(clazz);
+	}
+	
+	/**
+	 * Returns the route of the specified Web endpoint class or {@code null} if 
+	 * the class is not a Web endpoint.
+	 * 
+	 * @param clazz The Web endpoint class.
+	 * @return The route of the specified Web endpoint class.
+	 */
+	public String route(Class<?> clazz) {
+		return endpoints.get(clazz);
+	}
+	
+	/**
+	 * Returns the Web endpoint class for the specified route or {@code null} 
+	 * if no Web endpoint is routed to it.
+	 * 
+	 * @param route The route.
+	 * @return The Web endpoint class for the specified route.
+	 */
+	public Class<?> endpoint(String route) {
+		return routes.get(route);
+	}
+	
+	/**
+	 * Returns the {@link Route} which the specified HTTP request path 
+	 * (<code>'/&lt;endpoint&gt;/&lt;method&gt;'</code>, relative to the context 
+	 * path) is routed to or {@code null} if no Web endpoint method is routed 
+	 * to it.
+	 * 
+	 * @param path The HTTP request path relative to the context path.
+	 * @return The {@link Route} which the specified path is routed to.
+	 */
+	public Route route(String path) {
+		int start = (path.startsWith("/")) ? 1 : 0;
+		int slash = path.indexOf('/', start);
+		
+		if (slash < 0) {
+			return null;
+		}
+		
+		int end = path.indexOf('/', slash + 1);
+		return methods.get(path.substring(start, (end < 0) ? path.length() : end));
+	}
+	
+	/**
+	 * Returns all the {@link Route}s.
+	 * 
+	 * @return All the {@link Route}s.
+	 */
+	public Collection<Route> routes() {
+		return methods.values();
+	}
+	
+}
@@ -16,13 +16,26 @@
 package org.eiichiro.gig;
 
 import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
 import org.eiichiro.jaguar.WebFilter;
 import org.eiichiro.bootleg.BootlegFilter;
@@ -35,10 +48,246 @@ import org.eiichiro.bootleg.Configuration;
  * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
  */
 public class GigFilter extends BootlegFilter {
-
+	
+	/** The filter init parameter name to specify the maximum number of the cached responses. */
+	public static final String CACHE_ENTRIES = "org.eiichiro.gig.cache.entries";
+	
+	/** The filter init parameter name to specify the maximum total size of the cached responses in bytes. */
+	public static final String CACHE_BYTES = "org.eiichiro.gig.cache.bytes";
+	
+	/**
+	 * The filter init parameter name to specify the path (relative to the 
+	 * context path) to serve the metrics in the plain-text exposition format.
+	 */
+	public static final String METRICS = "org.eiichiro.gig.metrics";
+	
+	/**
+	 * The filter init parameter name to specify the maximum limit of the 
+	 * concurrent requests to the Gig application in total.
+	 */
+	public static final String LIMIT = "org.eiichiro.gig.limit";
+	
+	/**
+	 * The filter init parameter name to specify the maximum limit of the 
+	 * concurrent requests to each Web endpoint method.
+	 */
+	public static final String ENDPOINT_LIMIT = "org.eiichiro.gig.limit.endpoint";
+	
+	/**
+	 * The filter init parameter name to specify the path (relative to the 
+	 * context path) to serve the batch requests (see {@link Batch}).
+	 */
+	public static final String BATCH = "org.eiichiro.gig.batch";
+	
+	/** The filter init parameter name to specify the maximum number of the sub-requests in a batch request. */
+	public static final String BATCH_SIZE = "org.eiichiro.gig.batch.size";
+	
+	/** The filter init parameter name to specify the maximum number of the sub-requests of a batch request running at a time. */
+	public static final String BATCH_CONCURRENCY = "org.eiichiro.gig.batch.concurrency";
+	
+	private Endpoints endpoints;
+	
+	private ResponseCache cache;
+	
+	private final SingleFlight flights = new SingleFlight();
+	
+	private ConcurrencyLimiter limiter;
+	
+	private final Map<String, ConcurrencyLimiter> limiters = new HashMap<String, ConcurrencyLimiter>();
+	
+	private Metrics metrics;
+	
+	private String scrape;
+	
+	private String batchPath;
+	
+	private Batch batch;
+	
+	/**
+	 * Initializes the HTTP request processing pipeline, the 
+	 * {@link ResponseCache}, the {@link JSONCodec}s for the element types of 
+	 * the {@link StreamingResponse}s and the {@link AsyncResponse}s the Web 
+	 * endpoint methods return and the {@link Metrics} (registered as JMX 
+	 * MBeans).
+	 * 
+	 * @param config Servlet filter configuration.
+	 * @throws ServletException If the {@code Configuration} has not been set on 
+	 * the Servlet context.
+	 */
+	@Override
+	public void init(FilterConfig config) throws ServletException {
+		super.init(config);
+		Object configuration = config.getServletContext().getAttribute(GigListener.CONFIGURATION);
+		
+		ExecutorService executor = null;
+		
+		if (configuration instanceof org.eiichiro.gig.Configuration) {
+			endpoints = ((org.eiichiro.gig.Configuration) configuration).endpoints();
+			metrics = ((org.eiichiro.gig.Configuration) configuration).metrics();
+			executor = ((org.eiichiro.gig.Configuration) configuration).executor();
+		}
+		
+		cache = cache(config);
+		scrape = config.getInitParameter(METRICS);
+		batchPath = config.getInitParameter(BATCH);
+		
+		if (batchPath != null) {
+			String size = config.getInitParameter(BATCH_SIZE);
+			String concurrency = config.getInitParameter(BATCH_CONCURRENCY);
+			batch = new Batch(this, executor, (size == null) ? 20 : Integer.parseInt(size), 
+					(concurrency == null) ? 4 : Integer.parseInt(concurrency));
+		}
+		
+		limiter = limiter(config, null);
+		
+		if (endpoints != null) {
+			for (Route route : endpoints.routes()) {
+				prepare(route.method().getGenericReturnType());
+				
+				ConcurrencyLimiter limiter = limiter(config, route);
+				
+				if (limiter != null) {
+					limiters.put(route.name(), limiter);
+				}
+			}
+		}
+		
+		if (metrics == null) {
+			return;
+		}
+		
+		if (endpoints != null) {
+			metrics.register(config.getServletContext().getContextPath(), endpoints.routes());
+		}
+		
+		if (limiter != null) {
+			gauges("", limiter);
+		}
+		
+		for (Entry<String, ConcurrencyLimiter> limiter : limiters.entrySet()) {
+			gauges("{route=\"" + limiter.getKey() + "\"}", limiter.getValue());
+		}
+		
+		metrics.gauge("gig_buffer_pool_hits_total", new Metrics.Gauge() {
+			
+			@Override
+			public long value() {
+				return BufferPool.shared().hits();
+			}
+			
+		});
+		metrics.gauge("gig_buffer_pool_misses_total", new Metrics.Gauge() {
+			
+			@Override
+			public long value() {
+				return BufferPool.shared().misses();
+			}
+			
+		});
+		metrics.gauge("gig_coalesced_total", new Metrics.Gauge() {
+			
+			@Override
+			public long value() {
+				return flights.shares();
+			}
+			
+		});
+		metrics.gauge("gig_coalesced_timeouts_total", new Metrics.Gauge() {
+			
+			@Override
+			public long value() {
+				return flights.timeouts();
+			}
+			
+		});
+		
+		if (cache != null) {
+			final ResponseCache cache = this.cache;
+			metrics.gauge("gig_cache_hits_total", new Metrics.Gauge() {
+				
+				@Override
+				public long value() {
+					return cache.hits();
+				}
+				
+			});
+			metrics.gauge("gig_cache_misses_total", new Metrics.Gauge() {
+				
+				@Override
+				public long value() {
+					return cache.misses();
+				}
+				
+			});
+			metrics.gauge("gig_cache_entries", new Metrics.Gauge() {
+				
+				@Override
+				public long value() {
+					return cache.size();
+				}
+				
+			});
+		}
+	}
+	
+	private void gauges(String labels, final ConcurrencyLimiter limiter) {
+		metrics.gauge("gig_concurrency_limit" + labels, new Metrics.Gauge() {
+			
+			@Override
+			public long value() {
+				return limiter.limit();
+			}
+			
+		});
+		metrics.gauge("gig_concurrency_in_flight" + labels, new Metrics.Gauge() {
+			
+			@Override
+			public long value() {
+				return limiter.inFlight();
+			}
+			
+		});
+		metrics.gauge("gig_concurrency_rejected_total" + labels, new Metrics.Gauge() {
+			
+			@Override
+			public long value() {
+				return limiter.rejections();
+			}
+			
+		});
+	}
+	
+	/** Unregisters the JMX MBeans of the {@link Metrics}. */
+	@Override
+	public void destroy() {
+		if (metrics != null) {
+			metrics.unregister();
+		}
+		
+		super.destroy();
+	}
+	
 	/**
 	 * Sets up Web context with {@code WebFilter} and runs HTTP request 
 	 * processing pipeline.
+	 * The Web context is bound to the request processing thread. Use 
+	 * {@link RequestContext} to carry it over to the other threads.
+	 * The GET requests to the Web endpoint methods annotated with 
+	 * {@link Cached} are served from the {@link ResponseCache} without 
+	 * running the pipeline while the cached response is alive, and the 
+	 * concurrent identical GET requests to the Web endpoint methods annotated 
+	 * with {@link Coalesced} share one run of the pipeline.
+	 * The latency and the outcome of each request to the Web endpoint method 
+	 * are recorded to the {@link Metrics}, and the metrics are served on the 
+	 * path specified as the filter init parameter 
+	 * <code>'org.eiichiro.gig.metrics'</code> if any.
+	 * The batch requests are served by {@link Batch} on the path specified as 
+	 * the filter init parameter <code>'org.eiichiro.gig.batch'</code> if any.
+	 * The requests over the {@link ConcurrencyLimiter}s are rejected with 
+	 * <code>'503 Service Unavailable'</code> before running the pipeline. 
+	 * The async request (e.g. the Web endpoint method returns 
+	 * {@link AsyncResponse}) holds the permit until it is completed, and its 
+	 * latency and outcome are recorded on the completion.
 	 * 
 	 * @param request HTTP request.
 	 * @param response HTTP response.
@@ -49,6 +298,221 @@ public class GigFilter extends BootlegFilter {
 	@Override
 	public void doFilter(ServletRequest request, ServletResponse response, 
 			FilterChain chain) throws IOException, ServletException {
+		HttpServletRequest req = (HttpServletRequest) request;
+		HttpServletResponse res = (HttpServletResponse) response;
+		
+		if (scrape != null && metrics != null && scrape.equals(path(req))) {
+			res.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+			metrics.writeTo(res.getWriter());
+			return;
+		}
+		
+		if (batch != null && batchPath.equals(path(req))) {
+			batch.execute(req, res, chain);
+			return;
+		}
+		
+		Route route = route(req);
+		ConcurrencyLimiter limiter = (route == null) ? null : limiters.get(route.name());
+		
+		if (this.limiter == null && limiter == null && (route == null || metrics == null)) {
+			serve(route, req, res, chain);
+			return;
+		}
+		
+		long start = System.nanoTime();
+		
+		if (!acquire(limiter)) {
+			res.setHeader("Retry-After", "1");
+			res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			record(route, EndpointMetrics.outcome(HttpServletResponse.SC_SERVICE_UNAVAILABLE), 
+					System.nanoTime() - start);
+			return;
+		}
+		
+		StatusResponse status = new StatusResponse(res);
+		int outcome = EndpointMetrics.EXCEPTION;
+		boolean async = false;
+		
+		try {
+			serve(route, req, status, chain);
+			outcome = EndpointMetrics.outcome(status.status);
+			
+			// The async request (e.g. AsyncResponse) keeps the permit and is 
+			// recorded when it is completed on the other thread.
+			if (req.isAsyncStarted()) {
+				req.getAsyncContext().addListener(new Completion(route, limiter, start, status));
+				async = true;
+			}
+			
+		} finally {
+			if (!async) {
+				complete(route, limiter, outcome, System.nanoTime() - start);
+			}
+		}
+	}
+	
+	private void complete(Route route, ConcurrencyLimiter limiter, int outcome, long nanos) {
+		release(limiter, nanos, outcome >= EndpointMetrics.outcome(HttpServletResponse.SC_INTERNAL_SERVER_ERROR));
+		record(route, outcome, nanos);
+	}
+	
+	// Only the results of StreamingResponse and AsyncResponse are written 
+	// with JSONEncoder (the others are written by Bootleg).
+	private static void prepare(Type type) {
+		if (type instanceof ParameterizedType) {
+			Type raw = ((ParameterizedType) type).getRawType();
+			
+			if (raw == StreamingResponse.class || raw == AsyncResponse.class) {
+				JSONEncoder.shared().prepare(((ParameterizedType) type).getActualTypeArguments()[0]);
+			}
+		}
+	}
+	
+	private void record(Route route, int outcome, long nanos) {
+		if (route != null && metrics != null) {
+			metrics.endpoint(route).record(outcome, nanos);
+		}
+	}
+	
+	private boolean acquire(ConcurrencyLimiter limiter) {
+		if (this.limiter != null && !this.limiter.acquire()) {
+			return false;
+		}
+		
+		if (limiter != null && !limiter.acquire()) {
+			if (this.limiter != null) {
+				this.limiter.cancel();
+			}
+			
+			return false;
+		}
+		
+		return true;
+	}
+	
+	private void release(ConcurrencyLimiter limiter, long nanos, boolean dropped) {
+		if (limiter != null) {
+			limiter.release(nanos, dropped);
+		}
+		
+		if (this.limiter != null) {
+			this.limiter.release(nanos, dropped);
+		}
+	}
+	
+	private void serve(Route route, HttpServletRequest request, HttpServletResponse response,
+			FilterChain chain) throws IOException, ServletException {
+		boolean get = route != null && request.getMethod().equals("GET");
+		Cached cached = (get && cache != null) ? route.annotation(Cached.class) : null;
+		Coalesced coalesced = (get) ? route.annotation(Coalesced.class) : null;
+		
+		if (cached == null && coalesced == null) {
+			process(request, response, chain);
+			return;
+		}
+		
+		String[] vary = (cached == null) ? coalesced.vary() : cached.vary();
+		String key = ResponseCache.key(request, vary);
+		
+		if (cached != null) {
+			ResponseCache.Entry entry = cache.get(key);
+			
+			if (entry != null) {
+				entry.writeTo(request, response);
+				return;
+			}
+		}
+		
+		if (coalesced == null) {
+			BufferedResponse buffered = buffer(request, response, chain, vary);
+			
+			try {
+				cache.put(key, buffered, cached.ttl()).writeTo(request, response);
+			} finally {
+				buffered.release();
+			}
+			
+			return;
+		}
+		
+		// Only the leader of the coalesced requests populates the cache, and 
+		// the followers replay the same entry. The shared response is not 
+		// released, since it is not known when the last follower replays it.
+		final int ttl = (cached == null) ? -1 : cached.ttl();
+		boolean[] leader = new boolean[1];
+		Object shared = coalesce(key, request, response, chain, vary, ttl, coalesced.timeout(), leader);
+		
+		// The response which sets the cookies (e.g. the session of the leader) 
+		// is not shared, so the followers process their own requests.
+		if (!leader[0] && ((shared instanceof ResponseCache.Entry) 
+				? ((ResponseCache.Entry) shared).setsCookies() 
+				: ((BufferedResponse) shared).setsCookies())) {
+			process(request, response, chain);
+		} else if (shared instanceof ResponseCache.Entry) {
+			((ResponseCache.Entry) shared).writeTo(request, response);
+		} else {
+			((BufferedResponse) shared).writeTo(response);
+		}
+	}
+	
+	// The buffered response has 'Vary' header of the request headers the 
+	// response is keyed by (in addition to the one the endpoint has set).
+	private BufferedResponse buffer(HttpServletRequest request, HttpServletResponse response,
+			FilterChain chain, String[] vary) throws IOException, ServletException {
+		BufferedResponse buffered = new BufferedResponse(response);
+		process(request, buffered, chain);
+		
+		if (vary.length > 0) {
+			StringBuilder header = new StringBuilder();
+			
+			for (String name : vary) {
+				header.append((header.length() == 0) ? "" : ", ").append(name);
+			}
+			
+			buffered.addHeader("Vary", header.toString());
+		}
+		
+		return buffered;
+	}
+	
+	// Returns the shared ResponseCache.Entry if the response is cached (the 
+	// time to live is not negative), or the shared BufferedResponse. The 
+	// first element of the specified array is set if the current request 
+	// has run the pipeline (as the leader or after the timeout).
+	private Object coalesce(final String key, final HttpServletRequest request, 
+			final HttpServletResponse response, final FilterChain chain, 
+			final String[] vary, final int ttl, int timeout, final boolean[] leader) 
+			throws IOException, ServletException {
+		try {
+			return flights.execute(key, new Callable<Object>() {
+				
+				@Override
+				public Object call() throws Exception {
+					leader[0] = true;
+					BufferedResponse buffered = buffer(request, response, chain, vary);
+					return (ttl < 0) ? buffered : cache.put(key, buffered, ttl);
+				}
+				
+			}, timeout, TimeUnit.SECONDS);
+		} catch (IOException e) {
+			throw e;
+		} catch (ServletException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServletException("Interrupted while waiting for the coalesced request", e);
+		} catch (ExecutionException e) {
+			throw new ServletException("Coalesced request has failed", e.getCause());
+		} catch (Exception e) {
+			throw new ServletException(e);
+		}
+	}
+	
+	private void process(ServletRequest request, ServletResponse response, 
+			FilterChain chain) throws IOException, ServletException {
 		HttpServletRequest req = WebFilter.request();
 		
 		try {
@@ -59,6 +523,86 @@ public class GigFilter extends BootlegFilter {
 		}
 	}
 	
+	/**
+	 * Returns the {@link Route} which the specified HTTP request is routed to 
+	 * or {@code null} if the request is not routed to any Web endpoint method.
+	 * 
+	 * @param request HTTP request.
+	 * @return The {@link Route} which the specified HTTP request is routed to.
+	 */
+	protected Route route(HttpServletRequest request) {
+		if (endpoints == null) {
+			return null;
+		}
+		
+		return endpoints.route(path(request));
+	}
+	
+	/**
+	 * Returns whether the specified request is served by this filter itself 
+	 * (the metrics or the batch request) rather than a Web endpoint method.
+	 * 
+	 * @param request HTTP request.
+	 * @return {@code true} if the specified request is the metrics or the 
+	 * batch request.
+	 */
+	boolean reserved(HttpServletRequest request) {
+		String path = path(request);
+		return path.equals(scrape) || path.equals(batchPath);
+	}
+	
+	private static String path(HttpServletRequest request) {
+		String uri = request.getRequestURI();
+		String contextPath = request.getContextPath();
+		return (contextPath != null && uri.startsWith(contextPath))
+				? uri.substring(contextPath.length()) : uri;
+	}
+	
+	/**
+	 * Returns the {@link ResponseCache} to cache the responses of the Web 
+	 * endpoint methods annotated with {@link Cached}. 
+	 * This method returns the {@code ResponseCache} bounded by the filter 
+	 * init parameters <code>'org.eiichiro.gig.cache.entries'</code> (1024 
+	 * entries by default) and <code>'org.eiichiro.gig.cache.bytes'</code> 
+	 * (16MB by default).
+	 * 
+	 * @param config Servlet filter configuration.
+	 * @return The {@link ResponseCache} or {@code null} to disable the cache.
+	 */
+	protected ResponseCache cache(FilterConfig config) {
+		String entries = config.getInitParameter(CACHE_ENTRIES);
+		String bytes = config.getInitParameter(CACHE_BYTES);
+		return new ResponseCache((entries == null) ? 1024 : Integer.parseInt(entries),
+				(bytes == null) ? 16 * 1024 * 1024 : Long.parseLong(bytes));
+	}
+	
+	/**
+	 * Returns the {@link ConcurrencyLimiter} to limit the concurrent requests 
+	 * to the specified Web endpoint method, or to the Gig application in total 
+	 * if the specified {@link Route} is {@code null}. The requests over the 
+	 * limit are rejected with <code>'503 Service Unavailable'</code> and 
+	 * <code>'Retry-After'</code> header before running the pipeline.
+	 * This method returns the {@code ConcurrencyLimiter} bounded by the filter 
+	 * init parameter <code>'org.eiichiro.gig.limit'</code> (in total) or 
+	 * <code>'org.eiichiro.gig.limit.endpoint'</code> (for each Web endpoint 
+	 * method), or {@code null} if the parameter is not specified.
+	 * 
+	 * @param config Servlet filter configuration.
+	 * @param route The {@link Route} of the Web endpoint method or 
+	 * {@code null}.
+	 * @return The {@link ConcurrencyLimiter} or {@code null} not to limit.
+	 */
+	protected ConcurrencyLimiter limiter(FilterConfig config, Route route) {
+		String max = config.getInitParameter((route == null) ? LIMIT : ENDPOINT_LIMIT);
+		
+		if (max == null) {
+			return null;
+		}
+		
+		int limit = Integer.parseInt(max);
+		return new ConcurrencyLimiter(Math.min(limit, 20), 1, limit);
+	}
+	
 	/**
 	 * Returns the {@link Configuration} specified by the deployment descriptor.
 	 * If no {@code Configuration} is specified, this method returns 
@@ -80,4 +624,87 @@ public class GigFilter extends BootlegFilter {
 		return configuration;
 	}
 	
+	// Releases the permits and records the metrics of the async request on 
+	// the completion.
+	private class Completion implements AsyncListener {
+		
+		private final Route route;
+		
+		private final ConcurrencyLimiter limiter;
+		
+		private final long start;
+		
+		private final StatusResponse status;
+		
+		private volatile boolean failed;
+		
+		private Completion(Route route, ConcurrencyLimiter limiter, long start, StatusResponse status) {
+			this.route = route;
+			this.limiter = limiter;
+			this.start = start;
+			this.status = status;
+		}
+		
+		@Override
+		public void onComplete(AsyncEvent event) throws IOException {
+			complete(route, limiter, 
+					(failed) ? EndpointMetrics.EXCEPTION : EndpointMetrics.outcome(status.status), 
+					System.nanoTime() - start);
+		}
+		
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {}
+		
+		@Override
+		public void onError(AsyncEvent event) throws IOException {
+			failed = true;
+		}
+		
+		@Override
+		public void onStartAsync(AsyncEvent event) throws IOException {}
+		
+	}
+	
+	private static class StatusResponse extends HttpServletResponseWrapper {
+		
+		// Set on the other thread if the request is completed asynchronously.
+		private volatile int status = SC_OK;
+		
+		private StatusResponse(HttpServletResponse response) {
+			super(response);
+		}
+		
+		@Override
+		public void setStatus(int sc) {
+			status = sc;
+			super.setStatus(sc);
+		}
+		
+		@SuppressWarnings("deprecation")
+		@Override
+		public void setStatus(int sc, String sm) {
+			status = sc;
+			super.setStatus(sc, sm);
+		}
+		
+		@Override
+		public void sendError(int sc) throws IOException {
+			status = sc;
+			super.sendError(sc);
+		}
+		
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			status = sc;
+			super.sendError(sc, msg);
+		}
+		
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			status = SC_FOUND;
+			super.sendRedirect(location);
+		}
+		
+	}
+	
 }
@@ -16,7 +16,10 @@
 package org.eiichiro.gig;
 
 import static org.eiichiro.gig.Version.*;
-import java.lang.reflect.Modifier;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
@@ -27,9 +30,6 @@ import org.eiichiro.reverb.lang.UncheckedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Sets;
-
 /**
  * {@code GigListener} is a {@code WebListener} extension to bootstrap/shutdown 
  * Gig application.
@@ -40,6 +40,16 @@ public class GigListener extends WebListener {
 
 	public static final String CONFIGURATION = "org.eiichiro.gig.configuration";
 	
+	/** The {@code ServletContext} attribute name of the {@link BootReport}. */
+	public static final String BOOT_REPORT = "org.eiichiro.gig.boot";
+	
+	/**
+	 * The built-in components of Gig, which are skipped by the component scan 
+	 * and installed explicitly.
+	 */
+	static final List<Class<?>> BUILTINS = Collections.unmodifiableList(
+			Arrays.<Class<?>>asList(TransactionalInterceptor.class));
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 	
 	private Configuration configuration;
@@ -55,28 +65,63 @@ public class GigListener extends WebListener {
 	 * sets it to the {@code ServletContext}.
 	 * If no {@code Configuration} is specified, this method uses 
 	 * {@link DefaultConfiguration}.
+	 * The time spent on each boot phase is recorded in {@link BootReport}, 
+	 * logged as a single-line JSON and set to the {@code ServletContext} as 
+	 * the attribute <code>'org.eiichiro.gig.boot'</code>.
 	 * 
 	 * @param sce {@code ServletContextEvent}.
 	 */
 	@Override
 	public void contextInitialized(ServletContextEvent sce) {
-		String clazz = sce.getServletContext().getInitParameter(CONFIGURATION);
-		Configuration configuration = null;
+		BootReport report = new BootReport();
+		BootReport.current(report);
 		
-		if (clazz == null) {
-			configuration = new DefaultConfiguration();
-		} else {
-			try {
-				configuration = (Configuration) Class.forName(clazz).newInstance();
-			} catch (Exception e) {
-				logger.error("Failed to load configuration", e);
-				throw new UncheckedException(e);
+		try {
+			report.start("total");
+			report.start("configuration");
+			String clazz = sce.getServletContext().getInitParameter(CONFIGURATION);
+			Configuration configuration = null;
+			
+			if (clazz == null) {
+				configuration = new DefaultConfiguration();
+			} else {
+				try {
+					configuration = (Configuration) Class.forName(clazz).newInstance();
+				} catch (Exception e) {
+					logger.error("Failed to load configuration", e);
+					throw new UncheckedException(e);
+				}
+			}
+			
+			sce.getServletContext().setAttribute(CONFIGURATION, configuration);
+			this.configuration = configuration;
+			report.stop("configuration");
+			report.start("bootstrap");
+			super.contextInitialized(sce);
+			report.stop("bootstrap");
+			report.stop("total");
+			sce.getServletContext().setAttribute(BOOT_REPORT, report);
+			logger.info("Gig boot report " + report);
+		} finally {
+			BootReport.current(null);
+		}
+	}
+	
+	/**
+	 * Shuts down Gig application and the {@code ExecutorService} of the 
+	 * {@code Configuration}.
+	 * 
+	 * @param sce {@code ServletContextEvent}.
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent sce) {
+		try {
+			super.contextDestroyed(sce);
+		} finally {
+			if (configuration != null) {
+				configuration.shutdown();
 			}
 		}
-		
-		sce.getServletContext().setAttribute(CONFIGURATION, configuration);
-		this.configuration = configuration;
-		super.contextInitialized(sce);
 	}
 	
 	/**
@@ -92,20 +137,50 @@ public class GigListener extends WebListener {
 	
 	/**
 	 * Installs service component classes to the Jaguar container from the 
-	 * {@link Module} which the {@code Configuration#module()} returns.
+	 * {@link Module} which the {@code Configuration#module()} returns, through 
+	 * the {@link Endpoints} registry {@code Configuration#endpoints()} returns.
 	 * 
 	 * @param context {@code ServletContext}.
 	 */
 	@Override
 	protected void install(ServletContext context) {
-		Jaguar.install(Sets.filter(configuration.module().components(), new Predicate<Class<?>>() {
-
-			@Override
-			public boolean apply(Class<?> clazz) {
-				return (!clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers()));
+		BootReport report = BootReport.current();
+		
+		if (report == null) {
+			report = new BootReport();
+		}
+		
+		report.start("module");
+		Endpoints endpoints = configuration.endpoints();
+		report.stop("module");
+		install(endpoints, report);
+	}
+	
+	/**
+	 * Installs the components of the specified {@link Endpoints} registry and 
+	 * the {@link #BUILTINS} to the Jaguar container.
+	 * 
+	 * @param endpoints The {@link Endpoints} registry.
+	 * @param report The {@link BootReport} to record the install time.
+	 */
+	static void install(Endpoints endpoints, BootReport report) {
+		report.start("install");
+		
+		for (Class<?> component : endpoints.components()) {
+			long start = System.nanoTime();
+			Jaguar.install(component);
+			report.install(component, System.nanoTime() - start);
+		}
+		
+		for (Class<?> builtin : BUILTINS) {
+			if (!Jaguar.installed(builtin)) {
+				long start = System.nanoTime();
+				Jaguar.install(builtin);
+				report.install(builtin, System.nanoTime() - start);
 			}
-			
-		}));
+		}
+		
+		report.stop("install");
 	}
 	
 }
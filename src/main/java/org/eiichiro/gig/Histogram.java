@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code Histogram} is the lock-free, fixed-memory histogram of the latencies 
+ * in nanoseconds. The values are counted in the log-linear buckets (8 linear 
+ * sub-buckets per power of 2), so the quantiles are reported within 12.5% 
+ * relative error whatever the range of the values is.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class Histogram {
+	
+	private static final int SUB_BITS = 3;
+	
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS + 1) << SUB_BITS);
+	
+	private final AtomicLong count = new AtomicLong();
+	
+	private final AtomicLong sum = new AtomicLong();
+	
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Records the specified value.
+	 * 
+	 * @param nanos The value in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		buckets.incrementAndGet(index(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		
+		for (long current = max.get(); value > current; current = max.get()) {
+			if (max.compareAndSet(current, value)) {
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of the recorded values.
+	 * 
+	 * @return The number of the recorded values.
+	 */
+	public long count() {
+		return count.get();
+	}
+	
+	/**
+	 * Returns the sum of the recorded values in nanoseconds.
+	 * 
+	 * @return The sum of the recorded values in nanoseconds.
+	 */
+	public long sum() {
+		return sum.get();
+	}
+	
+	/**
+	 * Returns the maximum of the recorded values in nanoseconds.
+	 * 
+	 * @return The maximum of the recorded values in nanoseconds.
+	 */
+	public long max() {
+		return max.get();
+	}
+	
+	/**
+	 * Returns the mean of the recorded values in nanoseconds.
+	 * 
+	 * @return The mean of the recorded values in nanoseconds.
+	 */
+	public double mean() {
+		long count = count();
+		return (count == 0) ? 0 : (double) sum() / count;
+	}
+	
+	/**
+	 * Returns the specified quantile of the recorded values in nanoseconds 
+	 * (the upper bound of the bucket the quantile falls in).
+	 * 
+	 * @param quantile The quantile (<code>0.0</code> - <code>1.0</code>).
+	 * @return The specified quantile of the recorded values in nanoseconds.
+	 */
+	public long quantile(double quantile) {
+		long total = 0;
+		long[] counts = new long[buckets.length()];
+		
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		
+		if (total == 0) {
+			return 0;
+		}
+		
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long cumulative = 0;
+		
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i];
+			
+			if (cumulative >= rank) {
+				return Math.min(upper(i), max());
+			}
+		}
+		
+		return max();
+	}
+	
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		
+		int major = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (major - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return ((major - SUB_BITS + 1) << SUB_BITS) + sub;
+	}
+	
+	static long upper(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		
+		int shift = (index >>> SUB_BITS) - 1;
+		long lower = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+		return lower + (1L << shift) - 1;
+	}
+	
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eiichiro.reverb.lang.UncheckedException;
+
+/**
+ * {@code JSONCodec} writes the instances of a specific class as JSON objects 
+ * of their JavaBeans properties. {@link JSONEncoder} uses the codec generated 
+ * by {@link JSONCodecGenerator} for each class, which calls the getters 
+ * directly, and falls back to the reflective codec returned by 
+ * {@link #reflective(Class)} if the class cannot be generated for.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public abstract class JSONCodec {
+	
+	/**
+	 * Writes the specified object as JSON object to the specified 
+	 * {@code Appendable}.
+	 * 
+	 * @param object The object to be written.
+	 * @param encoder The {@link JSONEncoder} to write the property values.
+	 * @param appendable The {@code Appendable} to be written.
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	public abstract void encode(Object object, JSONEncoder encoder, Appendable appendable) throws IOException;
+	
+	/**
+	 * Returns the {@code JSONCodec} which reads the properties of the 
+	 * specified class with reflection.
+	 * 
+	 * @param clazz The class to be written.
+	 * @return The reflective {@code JSONCodec}.
+	 */
+	public static JSONCodec reflective(Class<?> clazz) {
+		PropertyDescriptor[] properties = properties(clazz);
+		String[] names = new String[properties.length];
+		Method[] methods = new Method[properties.length];
+		
+		for (int i = 0; i < properties.length; i++) {
+			names[i] = properties[i].getName();
+			methods[i] = properties[i].getReadMethod();
+			methods[i].setAccessible(true);
+		}
+		
+		return new Reflective(names, methods);
+	}
+	
+	/**
+	 * Returns the readable JavaBeans properties of the specified class.
+	 * 
+	 * @param clazz The class to be introspected.
+	 * @return The readable JavaBeans properties.
+	 */
+	static PropertyDescriptor[] properties(Class<?> clazz) {
+		try {
+			List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
+			
+			for (PropertyDescriptor property : Introspector.getBeanInfo(clazz, Object.class).getPropertyDescriptors()) {
+				if (property.getReadMethod() != null) {
+					properties.add(property);
+				}
+			}
+			
+			return properties.toArray(new PropertyDescriptor[properties.size()]);
+		} catch (IntrospectionException e) {
+			throw new UncheckedException(e);
+		}
+	}
+	
+	private static final class Reflective extends JSONCodec {
+		
+		private final String[] names;
+		
+		private final Method[] methods;
+		
+		private Reflective(String[] names, Method[] methods) {
+			this.names = names;
+			this.methods = methods;
+		}
+		
+		@Override
+		public void encode(Object object, JSONEncoder encoder, Appendable appendable) throws IOException {
+			appendable.append('{');
+			
+			for (int i = 0; i < names.length; i++) {
+				if (i > 0) {
+					appendable.append(',');
+				}
+				
+				JSONEncoder.string(names[i], appendable);
+				appendable.append(':');
+				
+				try {
+					encoder.encode(methods[i].invoke(object), appendable);
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new UncheckedException(e);
+				}
+			}
+			
+			appendable.append('}');
+		}
+		
+	}
+	
+}
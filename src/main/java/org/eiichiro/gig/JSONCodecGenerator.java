@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code JSONCodecGenerator} generates the {@link JSONCodec} specialized for 
+ * a class with Javassist. The generated codec is defined in the same package 
+ * and the same class loader as the class, and writes the property names as 
+ * the constants and the property values by calling the getters directly 
+ * (the primitive values are written without boxing), so no reflection is 
+ * performed on the per-request path.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class JSONCodecGenerator {
+	
+	private static final String SUFFIX = "$$JSONCodec";
+	
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	/**
+	 * Generates the {@link JSONCodec} specialized for the specified class.
+	 * 
+	 * @param clazz The class to be written.
+	 * @return The generated {@link JSONCodec} or {@code null} if the class 
+	 * cannot be generated for (e.g. the class is not public and has no class 
+	 * loader, or Javassist cannot define the class on this JVM).
+	 */
+	public JSONCodec generate(Class<?> clazz) {
+		if (clazz.getClassLoader() == null || clazz.isAnonymousClass() || clazz.isLocalClass()
+				|| Modifier.isPrivate(clazz.getModifiers())) {
+			return null;
+		}
+		
+		try {
+			ClassPool pool = new ClassPool(true);
+			pool.insertClassPath(new LoaderClassPath(clazz.getClassLoader()));
+			pool.insertClassPath(new LoaderClassPath(JSONCodec.class.getClassLoader()));
+			CtClass codec = pool.makeClass(clazz.getName() + SUFFIX);
+			codec.setSuperclass(pool.get(JSONCodec.class.getName()));
+			codec.addMethod(CtNewMethod.make(source(clazz), codec));
+			Class<?> generated = codec.toClass(clazz.getClassLoader(), clazz.getProtectionDomain());
+			codec.detach();
+			return (JSONCodec) generated.newInstance();
+		} catch (Throwable e) {
+			logger.debug("Failed to generate JSON codec for [" + clazz + "]; falls back to reflection", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the Javassist source of the {@code encode} method for the 
+	 * specified class.
+	 * 
+	 * @param clazz The class to be written.
+	 * @return The Javassist source of the {@code encode} method.
+	 */
+	String source(Class<?> clazz) {
+		StringBuilder source = new StringBuilder();
+		source.append("public void encode(Object object, ").append(JSONEncoder.class.getName())
+				.append(" encoder, java.lang.Appendable appendable) throws java.io.IOException {\n");
+		source.append(clazz.getName()).append(" bean = (").append(clazz.getName()).append(") object;\n");
+		char separator = '{';
+		
+		for (PropertyDescriptor property : JSONCodec.properties(clazz)) {
+			Method method = property.getReadMethod();
+			
+			if (!Modifier.isPublic(method.getModifiers()) 
+					|| (!Modifier.isPublic(method.getDeclaringClass().getModifiers()) 
+							&& method.getDeclaringClass().getPackage() != clazz.getPackage())) {
+				throw new IllegalArgumentException("Property [" + property.getName() + "] of [" 
+						+ clazz + "] is not accessible");
+			}
+			
+			// Property names are Java identifiers, so they need no escape.
+			source.append("appendable.append(\"").append(separator).append("\\\"")
+					.append(property.getName()).append("\\\":\");\n");
+			String value = "bean." + method.getName() + "()";
+			Class<?> type = method.getReturnType();
+			
+			// Javassist miscompiles the conditional expression as the argument 
+			// of the interface method, and String.valueOf(boolean) returns the 
+			// literals without allocation.
+			if (type == boolean.class) {
+				source.append("appendable.append(String.valueOf(").append(value).append("));\n");
+			} else if (type == int.class || type == long.class || type == short.class || type == byte.class) {
+				source.append(JSONEncoder.class.getName()).append(".integer((long) ").append(value)
+						.append(", appendable);\n");
+			} else if (type == char.class) {
+				source.append(JSONEncoder.class.getName()).append(".string(String.valueOf(").append(value)
+						.append("), appendable);\n");
+			} else if (type == float.class || type == double.class) {
+				source.append(JSONEncoder.class.getName()).append(".decimal(").append(value)
+						.append(", appendable);\n");
+			} else {
+				source.append("encoder.encode(").append(value).append(", appendable);\n");
+			}
+			
+			separator = ',';
+		}
+		
+		if (separator == '{') {
+			source.append("appendable.append('{');\n");
+		}
+		
+		return source.append("appendable.append('}');\n}").toString();
+	}
+	
+}
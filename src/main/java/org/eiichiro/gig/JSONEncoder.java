@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@code JSONEncoder} writes Java objects as JSON text to {@code Appendable} 
+ * without building the intermediate representation.
+ * {@code null}, {@code CharSequence}, {@code Character}, {@code Number}, 
+ * {@code Boolean}, {@code Enum} (as the name), {@code Date} (as the epoch 
+ * milliseconds), {@code Map}, {@code Iterable}, {@code Iterator} and arrays 
+ * are written as the corresponding JSON values, and the other objects are 
+ * written as JSON objects of their JavaBeans properties with the 
+ * {@link JSONCodec} generated for each class, and the integral numbers are 
+ * written digit by digit without the intermediate strings.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class JSONEncoder {
+	
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	private static final JSONEncoder SHARED = new JSONEncoder();
+	
+	private final ConcurrentMap<Class<?>, JSONCodec> codecs = new ConcurrentHashMap<Class<?>, JSONCodec>();
+	
+	private final JSONCodecGenerator generator = new JSONCodecGenerator();
+	
+	/**
+	 * Returns the {@code JSONEncoder} shared in the JVM.
+	 * 
+	 * @return The {@code JSONEncoder} shared in the JVM.
+	 */
+	public static JSONEncoder shared() {
+		return SHARED;
+	}
+	
+	/**
+	 * Writes the specified object as JSON text to the specified 
+	 * {@code Appendable}.
+	 * 
+	 * @param object The object to be written.
+	 * @param appendable The {@code Appendable} to be written.
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	public void encode(Object object, Appendable appendable) throws IOException {
+		if (object == null) {
+			appendable.append("null");
+		} else if (object instanceof CharSequence || object instanceof Character) {
+			string(object.toString(), appendable);
+		} else if (object instanceof Integer || object instanceof Long 
+				|| object instanceof Short || object instanceof Byte) {
+			integer(((Number) object).longValue(), appendable);
+		} else if (object instanceof Double) {
+			decimal(((Double) object).doubleValue(), appendable);
+		} else if (object instanceof Float) {
+			decimal(((Float) object).floatValue(), appendable);
+		} else if (object instanceof Number || object instanceof Boolean) {
+			appendable.append(object.toString());
+		} else if (object instanceof Enum<?>) {
+			string(((Enum<?>) object).name(), appendable);
+		} else if (object instanceof Date) {
+			appendable.append(String.valueOf(((Date) object).getTime()));
+		} else if (object instanceof Map<?, ?>) {
+			appendable.append('{');
+			boolean first = true;
+			
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+				if (!first) {
+					appendable.append(',');
+				}
+				
+				string(String.valueOf(entry.getKey()), appendable);
+				appendable.append(':');
+				encode(entry.getValue(), appendable);
+				first = false;
+			}
+			
+			appendable.append('}');
+		} else if (object instanceof Iterable<?>) {
+			array(((Iterable<?>) object).iterator(), appendable);
+		} else if (object instanceof Iterator<?>) {
+			array((Iterator<?>) object, appendable);
+		} else if (object.getClass().isArray()) {
+			appendable.append('[');
+			
+			for (int i = 0; i < Array.getLength(object); i++) {
+				if (i > 0) {
+					appendable.append(',');
+				}
+				
+				encode(Array.get(object, i), appendable);
+			}
+			
+			appendable.append(']');
+		} else {
+			bean(object, appendable);
+		}
+	}
+	
+	/**
+	 * Writes the specified floating-point number to the specified 
+	 * {@code Appendable}, or <code>null</code> if it is NaN or infinite 
+	 * (which JSON cannot represent).
+	 * 
+	 * @param value The number to be written.
+	 * @param appendable The {@code Appendable} to be written.
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	public static void decimal(double value, Appendable appendable) throws IOException {
+		appendable.append((Double.isNaN(value) || Double.isInfinite(value)) ? "null" : String.valueOf(value));
+	}
+	
+	/**
+	 * Writes the specified floating-point number to the specified 
+	 * {@code Appendable}, or <code>null</code> if it is NaN or infinite 
+	 * (which JSON cannot represent).
+	 * 
+	 * @param value The number to be written.
+	 * @param appendable The {@code Appendable} to be written.
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	public static void decimal(float value, Appendable appendable) throws IOException {
+		appendable.append((Float.isNaN(value) || Float.isInfinite(value)) ? "null" : String.valueOf(value));
+	}
+	
+	/**
+	 * Writes the specified integral number to the specified {@code Appendable} 
+	 * digit by digit.
+	 * 
+	 * @param value The number to be written.
+	 * @param appendable The {@code Appendable} to be written.
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	public static void integer(long value, Appendable appendable) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			appendable.append("-9223372036854775808");
+			return;
+		}
+		
+		if (value < 0) {
+			appendable.append('-');
+			value = -value;
+		}
+		
+		long divisor = 1;
+		
+		while (divisor <= value / 10) {
+			divisor *= 10;
+		}
+		
+		for (; divisor > 0; divisor /= 10) {
+			appendable.append((char) ('0' + value / divisor % 10));
+		}
+	}
+	
+	private void array(Iterator<?> iterator, Appendable appendable) throws IOException {
+		appendable.append('[');
+		
+		for (boolean first = true; iterator.hasNext(); first = false) {
+			if (!first) {
+				appendable.append(',');
+			}
+			
+			encode(iterator.next(), appendable);
+		}
+		
+		appendable.append(']');
+	}
+	
+	private void bean(Object object, Appendable appendable) throws IOException {
+		codec(object.getClass()).encode(object, this, appendable);
+	}
+	
+	/**
+	 * Returns the {@link JSONCodec} for the specified class. The codec is 
+	 * generated with {@link JSONCodecGenerator} (or falls back to the 
+	 * reflective codec) on the first call and cached.
+	 * 
+	 * @param clazz The class to be written.
+	 * @return The {@link JSONCodec} for the specified class.
+	 */
+	public JSONCodec codec(Class<?> clazz) {
+		JSONCodec codec = codecs.get(clazz);
+		
+		if (codec != null) {
+			return codec;
+		}
+		
+		codec = generator.generate(clazz);
+		
+		if (codec == null) {
+			codec = JSONCodec.reflective(clazz);
+		}
+		
+		JSONCodec existing = codecs.putIfAbsent(clazz, codec);
+		return (existing == null) ? codec : existing;
+	}
+	
+	/**
+	 * Prepares the {@link JSONCodec}s for the specified type, the type 
+	 * arguments and the element types of it and the types of the properties 
+	 * of them ahead of the first request, so the codecs for the results of 
+	 * the Web endpoint methods are generated at boot.
+	 * 
+	 * @param type The type to be written.
+	 */
+	public void prepare(Type type) {
+		if (type instanceof ParameterizedType) {
+			for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+				prepare(argument);
+			}
+			
+			prepare(((ParameterizedType) type).getRawType());
+		} else if (type instanceof GenericArrayType) {
+			prepare(((GenericArrayType) type).getGenericComponentType());
+		} else if (type instanceof WildcardType) {
+			for (Type bound : ((WildcardType) type).getUpperBounds()) {
+				prepare(bound);
+			}
+			
+		} else if (type instanceof Class<?>) {
+			Class<?> clazz = (Class<?>) type;
+			
+			if (clazz.isArray()) {
+				prepare(clazz.getComponentType());
+			} else if (bean(clazz) && !codecs.containsKey(clazz)) {
+				codec(clazz);
+				
+				for (PropertyDescriptor property : JSONCodec.properties(clazz)) {
+					prepare(property.getReadMethod().getGenericReturnType());
+				}
+			}
+		}
+	}
+	
+	private static boolean bean(Class<?> clazz) {
+		if (clazz.isPrimitive() || clazz.isInterface() || clazz.isEnum() 
+				|| Modifier.isAbstract(clazz.getModifiers()) || clazz.getName().startsWith("java.") 
+				|| clazz.getName().startsWith("javax.")) {
+			return false;
+		}
+		
+		for (Class<?> type : new Class<?>[] {CharSequence.class, Number.class, Date.class, 
+				Map.class, Iterable.class, Iterator.class}) {
+			if (type.isAssignableFrom(clazz)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Writes the specified string as JSON string to the specified 
+	 * {@code Appendable}.
+	 * 
+	 * @param string The string to be written.
+	 * @param appendable The {@code Appendable} to be written.
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	public static void string(String string, Appendable appendable) throws IOException {
+		appendable.append('"');
+		int start = 0;
+		
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			
+			if (c >= 0x20 && c != '"' && c != '\\' && c != 0x2028 && c != 0x2029) {
+				continue;
+			}
+			
+			appendable.append(string, start, i);
+			start = i + 1;
+			
+			switch (c) {
+			case '"':
+				appendable.append("\\\"");
+				break;
+			case '\\':
+				appendable.append("\\\\");
+				break;
+			case '\n':
+				appendable.append("\\n");
+				break;
+			case '\r':
+				appendable.append("\\r");
+				break;
+			case '\t':
+				appendable.append("\\t");
+				break;
+			default:
+				appendable.append("\\u").append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+						.append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+			}
+		}
+		
+		appendable.append(string, start, string.length()).append('"');
+	}
+	
+}
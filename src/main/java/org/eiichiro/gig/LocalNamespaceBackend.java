@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code LocalNamespaceBackend} is the in-process reference implementation of 
+ * {@link NamespaceBackend}. The values are kept in the JVM and the listeners 
+ * are notified synchronously, so the {@link Namespace}s sharing the instance 
+ * behave like the nodes sharing the key-value service. 
+ * This is intended for the testing and the single node deployment.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class LocalNamespaceBackend implements NamespaceBackend {
+	
+	private final ConcurrentMap<String, Map<String, byte[]>> scopes = new ConcurrentHashMap<String, Map<String, byte[]>>();
+	
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	
+	private final AtomicLong reads = new AtomicLong();
+	
+	private final AtomicLong writes = new AtomicLong();
+	
+	/** {@inheritDoc} */
+	@Override
+	public Map<String, byte[]> get(String scope, Collection<String> keys) {
+		reads.incrementAndGet();
+		Map<String, byte[]> map = scope(scope);
+		Map<String, byte[]> values = new HashMap<String, byte[]>();
+		
+		synchronized (map) {
+			for (String key : keys) {
+				byte[] value = map.get(key);
+				
+				if (value != null) {
+					values.put(key, value);
+				}
+			}
+		}
+		
+		return values;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public void write(String origin, String scope, Map<String, byte[]> values) {
+		writes.incrementAndGet();
+		Map<String, byte[]> map = scope(scope);
+		
+		synchronized (map) {
+			for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+				if (entry.getValue() == null) {
+					map.remove(entry.getKey());
+				} else {
+					map.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		
+		invalidate(origin, scope, values.keySet());
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public boolean replace(String origin, String scope, String key, byte[] expected, byte[] value) {
+		writes.incrementAndGet();
+		Map<String, byte[]> map = scope(scope);
+		
+		synchronized (map) {
+			if (!Arrays.equals(map.get(key), expected)) {
+				return false;
+			}
+			
+			if (value == null) {
+				map.remove(key);
+			} else {
+				map.put(key, value);
+			}
+		}
+		
+		invalidate(origin, scope, Collections.singleton(key));
+		return true;
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public void subscribe(Listener listener) {
+		listeners.add(listener);
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public void unsubscribe(Listener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Returns the number of the read requests.
+	 * 
+	 * @return The number of the read requests.
+	 */
+	public long reads() {
+		return reads.get();
+	}
+	
+	/**
+	 * Returns the number of the write requests.
+	 * 
+	 * @return The number of the write requests.
+	 */
+	public long writes() {
+		return writes.get();
+	}
+	
+	private Map<String, byte[]> scope(String scope) {
+		Map<String, byte[]> map = scopes.get(scope);
+		
+		if (map == null) {
+			scopes.putIfAbsent(scope, new HashMap<String, byte[]>());
+			map = scopes.get(scope);
+		}
+		
+		return map;
+	}
+	
+	private void invalidate(String origin, String scope, Collection<String> keys) {
+		for (Listener listener : listeners) {
+			listener.invalidate(origin, scope, keys);
+		}
+	}
+	
+}
@@ -17,22 +17,53 @@ package org.eiichiro.gig;
 
 import static org.eiichiro.gig.Version.*;
 
+import java.net.InetSocketAddress;
+
 /**
  * {@code Main} is a command line interface to print the information about this 
- * Gig build.
+ * Gig build, or to run Gig application on the {@link EmbeddedServer} without 
+ * the Servlet container:
+ * <pre>
+ * java org.eiichiro.gig.Main                 (prints the version)
+ * java org.eiichiro.gig.Main server [port]   (runs the embedded server on the port, 8080 by default)
+ * </pre>
+ * The {@link Configuration} of the embedded server is specified as the 
+ * system property <code>'org.eiichiro.gig.configuration'</code> 
+ * ({@link DefaultConfiguration} by default).
  * 
  * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
  */
 public class Main {
 
 	/**
-	 * Prints out the information about this Gig build.
+	 * Prints out the information about this Gig build, and runs the 
+	 * {@link EmbeddedServer} if the first argument is <code>'server'</code>.
 	 * 
 	 * @param args The command line arguments.
+	 * @throws Exception If the embedded server cannot be started.
 	 */
-	public static void main(String[] args) {
+	public static void main(String[] args) throws Exception {
 		System.out.println("Gig " + MAJOR + "." + MINER + "." + BUILD);
 //		System.out.println("Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.");
+		
+		if (args.length == 0 || !args[0].equals("server")) {
+			return;
+		}
+		
+		String clazz = System.getProperty(GigListener.CONFIGURATION);
+		Configuration configuration = (clazz == null) 
+				? new DefaultConfiguration() : (Configuration) Class.forName(clazz).newInstance();
+		int port = (args.length > 1) ? Integer.parseInt(args[1]) : 8080;
+		final EmbeddedServer server = new EmbeddedServer(configuration, new InetSocketAddress(port));
+		Runtime.getRuntime().addShutdownHook(new Thread("gig-shutdown") {
+			
+			@Override
+			public void run() {
+				server.stop();
+			}
+			
+		});
+		server.start();
 	}
 	
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code Metrics} is the registry of the runtime metrics of Gig application:
+ * the {@link EndpointMetrics} of each Web endpoint method, the instantiation 
+ * time of each Web endpoint class and the named {@link Gauge}s the other 
+ * facilities (e.g. {@link ResponseCache}) export.
+ * The {@link EndpointMetrics} are exposed as JMX MBeans named
+ * <code>'org.eiichiro.gig:type=Endpoint,context=&lt;context path&gt;,name=&lt;route&gt;'</code>
+ * with {@link #register(String, Iterable)}, and all the metrics are written in the 
+ * plain-text exposition format (Prometheus compatible) with 
+ * {@link #writeTo(Writer)}.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class Metrics {
+	
+	private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+	
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentSkipListMap<String, EndpointMetrics>();
+	
+	private final ConcurrentMap<Class<?>, Histogram> instantiations = new ConcurrentHashMap<Class<?>, Histogram>();
+	
+	private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<String, Gauge>();
+	
+	private final List<ObjectName> names = new ArrayList<ObjectName>();
+	
+	/**
+	 * {@code Gauge} is the metric which is read on the exposition.
+	 * 
+	 * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static interface Gauge {
+		
+		/**
+		 * Returns the current value.
+		 * 
+		 * @return The current value.
+		 */
+		public long value();
+		
+	}
+	
+	/**
+	 * Returns the {@link EndpointMetrics} of the specified {@link Route}.
+	 * 
+	 * @param route The {@link Route}.
+	 * @return The {@link EndpointMetrics} of the specified {@link Route}.
+	 */
+	public EndpointMetrics endpoint(Route route) {
+		EndpointMetrics metrics = endpoints.get(route.name());
+		
+		if (metrics == null) {
+			endpoints.putIfAbsent(route.name(),
+					new EndpointMetrics(route.name(), instantiation(route.endpoint())));
+			metrics = endpoints.get(route.name());
+		}
+		
+		return metrics;
+	}
+	
+	/**
+	 * Returns the histogram of the instantiation time of the specified Web 
+	 * endpoint class.
+	 * 
+	 * @param endpoint The Web endpoint class.
+	 * @return The histogram of the instantiation time.
+	 */
+	public Histogram instantiation(Class<?> endpoint) {
+		Histogram histogram = instantiations.get(endpoint);
+		
+		if (histogram == null) {
+			instantiations.putIfAbsent(endpoint, new Histogram());
+			histogram = instantiations.get(endpoint);
+		}
+		
+		return histogram;
+	}
+	
+	/**
+	 * Registers the specified {@link Gauge} with the specified name. The name 
+	 * can have the labels like <code>'gig_cache_hits{cache="response"}'</code>.
+	 * 
+	 * @param name The metric name.
+	 * @param gauge The {@link Gauge} to be registered.
+	 */
+	public void gauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+	
+	/**
+	 * Registers the {@link EndpointMetrics} of the specified {@link Route}s as 
+	 * JMX MBeans to the platform MBean server.
+	 * 
+	 * @param context The context path of Gig application.
+	 * @param routes The {@link Route}s to be registered.
+	 */
+	public synchronized void register(String context, Iterable<Route> routes) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		
+		for (Route route : routes) {
+			try {
+				ObjectName name = new ObjectName("org.eiichiro.gig:type=Endpoint,context="
+						+ ObjectName.quote(context) + ",name=" + ObjectName.quote(route.name()));
+				
+				if (!server.isRegistered(name)) {
+					server.registerMBean(endpoint(route), name);
+					names.add(name);
+				}
+				
+			} catch (Exception e) {
+				logger.warn("Failed to register MBean for [" + route + "]", e);
+			}
+		}
+	}
+	
+	/** Unregisters the JMX MBeans registered by this {@code Metrics}. */
+	public synchronized void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		
+		for (ObjectName name : names) {
+			try {
+				server.unregisterMBean(name);
+			} catch (Exception e) {
+				logger.debug("Failed to unregister MBean [" + name + "]", e);
+			}
+		}
+		
+		names.clear();
+	}
+	
+	/**
+	 * Writes all the metrics in the plain-text exposition format.
+	 * 
+	 * @param writer The {@code Writer} to be written.
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	public void writeTo(Writer writer) throws IOException {
+		writer.write("# TYPE gig_requests_total counter\n");
+		
+		for (EndpointMetrics metrics : endpoints.values()) {
+			for (int i = 0; i < EndpointMetrics.OUTCOMES.length; i++) {
+				long count = metrics.count(i);
+				
+				if (count > 0) {
+					writer.write("gig_requests_total{route=" + quote(metrics.getRoute())
+							+ ",outcome=\"" + EndpointMetrics.OUTCOMES[i] + "\"} " + count + "\n");
+				}
+			}
+		}
+		
+		writer.write("# TYPE gig_request_seconds summary\n");
+		
+		for (EndpointMetrics metrics : endpoints.values()) {
+			write(writer, "gig_request_seconds", "route=" + quote(metrics.getRoute()), metrics.latency());
+		}
+		
+		writer.write("# TYPE gig_instantiation_seconds summary\n");
+		Map<String, Histogram> instantiations = new TreeMap<String, Histogram>();
+		
+		for (Entry<Class<?>, Histogram> entry : this.instantiations.entrySet()) {
+			instantiations.put(entry.getKey().getName(), entry.getValue());
+		}
+		
+		for (Entry<String, Histogram> entry : instantiations.entrySet()) {
+			write(writer, "gig_instantiation_seconds", "endpoint=" + quote(entry.getKey()), entry.getValue());
+		}
+		
+		for (Entry<String, Gauge> gauge : gauges.entrySet()) {
+			writer.write(gauge.getKey() + " " + gauge.getValue().value() + "\n");
+		}
+		
+		writer.flush();
+	}
+	
+	private static void write(Writer writer, String name, String labels, Histogram histogram)
+			throws IOException {
+		if (histogram.count() == 0) {
+			return;
+		}
+		
+		for (double quantile : QUANTILES) {
+			writer.write(name + "{" + labels + ",quantile=\"" + quantile + "\"} "
+					+ seconds(histogram.quantile(quantile)) + "\n");
+		}
+		
+		writer.write(name + "_sum{" + labels + "} " + seconds(histogram.sum()) + "\n");
+		writer.write(name + "_count{" + labels + "} " + histogram.count() + "\n");
+	}
+	
+	private static String seconds(long nanos) {
+		return String.valueOf((double) nanos / 1000000000);
+	}
+	
+	private static String quote(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+	}
+	
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import org.eiichiro.bootleg.annotation.Endpoint;
+import org.eiichiro.jaguar.Builtin;
+import org.eiichiro.jaguar.Component;
+import org.eiichiro.jaguar.Stereotype;
+import org.eiichiro.jaguar.deployment.Deployment;
+import org.eiichiro.jaguar.inject.Binding;
+import org.eiichiro.jaguar.scope.Scope;
+
+/**
+ * {@code ModuleProcessor} is a JSR 269 annotation processor to detect the 
+ * components at compile time and generate {@code org.eiichiro.gig.Module_}, 
+ * which makes {@link DefaultConfiguration#module()} skip the classpath scan.
+ * This processor is registered as the service provider, so it runs 
+ * automatically on <code>javac</code> (and Maven build) if Gig is on the 
+ * classpath.
+ * 
+ * The components are detected with the same rules as 
+ * {@link ComponentScanner} and listed in the resource
+ * <code>'META-INF/gig/components'</code> of the build output. The generated 
+ * {@code Module_} loads the component classes listed in all of these 
+ * resources on the runtime classpath (see {@link #components(ClassLoader)}), 
+ * so the components packaged in the libraries built with this processor are 
+ * also installed. The classes are loaded in the same way as the classes 
+ * scanned by {@link DefaultConfiguration}, so the initialization is deferred 
+ * in the same mode. On the incremental 
+ * compilation, the components listed in the previous build output are merged 
+ * unless they have been recompiled or removed.
+ * 
+ * The generation of {@code Module_} can be disabled with the processor option
+ * <code>-Aorg.eiichiro.gig.module=false</code> (e.g. for the component 
+ * library); the component list is always written.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ModuleProcessor extends AbstractProcessor {
+	
+	/** The resource name of the component list. */
+	public static final String COMPONENTS = "META-INF/gig/components";
+	
+	/** The processor option to enable/disable the generation of {@code Module_}. */
+	public static final String MODULE = "org.eiichiro.gig.module";
+	
+	private static final String PACKAGE = "org.eiichiro.gig";
+	
+	private static final String NAME = "Module_";
+	
+	private static final Set<String> QUALIFIERS = new HashSet<String>();
+	
+	static {
+		QUALIFIERS.add(Stereotype.class.getName());
+		QUALIFIERS.add(Deployment.class.getName());
+		QUALIFIERS.add(Binding.class.getName());
+		QUALIFIERS.add(Scope.class.getName());
+	}
+	
+	private final Set<String> components = new TreeSet<String>();
+	
+	private final Set<String> processed = new HashSet<String>();
+	
+	private boolean generated;
+	
+	/**
+	 * Returns <code>'*'</code> to process all the types in the compilation.
+	 * 
+	 * @return <code>'*'</code>.
+	 */
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton("*");
+	}
+	
+	/**
+	 * Returns {@link #MODULE}.
+	 * 
+	 * @return {@link #MODULE}.
+	 */
+	@Override
+	public Set<String> getSupportedOptions() {
+		return Collections.singleton(MODULE);
+	}
+	
+	/**
+	 * Returns the latest source version supported by the compiler.
+	 * 
+	 * @return The latest source version supported by the compiler.
+	 */
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+	
+	/**
+	 * Returns the binary names of the components listed in all the component 
+	 * lists (<code>'META-INF/gig/components'</code>) on the classpath of the 
+	 * specified {@code ClassLoader}.
+	 * 
+	 * @param loader The {@code ClassLoader} to find the component lists.
+	 * @return The binary names of the components listed.
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	public static Set<String> components(ClassLoader loader) throws IOException {
+		Set<String> components = new HashSet<String>();
+		Enumeration<URL> resources = loader.getResources(COMPONENTS);
+		
+		while (resources.hasMoreElements()) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					resources.nextElement().openStream(), "UTF-8"));
+			
+			try {
+				String line;
+				
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					
+					if (line.length() > 0 && !line.startsWith("#")) {
+						components.add(line);
+					}
+				}
+				
+			} finally {
+				reader.close();
+			}
+		}
+		
+		return components;
+	}
+	
+	/**
+	 * Generates {@code Module_} on the first round, collects the components 
+	 * from the root elements of each round and writes the component list on 
+	 * the last round.
+	 * This method never claims any annotation.
+	 * 
+	 * @param annotations The annotation types requested to be processed.
+	 * @param roundEnv The environment for the current round.
+	 * @return {@code false}.
+	 */
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			if (!processed.isEmpty()) {
+				write();
+			}
+			
+			return false;
+		}
+		
+		if (!generated) {
+			generate();
+			generated = true;
+		}
+		
+		for (Element element : roundEnv.getRootElements()) {
+			collect(element);
+		}
+		
+		return false;
+	}
+	
+	private void collect(Element element) {
+		if (!element.getKind().isClass() && !element.getKind().isInterface()) {
+			return;
+		}
+		
+		TypeElement type = (TypeElement) element;
+		String name = processingEnv.getElementUtils().getBinaryName(type).toString();
+		processed.add(name);
+		
+		if (matches(type)) {
+			components.add(name);
+		}
+		
+		for (Element enclosed : type.getEnclosedElements()) {
+			collect(enclosed);
+		}
+	}
+	
+	/**
+	 * Returns whether the specified type is a component or not.
+	 * 
+	 * @param type The type to be matched.
+	 * @return Whether the specified type is a component or not.
+	 */
+	boolean matches(TypeElement type) {
+		Set<Modifier> modifiers = type.getModifiers();
+		
+		if (!modifiers.contains(Modifier.PUBLIC)) {
+			return false;
+		}
+		
+		if (annotated(type, Endpoint.class.getName())) {
+			return true;
+		}
+		
+		if (type.getKind().isInterface() || modifiers.contains(Modifier.ABSTRACT)
+				|| annotated(type, Builtin.class.getName())) {
+			return false;
+		}
+		
+		TypeMirror superclass = type.getSuperclass();
+		
+		while (superclass.getKind() == TypeKind.DECLARED) {
+			TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+			
+			if (element.getQualifiedName().contentEquals(Component.class.getName())) {
+				return true;
+			}
+			
+			superclass = element.getSuperclass();
+		}
+		
+		if (superclass.getKind() == TypeKind.ERROR) {
+			return false;
+		}
+		
+		for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+			Element annotation = mirror.getAnnotationType().asElement();
+			Retention retention = annotation.getAnnotation(Retention.class);
+			
+			if (retention != null && retention.value() == RetentionPolicy.SOURCE) {
+				continue;
+			}
+			
+			for (AnnotationMirror qualifier : annotation.getAnnotationMirrors()) {
+				TypeElement element = (TypeElement) qualifier.getAnnotationType().asElement();
+				
+				if (QUALIFIERS.contains(element.getQualifiedName().toString())) {
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	private boolean annotated(TypeElement type, String annotation) {
+		for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+			TypeElement element = (TypeElement) mirror.getAnnotationType().asElement();
+			
+			if (element.getQualifiedName().contentEquals(annotation)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private void write() {
+		Filer filer = processingEnv.getFiler();
+		Elements elements = processingEnv.getElementUtils();
+		
+		// Merges the components listed by the previous (incremental) build.
+		try {
+			FileObject resource = filer.getResource(StandardLocation.CLASS_OUTPUT, "", COMPONENTS);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openInputStream(), "UTF-8"));
+			
+			try {
+				String line;
+				
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					
+					if (line.length() == 0 || line.startsWith("#") || processed.contains(line)) {
+						continue;
+					}
+					
+					if (elements.getTypeElement(line.replace('$', '.')) != null) {
+						components.add(line);
+					}
+				}
+				
+			} finally {
+				reader.close();
+			}
+			
+		} catch (IOException e) {
+			// No previous build.
+		}
+		
+		try {
+			FileObject resource = filer.createResource(StandardLocation.CLASS_OUTPUT, "", COMPONENTS);
+			Writer writer = new BufferedWriter(new OutputStreamWriter(resource.openOutputStream(), "UTF-8"));
+			
+			try {
+				writer.write("# Generated by " + getClass().getName() + "\n");
+				
+				for (String component : components) {
+					writer.write(component + "\n");
+				}
+				
+			} finally {
+				writer.close();
+			}
+			
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR,
+					"Failed to write [" + COMPONENTS + "]: " + e);
+		}
+	}
+	
+	private void generate() {
+		if ("false".equals(processingEnv.getOptions().get(MODULE))
+				|| processingEnv.getElementUtils().getTypeElement(PACKAGE + "." + NAME) != null) {
+			return;
+		}
+		
+		try {
+			Writer writer = processingEnv.getFiler().createSourceFile(PACKAGE + "." + NAME).openWriter();
+			
+			try {
+				writer.write(source());
+			} finally {
+				writer.close();
+			}
+			
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR,
+					"Failed to generate [" + PACKAGE + "." + NAME + "]: " + e);
+		}
+	}
+	
+	private String source() {
+		return "package " + PACKAGE + ";\n"
+				+ "\n"
+				+ "import java.util.Set;\n"
+				+ "\n"
+				+ "import org.eiichiro.jaguar.Module;\n"
+				+ "import org.eiichiro.reverb.lang.UncheckedException;\n"
+				+ "\n"
+				+ "/** Generated by {@code " + getClass().getName() + "}. */\n"
+				+ "public class " + NAME + " implements Module {\n"
+				+ "\n"
+				+ "\tprivate final Set<Class<?>> components;\n"
+				+ "\n"
+				+ "\tpublic " + NAME + "() {\n"
+				+ "\t\tClassLoader loader = Thread.currentThread().getContextClassLoader();\n"
+				+ "\n"
+				+ "\t\ttry {\n"
+				+ "\t\t\tcomponents = DefaultConfiguration.load(ModuleProcessor.components(loader), loader,\n"
+				+ "\t\t\t\t\tBoolean.getBoolean(DefaultConfiguration.DEFERRED));\n"
+				+ "\t\t} catch (Exception e) {\n"
+				+ "\t\t\tthrow new UncheckedException(e);\n"
+				+ "\t\t}\n"
+				+ "\t}\n"
+				+ "\n"
+				+ "\t@Override\n"
+				+ "\tpublic Set<Class<?>> components() {\n"
+				+ "\t\treturn components;\n"
+				+ "\t}\n"
+				+ "\n"
+				+ "}\n";
+	}
+	
+}
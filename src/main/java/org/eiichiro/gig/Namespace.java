@@ -15,36 +15,108 @@
  */
 package org.eiichiro.gig;
 
-import java.io.Serializable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
 import java.lang.annotation.Annotation;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
 
 import org.eiichiro.jaguar.Container;
 import org.eiichiro.jaguar.Descriptor;
 import org.eiichiro.jaguar.inject.Inject;
 import org.eiichiro.jaguar.inject.Name;
 import org.eiichiro.jaguar.lifecycle.Activated;
+import org.eiichiro.jaguar.lifecycle.Passivated;
+import org.eiichiro.jaguar.scope.Application;
 import org.eiichiro.jaguar.scope.Context;
 import org.eiichiro.jaguar.scope.Scope;
 import org.eiichiro.jaguar.scope.Singleton;
 import org.eiichiro.jaguar.validation.Required;
+import org.eiichiro.reverb.lang.UncheckedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 
 /**
  * {@code Namespace} provides a facility to get/set the value corresponding to 
  * the specified key in the <b>current</b> context of the specified scope.
  * This API is designed for shared-multitenancy application.
+ * The context and the {@code Store} descriptor of each scope are resolved 
+ * (and the context is installed if necessary) only once, so getting/setting 
+ * the value costs the lookups of the resolved scope and the {@code Store} in 
+ * the current context.
+ * The values can be any objects (they should be {@code Serializable} to be 
+ * stored in the scope whose context is serialized, e.g. session scope), are 
+ * got/set in bulk, updated atomically with {@link #putIfAbsent} and 
+ * {@link #compute}, and expire after the time to live specified on each 
+ * entry. The expired entries are removed with the hashed timing wheel 
+ * advanced on each access to the {@code Store}, so the expiration costs 
+ * amortized constant time rather than a scan of the entries.
+ * The {@code Store}s of the scope which has a large number of the contexts 
+ * (e.g. session scope) can keep the entries in the compact off-heap arena 
+ * with {@link #compact(Class, boolean)}, and the memory used by the 
+ * {@code Store}s of each scope is reported with {@link #usage(Class)}.
+ * The values of a scope can be shared across the nodes of the cluster with 
+ * {@link #distribute(Class, NamespaceBackend)}.
  * 
  * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
  */
 @Name("org.eiichiro.gig.Namespace")
 @Singleton
 public class Namespace {
-
+	
+	private static final String SCOPE = "Parameter 'scope' must not be [null]";
+	
+	private static final String KEY = "Parameter 'key' must not be [null]";
+	
+	private static final String KEYS = "Parameter 'keys' must not be [null]";
+	
+	private static final String VALUE = "Parameter 'value' must not be [null]";
+	
+	private static final String VALUES = "Parameter 'values' must not be [null]";
+	
+	private static final String TYPE = "Parameter 'type' must not be [null]";
+	
+	private static final String FUNCTION = "Parameter 'function' must not be [null]";
+	
 	@Inject @Required private Container container;
 	
+	private final ConcurrentMap<Class<? extends Annotation>, Binding> bindings = new ConcurrentHashMap<Class<? extends Annotation>, Binding>();
+	
+	// Writes the pending values of the distributed Stores behind.
+	private ScheduledExecutorService flusher;
+	
 	@Activated
 	/** Installs {@code Store} component. */
 	void activated() {
@@ -53,6 +125,35 @@ public class Namespace {
 		}
 	}
 	
+	@Passivated
+	/** Flushes the pending writes of the distributed {@code Store}s. */
+	void passivated() {
+		ScheduledExecutorService flusher;
+		
+		synchronized (this) {
+			flusher = this.flusher;
+			this.flusher = null;
+		}
+		
+		if (flusher == null) {
+			return;
+		}
+		
+		flusher.shutdown();
+		
+		for (Binding binding : bindings.values()) {
+			List<Store> stores;
+			
+			synchronized (binding.stores) {
+				stores = new ArrayList<Store>(binding.stores);
+			}
+			
+			for (Store store : stores) {
+				store.flush();
+			}
+		}
+	}
+	
 	/**
 	 * Gets the value corresponding to the specified key in the <b>current</b> 
 	 * context of the specified scope.
@@ -63,11 +164,62 @@ public class Namespace {
 	 * context of the specified scope.
 	 */
 	public String get(Class<? extends Annotation> scope, String key) {
-		Preconditions.checkNotNull(scope, "Parameter 'scope' must not be [" + scope + "]");
-		Preconditions.checkNotNull(key, "Parameter 'key' must not be [" + key + "]");
-		Preconditions.checkArgument(scope.isAnnotationPresent(Scope.class), 
-				"Parameter 'scope' must be annotated with @Scope");
-		return store(scope).get(key);
+		return get(scope, key, String.class);
+	}
+	
+	/**
+	 * Gets the value of the specified type corresponding to the specified key 
+	 * in the <b>current</b> context of the specified scope.
+	 * 
+	 * @param <T> The type of the value.
+	 * @param scope Scope qualifier.
+	 * @param key The key to value.
+	 * @param type The type of the value.
+	 * @return The value corresponding to the specified key in the <b>current</b> 
+	 * context of the specified scope or {@code null} if it is absent or has 
+	 * expired.
+	 * @throws ClassCastException If the value is not an instance of the 
+	 * specified type.
+	 */
+	public <T> T get(Class<? extends Annotation> scope, String key, Class<T> type) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(key, KEY);
+		Preconditions.checkNotNull(type, TYPE);
+		return type.cast(store(scope).get(key));
+	}
+	
+	/**
+	 * Gets the values corresponding to the specified keys in the 
+	 * <b>current</b> context of the specified scope at once.
+	 * 
+	 * @param scope Scope qualifier.
+	 * @param keys The keys to values.
+	 * @return The map of the keys and the values present (the absent or 
+	 * expired keys are not contained).
+	 */
+	public Map<String, Object> get(Class<? extends Annotation> scope, Iterable<String> keys) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(keys, KEYS);
+		List<String> list = new ArrayList<String>();
+		
+		for (String key : keys) {
+			Preconditions.checkNotNull(key, KEY);
+			list.add(key);
+		}
+		
+		Store store = store(scope);
+		store.prefetch(list);
+		Map<String, Object> values = new HashMap<String, Object>();
+		
+		for (String key : list) {
+			Object value = store.get(key);
+			
+			if (value != null) {
+				values.put(key, value);
+			}
+		}
+		
+		return values;
 	}
 	
 	/**
@@ -78,56 +230,1389 @@ public class Namespace {
 	 * @param key The key to value.
 	 * @param value The value to be stored.
 	 */
-	public void set(Class<? extends Annotation> scope, String key, String value) {
-		Preconditions.checkNotNull(scope, "Parameter 'scope' must not be [" + scope + "]");
-		Preconditions.checkNotNull(key, "Parameter 'key' must not be [" + key + "]");
-		Preconditions.checkNotNull(value, "Parameter 'value' must not be [" + value + "]");
-		Preconditions.checkArgument(scope.isAnnotationPresent(Scope.class), 
-				"Parameter 'scope' must be annotated with @Scope");
-		store(scope).set(key, value);
+	public void set(Class<? extends Annotation> scope, String key, Object value) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(key, KEY);
+		Preconditions.checkNotNull(value, VALUE);
+		store(scope).set(key, value, 0);
+	}
+	
+	/**
+	 * Sets the specified key and value into the <b>current</b> context of the 
+	 * specified scope for the specified time to live.
+	 * 
+	 * @param scope Scope qualifier.
+	 * @param key The key to value.
+	 * @param value The value to be stored.
+	 * @param ttl The time to live.
+	 * @param unit The unit of the time to live.
+	 */
+	public void set(Class<? extends Annotation> scope, String key, Object value, long ttl, TimeUnit unit) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(key, KEY);
+		Preconditions.checkNotNull(value, VALUE);
+		store(scope).set(key, value, expires(ttl, unit));
+	}
+	
+	/**
+	 * Sets the specified keys and values into the <b>current</b> context of 
+	 * the specified scope at once.
+	 * 
+	 * @param scope Scope qualifier.
+	 * @param values The map of the keys and the values to be stored.
+	 */
+	public void set(Class<? extends Annotation> scope, Map<String, ?> values) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(values, VALUES);
+		set(store(scope), values, 0);
+	}
+	
+	/**
+	 * Sets the specified keys and values into the <b>current</b> context of 
+	 * the specified scope at once for the specified time to live.
+	 * 
+	 * @param scope Scope qualifier.
+	 * @param values The map of the keys and the values to be stored.
+	 * @param ttl The time to live.
+	 * @param unit The unit of the time to live.
+	 */
+	public void set(Class<? extends Annotation> scope, Map<String, ?> values, long ttl, TimeUnit unit) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(values, VALUES);
+		set(store(scope), values, expires(ttl, unit));
+	}
+	
+	private static void set(Store store, Map<String, ?> values, long expires) {
+		for (Map.Entry<String, ?> entry : values.entrySet()) {
+			Preconditions.checkNotNull(entry.getKey(), KEY);
+			Preconditions.checkNotNull(entry.getValue(), VALUE);
+			store.set(entry.getKey(), entry.getValue(), expires);
+		}
+	}
+	
+	/**
+	 * Sets the specified key and value into the <b>current</b> context of the 
+	 * specified scope if the key is absent (or has expired) atomically.
+	 * 
+	 * @param <T> The type of the value.
+	 * @param scope Scope qualifier.
+	 * @param key The key to value.
+	 * @param value The value to be stored.
+	 * @return The value which has already been stored or {@code null} if the 
+	 * specified value has been stored.
+	 * @throws ClassCastException If the value already stored is not an 
+	 * instance of the type of the specified value.
+	 */
+	public <T> T putIfAbsent(Class<? extends Annotation> scope, String key, T value) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(key, KEY);
+		Preconditions.checkNotNull(value, VALUE);
+		return putIfAbsent(store(scope), key, value, 0);
+	}
+	
+	/**
+	 * Sets the specified key and value into the <b>current</b> context of the 
+	 * specified scope for the specified time to live if the key is absent (or 
+	 * has expired) atomically.
+	 * 
+	 * @param <T> The type of the value.
+	 * @param scope Scope qualifier.
+	 * @param key The key to value.
+	 * @param value The value to be stored.
+	 * @param ttl The time to live.
+	 * @param unit The unit of the time to live.
+	 * @return The value which has already been stored or {@code null} if the 
+	 * specified value has been stored.
+	 * @throws ClassCastException If the value already stored is not an 
+	 * instance of the type of the specified value.
+	 */
+	public <T> T putIfAbsent(Class<? extends Annotation> scope, String key, T value, long ttl, TimeUnit unit) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(key, KEY);
+		Preconditions.checkNotNull(value, VALUE);
+		return putIfAbsent(store(scope), key, value, expires(ttl, unit));
 	}
 	
 	@SuppressWarnings("unchecked")
+	private static <T> T putIfAbsent(Store store, String key, T value, long expires) {
+		Object existing = store.putIfAbsent(key, value, expires);
+		return (existing == null) ? null : (T) existing;
+	}
+	
+	/**
+	 * Computes the value corresponding to the specified key in the 
+	 * <b>current</b> context of the specified scope from the current value 
+	 * (or {@code null} if it is absent or has expired) atomically. 
+	 * The specified function may be applied more than once under contention, 
+	 * so it should be free of side effects. If the function returns 
+	 * {@code null}, the entry is removed. The computed value inherits the 
+	 * expiration of the current value.
+	 * 
+	 * @param <T> The type of the value.
+	 * @param scope Scope qualifier.
+	 * @param key The key to value.
+	 * @param type The type of the value.
+	 * @param function The function to compute the new value.
+	 * @return The computed value.
+	 * @throws ClassCastException If the current value is not an instance of 
+	 * the specified type.
+	 */
+	public <T> T compute(Class<? extends Annotation> scope, String key, Class<T> type, 
+			Function<? super T, ? extends T> function) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(key, KEY);
+		Preconditions.checkNotNull(type, TYPE);
+		Preconditions.checkNotNull(function, FUNCTION);
+		return store(scope).compute(key, type, function);
+	}
+	
+	/**
+	 * Removes the value corresponding to the specified key from the 
+	 * <b>current</b> context of the specified scope.
+	 * 
+	 * @param scope Scope qualifier.
+	 * @param key The key to value.
+	 */
+	public void remove(Class<? extends Annotation> scope, String key) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(key, KEY);
+		store(scope).remove(key);
+	}
+	
+	private static long expires(long ttl, TimeUnit unit) {
+		Preconditions.checkArgument(ttl > 0, "Parameter 'ttl' must be greater than [0]");
+		Preconditions.checkNotNull(unit, "Parameter 'unit' must not be [null]");
+		return System.currentTimeMillis() + unit.toMillis(ttl);
+	}
+	
+	/**
+	 * Makes the {@code Store}s created afterwards in the contexts of the 
+	 * specified scope keep the entries in {@link CompactMap} (UTF-8 encoded 
+	 * keys and string values, and serialized other values) rather than as the 
+	 * objects on the heap. This is intended for the scope which has a large 
+	 * number of the live contexts like session scope, where the per-entry 
+	 * overhead of the heap map dominates the heap and the old generation 
+	 * collection pauses.
+	 * The arena is released when the {@code Store} is unbound from the HTTP 
+	 * session (if the context keeps it as the session attribute) or is 
+	 * collected with the context.
+	 * 
+	 * @param scope Scope qualifier.
+	 * @param direct Whether the arena is allocated off-heap.
+	 */
+	public void compact(Class<? extends Annotation> scope, boolean direct) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Binding binding = binding(scope);
+		binding.direct = direct;
+		binding.compact = true;
+	}
+	
+	/**
+	 * Makes the {@code Store}s created afterwards in the contexts of the 
+	 * specified scope share the values through the specified 
+	 * {@link NamespaceBackend}, which is intended for application scope in the 
+	 * cluster. Each {@code Store} reads the values through the bounded local 
+	 * near-cache, which is invalidated by the changes on the other nodes, and 
+	 * writes them behind in batches. {@link #putIfAbsent} and 
+	 * {@link #compute} are applied atomically on the backend after the 
+	 * pending writes are flushed.
+	 * The serialized form of the distributed {@code Store} contains only the 
+	 * values in the near-cache. The pending writes are flushed when this 
+	 * {@code Namespace} is passivated.
+	 * The values are keyed by the scope name only, so the scope must be 
+	 * application or singleton scope, which has one context in the node.
+	 * 
+	 * @param scope Scope qualifier.
+	 * @param backend The {@link NamespaceBackend} to share the values.
+	 */
+	public void distribute(Class<? extends Annotation> scope, NamespaceBackend backend) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Preconditions.checkNotNull(backend, "Parameter 'backend' must not be [null]");
+		Preconditions.checkArgument(scope == Application.class || scope == Singleton.class, 
+				"Parameter 'scope' must be [" + Application.class + "] or [" + Singleton.class + "]");
+		binding(scope).backend = backend;
+	}
+	
+	/**
+	 * Returns the memory usage of the live {@code Store}s of the specified 
+	 * scope. The heap usage of the {@code Store}s which are not compact is 
+	 * estimated from the number and the length of the entries.
+	 * 
+	 * @param scope Scope qualifier.
+	 * @return The memory usage of the live {@code Store}s of the specified 
+	 * scope.
+	 */
+	public Usage usage(Class<? extends Annotation> scope) {
+		Preconditions.checkNotNull(scope, SCOPE);
+		Binding binding = binding(scope);
+		List<Store> stores;
+		
+		synchronized (binding.stores) {
+			stores = new ArrayList<Store>(binding.stores);
+		}
+		
+		long entries = 0;
+		long heap = 0;
+		long offHeap = 0;
+		
+		for (Store store : stores) {
+			entries += store.size();
+			heap += store.heap();
+			offHeap += store.offHeap();
+		}
+		
+		return new Usage(stores.size(), entries, heap, offHeap);
+	}
+	
+	private synchronized ScheduledExecutorService flusher() {
+		if (flusher == null) {
+			flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "gig-namespace-flusher");
+					thread.setDaemon(true);
+					return thread;
+				}
+				
+			});
+		}
+		
+		return flusher;
+	}
+	
+	private Binding binding(Class<? extends Annotation> scope) {
+		Binding binding = bindings.get(scope);
+		return (binding == null) ? bind(scope) : binding;
+	}
+	
 	private Store store(Class<? extends Annotation> scope) {
+		Binding binding = binding(scope);
+		Store store = binding.context.get(binding.store);
+		
+		if (store == null) {
+			synchronized (binding) {
+				store = binding.context.get(binding.store);
+				
+				if (store == null) {
+					store = container.component(Store.class);
+					
+					if (binding.backend != null) {
+						store.distribute(binding.backend, scope.getName(), flusher());
+					} else if (binding.compact) {
+						store.compact(binding.direct);
+					}
+					
+					binding.context.put(binding.store, store);
+				}
+			}
+		}
+		
+		if (!store.registered) {
+			binding.register(store);
+		}
+		
+		return store;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private synchronized Binding bind(Class<? extends Annotation> scope) {
+		Binding binding = bindings.get(scope);
+		
+		if (binding != null) {
+			return binding;
+		}
+		
+		Preconditions.checkArgument(scope.isAnnotationPresent(Scope.class), 
+				"Parameter 'scope' must be annotated with @Scope");
 		Map<Class<? extends Annotation>, Descriptor<? extends Context>> contexts = container.contexts();
 		Descriptor<? extends Context> descriptor = contexts.get(scope);
 		
 		if (descriptor == null) {
 			Class<? extends Context> context = scope.getAnnotation(Scope.class).value();
-			container.install(context);
+			
+			if (!container.installed(context)) {
+				container.install(context);
+			}
+			
 			descriptor = (Descriptor<? extends Context>) container.components().get(context).get(0);
 			contexts.put(scope, descriptor);
 		}
 		
-		Context context = container.component(descriptor);
-		Descriptor<Store> d = (Descriptor<Store>) container.components().get(Store.class).get(0);
-		Store store = context.get(d);
+		// Context component resolves the current context (e.g. the session of 
+		// the current request) on each access, so the instance can be shared.
+		binding = new Binding(container.component(descriptor), 
+				(Descriptor<Store>) container.components().get(Store.class).get(0));
+		bindings.put(scope, binding);
+		return binding;
+	}
+	
+	private static final class Binding {
+		
+		private final Context context;
 		
-		if (store == null) {
-			store = container.component(Store.class);
-			context.put(d, store);
+		private final Descriptor<Store> store;
+		
+		// The live Stores, which are dropped when they are collected.
+		private final Set<Store> stores = Collections.newSetFromMap(new WeakHashMap<Store, Boolean>());
+		
+		private volatile boolean compact;
+		
+		private volatile boolean direct;
+		
+		private volatile NamespaceBackend backend;
+		
+		private Binding(Context context, Descriptor<Store> store) {
+			this.context = context;
+			this.store = store;
+		}
+		
+		private void register(Store store) {
+			synchronized (stores) {
+				if (!store.registered) {
+					stores.add(store);
+					store.registered = true;
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * The memory usage of the {@code Store}s of a scope.
+	 * 
+	 * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static final class Usage {
+		
+		private final int stores;
+		
+		private final long entries;
+		
+		private final long heap;
+		
+		private final long offHeap;
+		
+		private Usage(int stores, long entries, long heap, long offHeap) {
+			this.stores = stores;
+			this.entries = entries;
+			this.heap = heap;
+			this.offHeap = offHeap;
+		}
+		
+		/**
+		 * Returns the number of the live {@code Store}s.
+		 * 
+		 * @return The number of the live {@code Store}s.
+		 */
+		public int stores() {
+			return stores;
+		}
+		
+		/**
+		 * Returns the total number of the entries.
+		 * 
+		 * @return The total number of the entries.
+		 */
+		public long entries() {
+			return entries;
+		}
+		
+		/**
+		 * Returns the heap memory used by the {@code Store}s in bytes.
+		 * 
+		 * @return The heap memory used by the {@code Store}s in bytes.
+		 */
+		public long heap() {
+			return heap;
+		}
+		
+		/**
+		 * Returns the off-heap memory used by the {@code Store}s in bytes.
+		 * 
+		 * @return The off-heap memory used by the {@code Store}s in bytes.
+		 */
+		public long offHeap() {
+			return offHeap;
+		}
+		
+		@Override
+		public String toString() {
+			return "stores=" + stores + ",entries=" + entries + ",heap=" + heap + ",offHeap=" + offHeap;
 		}
 		
-		return store;
 	}
 	
 	/**
 	 * Namespace value store.
+	 * The expiration of each entry is scheduled on the {@link TimingWheel} 
+	 * ticking every second, which is created on the first entry with the time 
+	 * to live, advanced on each access and rebuilt on deserialization (the 
+	 * expired entries of the distributed {@code Store} are removed lazily on 
+	 * read instead). The entries are kept in the heap map or in the 
+	 * {@link CompactMap} if the {@code Store} is compact.
+	 * {@code Store} is written in the compact binary form (the strings, the 
+	 * integers and the booleans are written without the Java serialization) 
+	 * with {@link #writeExternal(ObjectOutput)}, and the keys changed since the 
+	 * last write are tracked, so only the changes can be replicated with 
+	 * {@link #writeDelta(ObjectOutput)} and {@link #readDelta(ObjectInput)}.
 	 * 
 	 * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
 	 */
-	public static final class Store implements Serializable {
+	public static final class Store implements Externalizable, HttpSessionBindingListener {
+		
+		private static final long serialVersionUID = -2446297164108328217L;
+		
+		private static final Charset UTF_8 = Charset.forName("UTF-8");
+		
+		private static final byte VERSION = 1;
+		
+		private static final byte COMPACT = 0x1;
+		
+		private static final byte DIRECT = 0x2;
+		
+		private static final byte STRING = 0;
+		
+		private static final byte OBJECT = 1;
+		
+		private static final byte INTEGER = 2;
+		
+		private static final byte LONG = 3;
+		
+		private static final byte BOOLEAN = 4;
+		
+		private static final long TICK = 1000;
 		
-		private static final long serialVersionUID = -6951116649694904406L;
+		private static final int SLOTS = 512;
 		
-		private Map<String, String> map = new ConcurrentHashMap<String, String>();
+		// The estimated heap overhead of an entry (the map node, the entry and 
+		// the key string) and a string value in bytes.
+		private static final int ENTRY_BYTES = 104;
+		
+		private static final int STRING_BYTES = 40;
+		
+		// The estimated heap size of an expiration scheduled on the wheel 
+		// (not including the key string shared with the entry).
+		private static final int EXPIRY_BYTES = 32;
+		
+		private ConcurrentMap<String, Entry> map = new ConcurrentHashMap<String, Entry>();
+		
+		// Created on the first entry with the time to live.
+		private volatile TimingWheel<Expiry> wheel;
+		
+		// The keys set or removed since the last write.
+		private final Set<String> dirty = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		
+		private volatile boolean registered;
+		
+		Object get(String key) {
+			long now = advance();
+			Entry entry = map.get(key);
+			
+			if (entry == null) {
+				return null;
+			} else if (entry.expired(now)) {
+				if (map.remove(key, entry)) {
+					cancel(entry);
+					dirty.add(key);
+				}
+				
+				return null;
+			}
+			
+			return entry.value;
+		}
+		
+		void set(String key, Object value, long expires) {
+			advance();
+			Entry entry = new Entry(key, value, expires);
+			cancel(map.put(key, entry));
+			schedule(entry);
+			dirty.add(key);
+		}
+		
+		Object putIfAbsent(String key, Object value, long expires) {
+			long now = advance();
+			Entry entry = new Entry(key, value, expires);
+			
+			while (true) {
+				Entry existing = map.putIfAbsent(key, entry);
+				
+				if (existing == null) {
+					schedule(entry);
+					dirty.add(key);
+					return null;
+				} else if (!existing.expired(now)) {
+					return existing.value;
+				} else if (map.replace(key, existing, entry)) {
+					cancel(existing);
+					schedule(entry);
+					dirty.add(key);
+					return null;
+				}
+			}
+		}
+		
+		<T> T compute(String key, Class<T> type, Function<? super T, ? extends T> function) {
+			long now = advance();
+			
+			// ConcurrentMap (Java 6) has no atomic compute, so the function is 
+			// applied optimistically and the result is committed with CAS.
+			while (true) {
+				Entry existing = map.get(key);
+				boolean present = (existing != null && !existing.expired(now));
+				T value = function.apply(present ? type.cast(existing.value) : null);
+				
+				if (value == null) {
+					if (existing == null) {
+						return null;
+					} else if (map.remove(key, existing)) {
+						cancel(existing);
+						dirty.add(key);
+						return null;
+					}
+					
+				} else {
+					Entry entry = new Entry(key, value, present ? existing.expires : 0);
+					
+					if ((existing == null) ? map.putIfAbsent(key, entry) == null 
+							: map.replace(key, existing, entry)) {
+						cancel(existing);
+						schedule(entry);
+						dirty.add(key);
+						return value;
+					}
+				}
+			}
+		}
+		
+		void remove(String key) {
+			advance();
+			Entry entry = map.remove(key);
+			
+			if (entry != null) {
+				cancel(entry);
+				dirty.add(key);
+			}
+		}
+		
+		int size() {
+			return map.size();
+		}
+		
+		void compact(boolean direct) {
+			Preconditions.checkState(map.isEmpty(), "Store must be empty to be compacted");
+			map = new Compact(direct);
+		}
+		
+		void distribute(NamespaceBackend backend, String scope, ScheduledExecutorService flusher) {
+			Preconditions.checkState(map.isEmpty(), "Store must be empty to be distributed");
+			map = new Distributed(backend, scope, flusher);
+		}
+		
+		void flush() {
+			if (map instanceof Distributed) {
+				((Distributed) map).flush();
+			}
+		}
+		
+		void prefetch(Collection<String> keys) {
+			if (map instanceof Distributed) {
+				((Distributed) map).prefetch(keys);
+			}
+		}
+		
+		long heap() {
+			TimingWheel<Expiry> wheel = this.wheel;
+			long heap = (wheel == null) ? 0 : wheel.heap() + EXPIRY_BYTES * wheel.size();
+			
+			if (map instanceof Compact) {
+				return heap + ((Compact) map).map.heap();
+			}
+			
+			
+			for (Entry entry : map.values()) {
+				heap += ENTRY_BYTES + 2L * entry.key.length();
+				
+				if (entry.value instanceof String) {
+					heap += STRING_BYTES + 2L * ((String) entry.value).length();
+				}
+			}
+			
+			return heap;
+		}
+		
+		long offHeap() {
+			return (map instanceof Compact) ? ((Compact) map).map.offHeap() : 0;
+		}
+		
+		/** Does nothing. */
+		@Override
+		public void valueBound(HttpSessionBindingEvent event) {}
+		
+		/**
+		 * Removes all the entries (and releases the arena of the compact 
+		 * {@code Store}) when this {@code Store} is unbound from the HTTP 
+		 * session.
+		 * 
+		 * @param event {@code HttpSessionBindingEvent}.
+		 */
+		@Override
+		public void valueUnbound(HttpSessionBindingEvent event) {
+			if (map instanceof Compact) {
+				((Compact) map).map.release();
+			} else {
+				map.clear();
+			}
+			
+			dirty.clear();
+		}
+		
+		long advance() {
+			long now = System.currentTimeMillis();
+			TimingWheel<Expiry> wheel = this.wheel;
+			
+			if (wheel != null) {
+				wheel.advance(now);
+			}
+			
+			return now;
+		}
+		
+		// The expiration of the distributed Store is not scheduled, because 
+		// the removal on the wheel reads and writes the backend on the thread 
+		// accessing the Store. The expired entries are removed when read.
+		private void schedule(Entry entry) {
+			if (entry.expires > 0 && !(map instanceof Distributed)) {
+				TimingWheel<Expiry> wheel = this.wheel;
+				
+				if (wheel == null) {
+					synchronized (this) {
+						wheel = this.wheel;
+						
+						if (wheel == null) {
+							wheel = wheel();
+							this.wheel = wheel;
+						}
+					}
+				}
+				
+				entry.expiry = new Expiry(entry.key, entry.expires);
+				wheel.schedule(entry.expiry);
+			}
+		}
+		
+		private static void cancel(Entry entry) {
+			if (entry != null && entry.expiry != null) {
+				entry.expiry.cancelled = true;
+			}
+		}
+		
+		private TimingWheel<Expiry> wheel() {
+			return new TimingWheel<Expiry>(TICK, SLOTS, System.currentTimeMillis()) {
+				
+				// The expiration which has not been cancelled (in the compact 
+				// Store) removes only the entry expiring at the same time.
+				@Override
+				protected void expire(Expiry expiry) {
+					Entry entry = map.get(expiry.key);
+					
+					if (entry != null && entry.expires == expiry.expires 
+							&& map.remove(expiry.key, entry)) {
+						dirty.add(expiry.key);
+					}
+				}
+				
+			};
+		}
+		
+		/**
+		 * Returns whether this {@code Store} has been changed since the last 
+		 * write.
+		 * 
+		 * @return {@code true} if this {@code Store} has been changed since the 
+		 * last write.
+		 */
+		public boolean dirty() {
+			return !dirty.isEmpty();
+		}
+		
+		/**
+		 * Writes all the live entries of this {@code Store} in the compact binary 
+		 * form, and clears the changes tracked.
+		 * 
+		 * @param out {@code ObjectOutput} to be written.
+		 * @throws IOException If any I/O error has occurred.
+		 */
+		@Override
+		public void writeExternal(ObjectOutput out) throws IOException {
+			dirty.clear();
+			long now = System.currentTimeMillis();
+			List<Entry> entries = new ArrayList<Entry>();
+			
+			for (Entry entry : map.values()) {
+				if (!entry.expired(now)) {
+					entries.add(entry);
+				}
+			}
+			
+			byte flags = 0;
+			
+			if (map instanceof Compact) {
+				flags |= COMPACT;
+				
+				if (((Compact) map).direct) {
+					flags |= DIRECT;
+				}
+			}
+			
+			out.writeByte(VERSION);
+			out.writeByte(flags);
+			out.writeInt(entries.size());
+			
+			for (Entry entry : entries) {
+				write(out, entry);
+			}
+		}
+		
+		/**
+		 * Reads the entries written with {@link #writeExternal(ObjectOutput)}.
+		 * 
+		 * @param in {@code ObjectInput} to be read.
+		 * @throws IOException If any I/O error has occurred.
+		 * @throws ClassNotFoundException If the class of the value is not found.
+		 */
+		@Override
+		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+			version(in);
+			byte flags = in.readByte();
+			map = ((flags & COMPACT) != 0) ? new Compact((flags & DIRECT) != 0) 
+					: new ConcurrentHashMap<String, Entry>();
+			wheel = null;
+			dirty.clear();
+			
+			for (int i = in.readInt(); i > 0; i--) {
+				Entry entry = read(in);
+				map.put(entry.key, entry);
+				schedule(entry);
+			}
+		}
+		
+		/**
+		 * Writes the entries set and the keys removed since the last write (the 
+		 * delta), and clears the changes tracked. The delta is applied to the 
+		 * replica of this {@code Store} with {@link #readDelta(ObjectInput)}.
+		 * 
+		 * @param out {@code ObjectOutput} to be written.
+		 * @throws IOException If any I/O error has occurred.
+		 */
+		public void writeDelta(ObjectOutput out) throws IOException {
+			long now = System.currentTimeMillis();
+			List<Entry> entries = new ArrayList<Entry>();
+			List<String> removed = new ArrayList<String>();
+			
+			// The key is cleared before its entry is read, so the concurrent 
+			// change is written in this delta or tracked for the next one.
+			for (String key : dirty) {
+				dirty.remove(key);
+				Entry entry = map.get(key);
+				
+				if (entry == null || entry.expired(now)) {
+					removed.add(key);
+				} else {
+					entries.add(entry);
+				}
+			}
+			
+			out.writeByte(VERSION);
+			out.writeInt(entries.size());
+			
+			for (Entry entry : entries) {
+				write(out, entry);
+			}
+			
+			out.writeInt(removed.size());
+			
+			for (String key : removed) {
+				out.writeUTF(key);
+			}
+		}
+		
+		/**
+		 * Applies the delta written with {@link #writeDelta(ObjectOutput)} to 
+		 * this {@code Store}.
+		 * 
+		 * @param in {@code ObjectInput} to be read.
+		 * @throws IOException If any I/O error has occurred.
+		 * @throws ClassNotFoundException If the class of the value is not found.
+		 */
+		public void readDelta(ObjectInput in) throws IOException, ClassNotFoundException {
+			version(in);
+			
+			for (int i = in.readInt(); i > 0; i--) {
+				Entry entry = read(in);
+				cancel(map.put(entry.key, entry));
+				schedule(entry);
+			}
+			
+			for (int i = in.readInt(); i > 0; i--) {
+				cancel(map.remove(in.readUTF()));
+			}
+		}
+		
+		private static void version(ObjectInput in) throws IOException {
+			byte version = in.readByte();
+			
+			if (version != VERSION) {
+				throw new IOException("Unsupported Store version [" + version + "]");
+			}
+		}
+		
+		private static void write(ObjectOutput out, Entry entry) throws IOException {
+			out.writeUTF(entry.key);
+			out.writeLong(entry.expires);
+			Object value = entry.value;
+			
+			if (value instanceof String) {
+				byte[] bytes = ((String) value).getBytes(UTF_8);
+				out.writeByte(STRING);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			} else if (value instanceof Integer) {
+				out.writeByte(INTEGER);
+				out.writeInt((Integer) value);
+			} else if (value instanceof Long) {
+				out.writeByte(LONG);
+				out.writeLong((Long) value);
+			} else if (value instanceof Boolean) {
+				out.writeByte(BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			} else {
+				out.writeByte(OBJECT);
+				out.writeObject(value);
+			}
+		}
+		
+		private static Entry read(ObjectInput in) throws IOException, ClassNotFoundException {
+			String key = in.readUTF();
+			long expires = in.readLong();
+			byte type = in.readByte();
+			Object value;
+			
+			switch (type) {
+			case STRING:
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				value = new String(bytes, UTF_8);
+				break;
+			case INTEGER:
+				value = in.readInt();
+				break;
+			case LONG:
+				value = in.readLong();
+				break;
+			case BOOLEAN:
+				value = in.readBoolean();
+				break;
+			case OBJECT:
+				value = in.readObject();
+				break;
+			default:
+				throw new IOException("Unknown value type [" + type + "]");
+			}
+			
+			return new Entry(key, value, expires);
+		}
+		
+		// Encodes the entry to the expiration and the UTF-8 string or the 
+		// serialized object, for CompactMap and NamespaceBackend.
+		private static byte[] encode(Entry entry) {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+				out.writeLong(entry.expires);
+				
+				if (entry.value instanceof String) {
+					out.writeByte(STRING);
+					out.write(((String) entry.value).getBytes(UTF_8));
+				} else {
+					out.writeByte(OBJECT);
+					ObjectOutputStream object = new ObjectOutputStream(out);
+					object.writeObject(entry.value);
+					object.flush();
+				}
+				
+				return bytes.toByteArray();
+			} catch (IOException e) {
+				throw new UncheckedException(e);
+			}
+		}
+		
+		private static Entry decode(String key, byte[] bytes) {
+			if (bytes == null) {
+				return null;
+			}
+			
+			long expires = ByteBuffer.wrap(bytes).getLong();
+			
+			if (bytes[8] == STRING) {
+				return new Entry(key, new String(bytes, 9, bytes.length - 9, UTF_8), expires);
+			}
+			
+			try {
+				ObjectInputStream in = new ObjectInputStream(
+						new ByteArrayInputStream(bytes, 9, bytes.length - 9));
+				return new Entry(key, in.readObject(), expires);
+			} catch (IOException e) {
+				throw new UncheckedException(e);
+			} catch (ClassNotFoundException e) {
+				throw new UncheckedException(e);
+			}
+		}
+		
+		private static final class Entry {
+			
+			private final String key;
+			
+			private final Object value;
+			
+			private final long expires;
+			
+			// The scheduled expiration (the entries decoded from the compact 
+			// Store have none, and their expirations are not cancelled).
+			private transient volatile Expiry expiry;
+			
+			private Entry(String key, Object value, long expires) {
+				this.key = key;
+				this.value = value;
+				this.expires = expires;
+			}
+			
+			private boolean expired(long now) {
+				return expires > 0 && expires <= now;
+			}
+			
+		}
+		
+		// The key and the expiration time of an entry scheduled in the timing 
+		// wheel, so the wheel does not hold the values.
+		private static final class Expiry implements TimingWheel.Timeout {
+			
+			private final String key;
+			
+			private final long expires;
+			
+			private volatile boolean cancelled;
+			
+			private Expiry(String key, long expires) {
+				this.key = key;
+				this.expires = expires;
+			}
+			
+			@Override
+			public long expires() {
+				return expires;
+			}
+			
+			@Override
+			public boolean cancelled() {
+				return cancelled;
+			}
+			
+		}
 		
-		private String get(String key) {
-			return map.get(key);
+		// The ConcurrentMap view of CompactMap.
+		private static final class Compact extends AbstractMap<String, Store.Entry> 
+				implements ConcurrentMap<String, Store.Entry> {
+			
+			private final CompactMap map;
+			
+			private final boolean direct;
+			
+			private Compact(boolean direct) {
+				this.map = new CompactMap(direct);
+				this.direct = direct;
+			}
+			
+			@Override
+			public Store.Entry get(Object key) {
+				return (key instanceof String) ? decode((String) key, map.get(key)) : null;
+			}
+			
+			@Override
+			public Store.Entry put(String key, Store.Entry value) {
+				return decode(key, map.put(key, encode(value)));
+			}
+			
+			@Override
+			public Store.Entry putIfAbsent(String key, Store.Entry value) {
+				return decode(key, map.putIfAbsent(key, encode(value)));
+			}
+			
+			@Override
+			public Store.Entry replace(String key, Store.Entry value) {
+				return decode(key, map.replace(key, encode(value)));
+			}
+			
+			@Override
+			public boolean replace(String key, Store.Entry oldValue, Store.Entry newValue) {
+				return map.replace(key, encode(oldValue), encode(newValue));
+			}
+			
+			@Override
+			public Store.Entry remove(Object key) {
+				return (key instanceof String) ? decode((String) key, map.remove(key)) : null;
+			}
+			
+			@Override
+			public boolean remove(Object key, Object value) {
+				return (value instanceof Store.Entry) && map.remove(key, encode((Store.Entry) value));
+			}
+			
+			@Override
+			public int size() {
+				return map.size();
+			}
+			
+			@Override
+			public void clear() {
+				map.clear();
+			}
+			
+			@Override
+			public Set<Map.Entry<String, Store.Entry>> entrySet() {
+				Set<Map.Entry<String, Store.Entry>> entries = new LinkedHashSet<Map.Entry<String, Store.Entry>>();
+				
+				for (Map.Entry<String, byte[]> entry : map.entrySet()) {
+					entries.add(new SimpleImmutableEntry<String, Store.Entry>(
+							entry.getKey(), decode(entry.getKey(), entry.getValue())));
+				}
+				
+				return entries;
+			}
+			
 		}
 		
-		private void set(String key, String value) {
-			map.put(key, value);
+		// The ConcurrentMap view of NamespaceBackend with the LRU near-cache and 
+		// the write-behind. The pending writes are read before the near-cache 
+		// until they are written, and the conditional operations are applied 
+		// on the backend after the pending writes are flushed.
+		private static final class Distributed extends AbstractMap<String, Store.Entry> 
+				implements ConcurrentMap<String, Store.Entry>, NamespaceBackend.Listener {
+			
+			private static final int ENTRIES = 10000;
+			
+			private static final int BATCH = 100;
+			
+			private static final long INTERVAL = 100;
+			
+			// The key is neither pending nor cached.
+			private static final Store.Entry MISS = new Store.Entry(null, null, 0);
+			
+			private final Logger logger = LoggerFactory.getLogger(getClass());
+			
+			private final NamespaceBackend backend;
+			
+			private final String scope;
+			
+			private final ScheduledExecutorService flusher;
+			
+			private final String origin = UUID.randomUUID().toString();
+			
+			private final Map<String, Store.Entry> cache = new LinkedHashMap<String, Store.Entry>(16, 0.75f, true) {
+				
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Store.Entry> eldest) {
+					return size() > ENTRIES;
+				}
+				
+			};
+			
+			// The values of the keys to be written (null to be removed).
+			private final Map<String, byte[]> pending = new LinkedHashMap<String, byte[]>();
+			
+			private Map<String, byte[]> flushing = Collections.emptyMap();
+			
+			private boolean scheduled;
+			
+			// Bumped on each change of the keys (local or remote) to discard 
+			// the values loaded concurrently.
+			private volatile long versions;
+			
+			private final Object flush = new Object();
+			
+			private final Runnable task = new Runnable() {
+				
+				@Override
+				public void run() {
+					flush();
+				}
+				
+			};
+			
+			private Distributed(NamespaceBackend backend, String scope, ScheduledExecutorService flusher) {
+				this.backend = backend;
+				this.scope = scope;
+				this.flusher = flusher;
+				backend.subscribe(this);
+			}
+			
+			@Override
+			public Store.Entry get(Object key) {
+				if (!(key instanceof String)) {
+					return null;
+				}
+				
+				Store.Entry entry = local((String) key);
+				return (entry == MISS) ? load(Collections.singleton((String) key)).get(key) : entry;
+			}
+			
+			private Store.Entry local(String key) {
+				synchronized (pending) {
+					if (pending.containsKey(key)) {
+						return decode(key, pending.get(key));
+					} else if (flushing.containsKey(key)) {
+						return decode(key, flushing.get(key));
+					}
+				}
+				
+				synchronized (cache) {
+					Store.Entry entry = cache.get(key);
+					return (entry == null) ? MISS : entry;
+				}
+			}
+			
+			private void prefetch(Collection<String> keys) {
+				List<String> misses = new ArrayList<String>();
+				
+				synchronized (pending) {
+					synchronized (cache) {
+						for (String key : keys) {
+							if (!pending.containsKey(key) && !flushing.containsKey(key) 
+									&& !cache.containsKey(key)) {
+								misses.add(key);
+							}
+						}
+					}
+				}
+				
+				if (!misses.isEmpty()) {
+					load(misses);
+				}
+			}
+			
+			private Map<String, Store.Entry> load(Collection<String> keys) {
+				long versions = this.versions;
+				Map<String, Store.Entry> entries = new HashMap<String, Store.Entry>();
+				
+				for (Map.Entry<String, byte[]> value : backend.get(scope, keys).entrySet()) {
+					entries.put(value.getKey(), decode(value.getKey(), value.getValue()));
+				}
+				
+				// The values read before the change may be stale.
+				synchronized (cache) {
+					if (this.versions == versions) {
+						cache.putAll(entries);
+					}
+				}
+				
+				return entries;
+			}
+			
+			// Returns the previous entry known locally without reading the 
+			// backend.
+			@Override
+			public Store.Entry put(String key, Store.Entry value) {
+				Store.Entry previous = local(key);
+				
+				synchronized (cache) {
+					versions++;
+					cache.put(key, value);
+				}
+				
+				write(key, encode(value));
+				return (previous == MISS) ? null : previous;
+			}
+			
+			// Returns the previous entry known locally without reading the 
+			// backend.
+			@Override
+			public Store.Entry remove(Object key) {
+				if (!(key instanceof String)) {
+					return null;
+				}
+				
+				Store.Entry previous = local((String) key);
+				
+				synchronized (cache) {
+					versions++;
+					cache.remove(key);
+				}
+				
+				write((String) key, null);
+				return (previous == MISS) ? null : previous;
+			}
+			
+			@Override
+			public Store.Entry putIfAbsent(String key, Store.Entry value) {
+				while (true) {
+					if (replace(key, null, encode(value), value)) {
+						return null;
+					}
+					
+					Store.Entry current = get(key);
+					
+					if (current != null) {
+						return current;
+					}
+				}
+			}
+			
+			@Override
+			public Store.Entry replace(String key, Store.Entry value) {
+				for (Store.Entry current = get(key); current != null; current = get(key)) {
+					if (replace(key, current, value)) {
+						return current;
+					}
+				}
+				
+				return null;
+			}
+			
+			@Override
+			public boolean replace(String key, Store.Entry oldValue, Store.Entry newValue) {
+				return replace(key, encode(oldValue), encode(newValue), newValue);
+			}
+			
+			@Override
+			public boolean remove(Object key, Object value) {
+				return (key instanceof String) && (value instanceof Store.Entry) 
+						&& replace((String) key, encode((Store.Entry) value), null, null);
+			}
+			
+			private boolean replace(String key, byte[] expected, byte[] value, Store.Entry entry) {
+				flush();
+				boolean replaced = backend.replace(origin, scope, key, expected, value);
+				
+				synchronized (cache) {
+					versions++;
+					
+					if (replaced && entry != null) {
+						cache.put(key, entry);
+					} else {
+						cache.remove(key);
+					}
+				}
+				
+				return replaced;
+			}
+			
+			@Override
+			public int size() {
+				synchronized (cache) {
+					return cache.size();
+				}
+			}
+			
+			// Releases the local state (the shared values are kept).
+			@Override
+			public void clear() {
+				flush();
+				backend.unsubscribe(this);
+				
+				synchronized (cache) {
+					cache.clear();
+				}
+			}
+			
+			@Override
+			public Set<Map.Entry<String, Store.Entry>> entrySet() {
+				synchronized (cache) {
+					return new LinkedHashMap<String, Store.Entry>(cache).entrySet();
+				}
+			}
+			
+			@Override
+			public void invalidate(String origin, String scope, Collection<String> keys) {
+				if (this.origin.equals(origin) || !this.scope.equals(scope)) {
+					return;
+				}
+				
+				synchronized (cache) {
+					versions++;
+					cache.keySet().removeAll(keys);
+				}
+			}
+			
+			private void write(String key, byte[] value) {
+				boolean flush;
+				
+				synchronized (pending) {
+					pending.put(key, value);
+					flush = pending.size() >= BATCH || !schedule();
+				}
+				
+				if (flush) {
+					flush();
+				}
+			}
+			
+			// Must be called with the lock of the pending writes. Returns 
+			// false if the flusher has been shut down.
+			private boolean schedule() {
+				if (!scheduled) {
+					try {
+						flusher.schedule(task, INTERVAL, TimeUnit.MILLISECONDS);
+						scheduled = true;
+					} catch (RejectedExecutionException e) {
+						return false;
+					}
+				}
+				
+				return true;
+			}
+			
+			private void flush() {
+				synchronized (flush) {
+					Map<String, byte[]> batch;
+					
+					synchronized (pending) {
+						if (pending.isEmpty()) {
+							return;
+						}
+						
+						batch = new LinkedHashMap<String, byte[]>(pending);
+						pending.clear();
+						flushing = batch;
+						scheduled = false;
+					}
+					
+					try {
+						backend.write(origin, scope, batch);
+					} catch (RuntimeException e) {
+						logger.warn("Failed to write " + batch.size() + " value(s) to ["
+								+ scope + "]; They are retried later", e);
+						
+						synchronized (pending) {
+							for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+								if (!pending.containsKey(entry.getKey())) {
+									pending.put(entry.getKey(), entry.getValue());
+								}
+							}
+							
+							schedule();
+						}
+						
+					} finally {
+						synchronized (pending) {
+							flushing = Collections.emptyMap();
+						}
+					}
+				}
+			}
+			
 		}
 		
 	}
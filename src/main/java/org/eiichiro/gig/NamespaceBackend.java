@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@code NamespaceBackend} is the SPI of the shared key-value service which 
+ * backs the {@link Namespace} values of a scope across the nodes of the 
+ * cluster (see {@link Namespace#distribute(Class, NamespaceBackend)}).
+ * The values are the opaque byte arrays (the encoded values with their 
+ * expiration) keyed by the scope name and the key. 
+ * Each node reads the values through the local near-cache and writes them 
+ * behind in batches with {@link #write(String, String, Map)}, and the backend 
+ * notifies the {@link Listener}s of the changed keys, so the other nodes 
+ * invalidate their near-caches.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public interface NamespaceBackend {
+	
+	/**
+	 * Gets the values of the specified keys in the specified scope.
+	 * 
+	 * @param scope The scope name.
+	 * @param keys The keys to values.
+	 * @return The map of the keys and the values present (the absent keys are 
+	 * not contained).
+	 */
+	public Map<String, byte[]> get(String scope, Collection<String> keys);
+	
+	/**
+	 * Writes the specified values in the specified scope and notifies the 
+	 * {@link Listener}s of the keys.
+	 * 
+	 * @param origin The identifier of the writer, which is passed to the 
+	 * {@link Listener}s.
+	 * @param scope The scope name.
+	 * @param values The map of the keys and the values to be written 
+	 * ({@code null} value removes the key).
+	 */
+	public void write(String origin, String scope, Map<String, byte[]> values);
+	
+	/**
+	 * Replaces the value of the specified key in the specified scope 
+	 * atomically if the current value is equal to the expected value, and 
+	 * notifies the {@link Listener}s of the key if it has been replaced.
+	 * 
+	 * @param origin The identifier of the writer, which is passed to the 
+	 * {@link Listener}s.
+	 * @param scope The scope name.
+	 * @param key The key to value.
+	 * @param expected The expected current value ({@code null} if the key is 
+	 * expected to be absent).
+	 * @param value The new value ({@code null} removes the key).
+	 * @return {@code true} if the value has been replaced.
+	 */
+	public boolean replace(String origin, String scope, String key, byte[] expected, byte[] value);
+	
+	/**
+	 * Subscribes the specified {@link Listener} to the changes.
+	 * 
+	 * @param listener The {@link Listener} to be subscribed.
+	 */
+	public void subscribe(Listener listener);
+	
+	/**
+	 * Unsubscribes the specified {@link Listener} from the changes.
+	 * 
+	 * @param listener The {@link Listener} to be unsubscribed.
+	 */
+	public void unsubscribe(Listener listener);
+	
+	/**
+	 * {@code Listener} is notified of the keys changed on the backend.
+	 * 
+	 * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static interface Listener {
+		
+		/**
+		 * Invalidates the specified keys in the specified scope.
+		 * 
+		 * @param origin The identifier of the writer.
+		 * @param scope The scope name.
+		 * @param keys The changed keys.
+		 */
+		public void invalidate(String origin, String scope, Collection<String> keys);
+		
+	}
+	
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.util.concurrent.Callable;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eiichiro.jaguar.WebFilter;
+
+/**
+ * {@code RequestContext} is the immutable snapshot of the Web context (the 
+ * HTTP request {@code WebFilter#request()} returns) to carry it over from the 
+ * request processing thread to the other threads.
+ * Jaguar resolves the request and the session scoped components from the 
+ * HTTP request bound to the current thread, so the tasks wrapped with 
+ * {@code RequestContext} can use them on the worker threads like this:
+ * <pre>
+ * RequestContext context = RequestContext.capture();
+ * Future&lt;Entry&gt; future = executor.submit(context.wrap(new Callable&lt;Entry&gt;() {...}));
+ * </pre>
+ * The HTTP request is recycled by the Servlet container once the request 
+ * processing completes, so the endpoint must wait for the wrapped tasks to 
+ * complete before it returns, or return {@link AsyncResponse} to keep the 
+ * request open until they complete.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public final class RequestContext {
+	
+	private final HttpServletRequest request;
+	
+	private RequestContext(HttpServletRequest request) {
+		this.request = request;
+	}
+	
+	/**
+	 * Captures the Web context of the current thread.
+	 * 
+	 * @return The Web context of the current thread.
+	 */
+	public static RequestContext capture() {
+		return new RequestContext(WebFilter.request());
+	}
+	
+	/**
+	 * Returns the {@code RequestContext} of the specified HTTP request.
+	 * 
+	 * @param request The HTTP request.
+	 * @return The {@code RequestContext} of the specified HTTP request.
+	 */
+	public static RequestContext of(HttpServletRequest request) {
+		return new RequestContext(request);
+	}
+	
+	/**
+	 * Returns the HTTP request of this context.
+	 * 
+	 * @return The HTTP request of this context.
+	 */
+	public HttpServletRequest request() {
+		return request;
+	}
+	
+	/**
+	 * Runs the specified {@code Callable} within this context on the current 
+	 * thread. The Web context of the current thread is restored on return.
+	 * 
+	 * @param <V> The result type.
+	 * @param callable The {@code Callable} to be run.
+	 * @return The result of the specified {@code Callable}.
+	 * @throws Exception If the specified {@code Callable} throws.
+	 */
+	public <V> V call(Callable<V> callable) throws Exception {
+		HttpServletRequest previous = WebFilter.request();
+		
+		try {
+			WebFilter.request(request);
+			return callable.call();
+		} finally {
+			WebFilter.request(previous);
+		}
+	}
+	
+	/**
+	 * Runs the specified {@code Runnable} within this context on the current 
+	 * thread. The Web context of the current thread is restored on return.
+	 * 
+	 * @param runnable The {@code Runnable} to be run.
+	 */
+	public void run(Runnable runnable) {
+		HttpServletRequest previous = WebFilter.request();
+		
+		try {
+			WebFilter.request(request);
+			runnable.run();
+		} finally {
+			WebFilter.request(previous);
+		}
+	}
+	
+	/**
+	 * Wraps the specified {@code Callable} to be run within this context on 
+	 * whichever thread it is called.
+	 * 
+	 * @param <V> The result type.
+	 * @param callable The {@code Callable} to be wrapped.
+	 * @return The wrapped {@code Callable}.
+	 */
+	public <V> Callable<V> wrap(final Callable<V> callable) {
+		return new Callable<V>() {
+			
+			@Override
+			public V call() throws Exception {
+				return RequestContext.this.call(callable);
+			}
+			
+		};
+	}
+	
+	/**
+	 * Wraps the specified {@code Runnable} to be run within this context on 
+	 * whichever thread it is run.
+	 * 
+	 * @param runnable The {@code Runnable} to be wrapped.
+	 * @return The wrapped {@code Runnable}.
+	 */
+	public Runnable wrap(final Runnable runnable) {
+		return new Runnable() {
+			
+			@Override
+			public void run() {
+				RequestContext.this.run(runnable);
+			}
+			
+		};
+	}
+	
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eiichiro.reverb.lang.UncheckedException;
+
+/**
+ * {@code ResponseCache} is the size-bounded in-memory store of the responses 
+ * of the Web endpoint methods annotated with {@link Cached}. The entries are 
+ * evicted in LRU order when the number of the entries or the total size of 
+ * the bodies exceeds the bounds, and expire after the time to live.
+ * Each entry is served with the <code>'ETag'</code> header calculated from 
+ * the body, and as <code>'304 Not Modified'</code> if the request has the 
+ * matched <code>'If-None-Match'</code> header. The responses which set the 
+ * cookies are not cached.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ResponseCache {
+	
+	private final int entries;
+	
+	private final long bytes;
+	
+	private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	
+	private long size;
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Constructs a new {@code ResponseCache} with the specified bounds.
+	 * 
+	 * @param entries The maximum number of the entries.
+	 * @param bytes The maximum total size of the response bodies in bytes.
+	 */
+	public ResponseCache(int entries, long bytes) {
+		this.entries = entries;
+		this.bytes = bytes;
+	}
+	
+	/**
+	 * Returns the cache key of the specified request: the request path 
+	 * (relative to the context path, including the extra path segments the 
+	 * {@link Route} is resolved with), the request parameters sorted by name 
+	 * and the values of the specified request headers. Each component is 
+	 * prefixed with its length (and the absent header is encoded as 
+	 * <code>'-'</code>), so the different requests never have the same key.
+	 * 
+	 * @param request The HTTP request.
+	 * @param vary The names of the request headers the response varies by.
+	 * @return The cache key of the specified request.
+	 */
+	@SuppressWarnings("unchecked")
+	public static String key(HttpServletRequest request, String... vary) {
+		String path = request.getRequestURI();
+		String contextPath = request.getContextPath();
+		
+		if (contextPath != null && path.startsWith(contextPath)) {
+			path = path.substring(contextPath.length());
+		}
+		
+		StringBuilder key = component(new StringBuilder(), path).append('?');
+		Map<String, String[]> parameters = new TreeMap<String, String[]>(request.getParameterMap());
+		
+		for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+			for (String value : parameter.getValue()) {
+				component(component(key, parameter.getKey()), value);
+			}
+		}
+		
+		for (String header : vary) {
+			String value = request.getHeader(header);
+			component(key.append('\n'), header);
+			
+			if (value == null) {
+				key.append('-');
+			} else {
+				component(key, value);
+			}
+		}
+		
+		return key.toString();
+	}
+	
+	private static StringBuilder component(StringBuilder key, String component) {
+		return key.append(component.length()).append(':').append(component);
+	}
+	
+	/**
+	 * Returns the cached response for the specified key or {@code null} if it 
+	 * has not been cached or has expired.
+	 * 
+	 * @param key The cache key.
+	 * @return The cached response for the specified key.
+	 */
+	public synchronized Entry get(String key) {
+		Entry entry = cache.get(key);
+		
+		if (entry != null && entry.expires - System.nanoTime() <= 0) {
+			remove(key);
+			entry = null;
+		}
+		
+		if (entry == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		
+		return entry;
+	}
+	
+	/**
+	 * Caches the specified response for the specified time to live if it is
+	 * <code>'200 OK'</code>, sets no cookie and is small enough to be cached.
+	 * 
+	 * @param key The cache key.
+	 * @param response The response to be cached.
+	 * @param ttl The time to live in seconds.
+	 * @return The entry of the specified response (whether it has been 
+	 * cached or not).
+	 */
+	public Entry put(String key, BufferedResponse response, int ttl) {
+		byte[] body = response.body();
+		
+		if (response.status() != HttpServletResponse.SC_OK || body.length > bytes 
+				|| response.setsCookies()) {
+			return new Entry(response, body, null, 0);
+		}
+		
+		Entry entry = new Entry(response, body, 
+				(response.header("ETag") == null) ? etag(body) : response.header("ETag"), 
+				System.nanoTime() + TimeUnit.SECONDS.toNanos(ttl));
+		
+		synchronized (this) {
+			remove(key);
+			cache.put(key, entry);
+			size += entry.body.length;
+			
+			for (Iterator<Entry> iterator = cache.values().iterator();
+					iterator.hasNext() && (cache.size() > entries || size > bytes);) {
+				size -= iterator.next().body.length;
+				iterator.remove();
+			}
+		}
+		
+		return entry;
+	}
+	
+	/** Removes all the cached responses. */
+	public synchronized void clear() {
+		cache.clear();
+		size = 0;
+	}
+	
+	/**
+	 * Returns the number of the cached responses.
+	 * 
+	 * @return The number of the cached responses.
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+	
+	/**
+	 * Returns the number of the cache hits.
+	 * 
+	 * @return The number of the cache hits.
+	 */
+	public long hits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of the cache misses.
+	 * 
+	 * @return The number of the cache misses.
+	 */
+	public long misses() {
+		return misses.get();
+	}
+	
+	private static String etag(byte[] body) {
+		try {
+			StringBuilder etag = new StringBuilder("\"");
+			
+			for (byte b : MessageDigest.getInstance("MD5").digest(body)) {
+				etag.append(Character.forDigit((b >> 4) & 0xF, 16));
+				etag.append(Character.forDigit(b & 0xF, 16));
+			}
+			
+			return etag.append('"').toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new UncheckedException(e);
+		}
+	}
+	
+	private void remove(String key) {
+		Entry removed = cache.remove(key);
+		
+		if (removed != null) {
+			size -= removed.body.length;
+		}
+	}
+	
+	/**
+	 * The cached response.
+	 * 
+	 * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static final class Entry {
+		
+		private final BufferedResponse response;
+		
+		private final byte[] body;
+		
+		private final String etag;
+		
+		private final long expires;
+		
+		private Entry(BufferedResponse response, byte[] body, String etag, long expires) {
+			this.response = response;
+			this.body = body;
+			this.etag = etag;
+			this.expires = expires;
+		}
+		
+		/**
+		 * Returns the entity tag of the response, or {@code null} if the 
+		 * response has not been cached.
+		 * 
+		 * @return The entity tag of the response.
+		 */
+		public String etag() {
+			return etag;
+		}
+		
+		/**
+		 * Returns whether the response sets the cookies (see 
+		 * {@link BufferedResponse#setsCookies()}).
+		 * 
+		 * @return Whether the response sets the cookies.
+		 */
+		public boolean setsCookies() {
+			return response.setsCookies();
+		}
+		
+		/**
+		 * Writes the response to the specified {@code HttpServletResponse}, or
+		 * <code>'304 Not Modified'</code> if the specified request has the
+		 * <code>'If-None-Match'</code> header matched with the entity tag.
+		 * 
+		 * @param request The HTTP request.
+		 * @param response The HTTP response to be written.
+		 * @throws IOException If any I/O error has occurred.
+		 */
+		public void writeTo(HttpServletRequest request, HttpServletResponse response) throws IOException {
+			if (etag == null) {
+				this.response.writeTo(response);
+				return;
+			}
+			
+			this.response.writeHeaders(response);
+			
+			if (this.response.header("ETag") == null) {
+				response.setHeader("ETag", etag);
+			}
+			
+			if (matches(request.getHeader("If-None-Match"))) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+			
+			response.setStatus(HttpServletResponse.SC_OK);
+			response.setContentLength(body.length);
+			response.getOutputStream().write(body);
+		}
+		
+		private boolean matches(String ifNoneMatch) {
+			if (ifNoneMatch == null) {
+				return false;
+			}
+			
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+				
+				if (tag.equals("*") || tag.equals(etag)) {
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@code Route} is the Web endpoint method which the HTTP request path 
+ * <code>'/&lt;endpoint&gt;/&lt;method&gt;'</code> is routed to. The 
+ * {@code Route}s are built by {@link Endpoints} on the startup, and the 
+ * annotations declared on the method or the endpoint class are looked up 
+ * once and cached, so the request processing stages in {@link GigFilter} can 
+ * inspect them on every request without reflection.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public final class Route {
+	
+	private static final Object NONE = new Object();
+	
+	private final String name;
+	
+	private final Class<?> endpoint;
+	
+	private final Method method;
+	
+	private final ConcurrentMap<Class<?>, Object> annotations = new ConcurrentHashMap<Class<?>, Object>();
+	
+	/**
+	 * Constructs a new {@code Route}.
+	 * 
+	 * @param name The route name (<code>'&lt;endpoint&gt;/&lt;method&gt;'</code>).
+	 * @param endpoint The Web endpoint class.
+	 * @param method The Web endpoint method.
+	 */
+	public Route(String name, Class<?> endpoint, Method method) {
+		this.name = name;
+		this.endpoint = endpoint;
+		this.method = method;
+	}
+	
+	/**
+	 * Returns the route name (<code>'&lt;endpoint&gt;/&lt;method&gt;'</code>).
+	 * 
+	 * @return The route name.
+	 */
+	public String name() {
+		return name;
+	}
+	
+	/**
+	 * Returns the Web endpoint class.
+	 * 
+	 * @return The Web endpoint class.
+	 */
+	public Class<?> endpoint() {
+		return endpoint;
+	}
+	
+	/**
+	 * Returns the Web endpoint method.
+	 * 
+	 * @return The Web endpoint method.
+	 */
+	public Method method() {
+		return method;
+	}
+	
+	/**
+	 * Returns the specified annotation declared on the Web endpoint method or 
+	 * on the Web endpoint class (the method takes precedence) or {@code null} 
+	 * if it is not declared.
+	 * 
+	 * @param <A> The annotation type.
+	 * @param type The annotation type.
+	 * @return The specified annotation declared on the Web endpoint method or 
+	 * class.
+	 */
+	public <A extends Annotation> A annotation(Class<A> type) {
+		Object annotation = annotations.get(type);
+		
+		if (annotation == null) {
+			annotation = method.getAnnotation(type);
+			
+			if (annotation == null) {
+				annotation = endpoint.getAnnotation(type);
+			}
+			
+			annotations.put(type, (annotation == null) ? NONE : annotation);
+		}
+		
+		return (annotation == NONE) ? null : type.cast(annotation);
+	}
+	
+	/**
+	 * Returns the route name.
+	 * 
+	 * @return The route name.
+	 */
+	@Override
+	public String toString() {
+		return name;
+	}
+	
+}
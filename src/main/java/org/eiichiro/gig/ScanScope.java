@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * {@code ScanScope} specifies which part of the classpath 
+ * {@link ComponentScanner} scans the components from:
+ * <ul>
+ * <li>Roots - The classpath entries to be scanned. If empty, the runtime 
+ * classpath is scanned.</li>
+ * <li>Includes - The packages to be scanned (with the subpackages). If empty, 
+ * all the packages are scanned.</li>
+ * <li>Excludes - The packages not to be scanned (with the subpackages).
+ * Excludes take precedence over includes.</li>
+ * <li>Skips - The file name patterns of the jar files not to be scanned.
+ * <code>'*'</code> matches any character sequence and <code>'?'</code>
+ * matches any single character (e.g. <code>'guava-*.jar'</code>).</li>
+ * </ul>
+ * These rules are applied with the classpath entry names and the class file 
+ * paths, so the classes out of the scope are not read at all.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class ScanScope {
+	
+	/**
+	 * The default skip patterns: the well-known third-party libraries and the 
+	 * Servlet container libraries which never contain any Gig component.
+	 */
+	public static final List<String> DEFAULT_SKIPS = Collections.unmodifiableList(Arrays.asList(
+			"guava-*.jar", "google-collections-*.jar", "javassist-*.jar",
+			"slf4j-*.jar", "logback-*.jar", "log4j-*.jar", "commons-*.jar",
+			"junit-*.jar", "hamcrest-*.jar", "mockito-*.jar", "asm-*.jar",
+			"cglib-*.jar", "aopalliance-*.jar", "jackson-*.jar", "gson-*.jar",
+			"servlet-api*.jar", "jsp-api*.jar", "el-api*.jar", "jetty-*.jar",
+			"tomcat-*.jar", "catalina*.jar", "jasper*.jar", "ecj-*.jar"));
+	
+	/** The {@code ScanScope} which scans everything on the runtime classpath. */
+	public static final ScanScope ALL = new ScanScope(Collections.<URL>emptySet(),
+			Collections.<String>emptyList(), Collections.<String>emptyList(),
+			Collections.<String>emptyList());
+	
+	private final Set<URL> roots;
+	
+	private final List<String> includes;
+	
+	private final List<String> excludes;
+	
+	private final List<String> skips;
+	
+	private final List<Pattern> patterns = new ArrayList<Pattern>();
+	
+	/**
+	 * Constructs a new {@code ScanScope} which scans the runtime classpath 
+	 * except the jar files matched with {@link #DEFAULT_SKIPS}.
+	 */
+	public ScanScope() {
+		this(Collections.<URL>emptySet(), Collections.<String>emptyList(),
+				Collections.<String>emptyList(), DEFAULT_SKIPS);
+	}
+	
+	/**
+	 * Constructs a new {@code ScanScope} with the specified rules.
+	 * 
+	 * @param roots The classpath entries to be scanned. If empty, the runtime 
+	 * classpath is scanned.
+	 * @param includes The packages to be scanned. If empty, all the packages 
+	 * are scanned.
+	 * @param excludes The packages not to be scanned.
+	 * @param skips The file name patterns of the jar files not to be scanned.
+	 */
+	public ScanScope(Collection<URL> roots, Collection<String> includes,
+			Collection<String> excludes, Collection<String> skips) {
+		this.roots = Collections.unmodifiableSet(new LinkedHashSet<URL>(roots));
+		this.includes = Collections.unmodifiableList(new ArrayList<String>(includes));
+		this.excludes = Collections.unmodifiableList(new ArrayList<String>(excludes));
+		this.skips = Collections.unmodifiableList(new ArrayList<String>(skips));
+		
+		for (String skip : skips) {
+			StringBuilder regex = new StringBuilder();
+			
+			for (String token : skip.split("(?=[*?])|(?<=[*?])")) {
+				if (token.equals("*")) {
+					regex.append(".*");
+				} else if (token.equals("?")) {
+					regex.append('.');
+				} else if (token.length() > 0) {
+					regex.append(Pattern.quote(token));
+				}
+			}
+			
+			patterns.add(Pattern.compile(regex.toString()));
+		}
+	}
+	
+	/**
+	 * Returns the classpath entries to be scanned.
+	 * 
+	 * @return The classpath entries to be scanned.
+	 */
+	public Set<URL> roots() {
+		return roots;
+	}
+	
+	/**
+	 * Returns the packages to be scanned.
+	 * 
+	 * @return The packages to be scanned.
+	 */
+	public List<String> includes() {
+		return includes;
+	}
+	
+	/**
+	 * Returns the packages not to be scanned.
+	 * 
+	 * @return The packages not to be scanned.
+	 */
+	public List<String> excludes() {
+		return excludes;
+	}
+	
+	/**
+	 * Returns the file name patterns of the jar files not to be scanned.
+	 * 
+	 * @return The file name patterns of the jar files not to be scanned.
+	 */
+	public List<String> skips() {
+		return skips;
+	}
+	
+	/**
+	 * Returns whether the specified classpath entry is scanned or not.
+	 * Directories are always scanned.
+	 * 
+	 * @param url The classpath entry.
+	 * @return Whether the specified classpath entry is scanned or not.
+	 */
+	public boolean accepts(URL url) {
+		String path = url.getPath();
+		
+		if (path.endsWith("/")) {
+			return true;
+		}
+		
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(name).matches()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns whether the classes in the specified package are scanned or not.
+	 * 
+	 * @param pkg The package name (<code>""</code> for the unnamed package).
+	 * @return Whether the classes in the specified package are scanned or not.
+	 */
+	public boolean accepts(String pkg) {
+		for (String exclude : excludes) {
+			if (contains(exclude, pkg)) {
+				return false;
+			}
+		}
+		
+		if (includes.isEmpty()) {
+			return true;
+		}
+		
+		for (String include : includes) {
+			if (contains(include, pkg)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns whether the specified package (directory) should be traversed or 
+	 * not: the package is accepted or any of its subpackages could be 
+	 * accepted.
+	 * 
+	 * @param pkg The package name (<code>""</code> for the unnamed package).
+	 * @return Whether the specified package should be traversed or not.
+	 */
+	public boolean traverses(String pkg) {
+		for (String exclude : excludes) {
+			if (contains(exclude, pkg)) {
+				return false;
+			}
+		}
+		
+		if (includes.isEmpty()) {
+			return true;
+		}
+		
+		for (String include : includes) {
+			if (contains(include, pkg) || contains(pkg, include)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private static boolean contains(String parent, String pkg) {
+		return parent.length() == 0 || pkg.equals(parent) || pkg.startsWith(parent + ".");
+	}
+	
+	/**
+	 * Returns the string representation of the rules.
+	 * 
+	 * @return The string representation of the rules.
+	 */
+	@Override
+	public String toString() {
+		return "roots=" + roots + ", includes=" + includes + ", excludes="
+				+ excludes + ", skips=" + skips;
+	}
+	
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code SingleFlight} runs at most one call per key at a time: the first 
+ * caller of {@link #execute(String, Callable)} with a key runs the call, and 
+ * the callers with the same key arriving while it is in flight wait for it 
+ * and share its result (or its failure). The key is forgotten as soon as the 
+ * call completes, so {@code SingleFlight} never caches the results.
+ * The callers waiting longer than the timeout (e.g. the first caller hangs on 
+ * the slow backend) run the call by themselves instead.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class SingleFlight {
+	
+	private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+	
+	private final AtomicLong executions = new AtomicLong();
+	
+	private final AtomicLong shares = new AtomicLong();
+	
+	private final AtomicLong timeouts = new AtomicLong();
+	
+	/**
+	 * Runs the specified call, or waits for the call in flight with the 
+	 * specified key and returns its result.
+	 * 
+	 * @param <T> The type of the result.
+	 * @param key The key of the call.
+	 * @param call The call to be run.
+	 * @return The result of the call.
+	 * @throws Exception If the call has failed on this thread.
+	 * @throws ExecutionException If the shared call has failed on the other 
+	 * thread.
+	 * @throws InterruptedException If the current thread is interrupted while 
+	 * waiting.
+	 */
+	public <T> T execute(String key, Callable<T> call) throws Exception {
+		return execute(key, call, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Runs the specified call, or waits for the call in flight with the 
+	 * specified key at most the specified timeout and returns its result. 
+	 * If the call in flight does not complete within the timeout, the 
+	 * specified call is run on the current thread (without being shared).
+	 * 
+	 * @param <T> The type of the result.
+	 * @param key The key of the call.
+	 * @param call The call to be run.
+	 * @param timeout The maximum time to wait for the call in flight.
+	 * @param unit The time unit of the timeout.
+	 * @return The result of the call.
+	 * @throws Exception If the call has failed on this thread.
+	 * @throws ExecutionException If the shared call has failed on the other 
+	 * thread.
+	 * @throws InterruptedException If the current thread is interrupted while 
+	 * waiting.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String key, Callable<T> call, long timeout, TimeUnit unit) throws Exception {
+		Flight flight = new Flight();
+		Flight existing = flights.putIfAbsent(key, flight);
+		
+		if (existing != null) {
+			shares.incrementAndGet();
+			
+			if (existing.latch.await(timeout, unit)) {
+				return (T) existing.result();
+			}
+			
+			timeouts.incrementAndGet();
+			return call.call();
+		}
+		
+		executions.incrementAndGet();
+		
+		try {
+			T result = call.call();
+			flight.result = result;
+			return result;
+		} catch (Throwable e) {
+			flight.failure = e;
+			
+			if (e instanceof Exception) {
+				throw (Exception) e;
+			}
+			
+			throw (Error) e;
+		} finally {
+			flights.remove(key, flight);
+			flight.latch.countDown();
+		}
+	}
+	
+	/**
+	 * Returns the number of the calls which have been run.
+	 * 
+	 * @return The number of the calls which have been run.
+	 */
+	public long executions() {
+		return executions.get();
+	}
+	
+	/**
+	 * Returns the number of the callers which have shared the result of the 
+	 * call run on the other thread.
+	 * 
+	 * @return The number of the callers which have shared the result.
+	 */
+	public long shares() {
+		return shares.get();
+	}
+	
+	/**
+	 * Returns the number of the callers which have given up waiting for the 
+	 * call run on the other thread and run the call by themselves.
+	 * 
+	 * @return The number of the callers which have timed out.
+	 */
+	public long timeouts() {
+		return timeouts.get();
+	}
+	
+	/**
+	 * Returns the number of the calls in flight.
+	 * 
+	 * @return The number of the calls in flight.
+	 */
+	public int size() {
+		return flights.size();
+	}
+	
+	private static final class Flight {
+		
+		private final CountDownLatch latch = new CountDownLatch(1);
+		
+		private Object result;
+		
+		private Throwable failure;
+		
+		private Object result() throws ExecutionException {
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+			
+			return result;
+		}
+		
+	}
+	
+}
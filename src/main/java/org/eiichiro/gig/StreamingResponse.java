@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eiichiro.bootleg.Response;
+import org.eiichiro.bootleg.WebContext;
+import org.eiichiro.reverb.lang.UncheckedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code StreamingResponse} is the Bootleg {@code Response} which streams the 
+ * elements of the {@code Iterator} (or {@code Iterable}) returned by the Web 
+ * endpoint method as JSON array, one element at a time. The response is 
+ * written through the pooled fixed-size buffer (see {@link BufferPool}) 
+ * without the content length, so the Servlet container sends it with chunked 
+ * transfer encoding and the memory per request stays constant however many 
+ * elements the result set has.
+ * If the {@code Iterator} is {@code Closeable}, it is closed after the last 
+ * element has been written (or the client has gone away).
+ * The {@link JSONCodec} for the element type declared in the return type of 
+ * the Web endpoint method is prepared at boot.
+ * <pre>
+ * &#064;Endpoint
+ * public class Export {
+ * 
+ *     public StreamingResponse&lt;Order&gt; orders() {
+ *         return new StreamingResponse&lt;Order&gt;(repository.orders());
+ *     }
+ * 
+ * }
+ * </pre>
+ * 
+ * @param <T> The element type.
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class StreamingResponse<T> implements Response {
+	
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	private final Iterator<? extends T> iterator;
+	
+	private String mediaType = "application/json";
+	
+	/**
+	 * Constructs a new {@code StreamingResponse} which streams the elements of 
+	 * the specified {@code Iterator}.
+	 * 
+	 * @param iterator The {@code Iterator} of the elements.
+	 */
+	public StreamingResponse(Iterator<? extends T> iterator) {
+		this.iterator = iterator;
+	}
+	
+	/**
+	 * Constructs a new {@code StreamingResponse} which streams the elements of 
+	 * the specified {@code Iterable}.
+	 * 
+	 * @param iterable The {@code Iterable} of the elements.
+	 */
+	public StreamingResponse(Iterable<? extends T> iterable) {
+		this(iterable.iterator());
+	}
+	
+	/**
+	 * Sets the media type of the response.
+	 * 
+	 * @param mediaType The media type of the response.
+	 */
+	@Override
+	public void mediaType(String mediaType) {
+		this.mediaType = mediaType;
+	}
+	
+	/**
+	 * Streams the elements to the HTTP response of the specified 
+	 * {@code WebContext}.
+	 * 
+	 * @param context The {@code WebContext} of the current request.
+	 */
+	@Override
+	public void to(WebContext context) {
+		HttpServletResponse response = context.response();
+		response.setContentType(mediaType);
+		response.setCharacterEncoding("UTF-8");
+		
+		try {
+			Writer writer = new UTF8Writer(response.getOutputStream(), BufferPool.shared());
+			
+			try {
+				writeTo(writer);
+				writer.flush();
+			} finally {
+				writer.close();
+			}
+			
+		} catch (IOException e) {
+			throw new UncheckedException(e);
+		} finally {
+			close();
+		}
+	}
+	
+	/**
+	 * Writes the elements as JSON array to the specified {@code Writer}.
+	 * 
+	 * @param writer The {@code Writer} to be written.
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	public void writeTo(Writer writer) throws IOException {
+		writer.write('[');
+		
+		for (boolean first = true; iterator.hasNext(); first = false) {
+			if (!first) {
+				writer.write(',');
+			}
+			
+			JSONEncoder.shared().encode(iterator.next(), writer);
+		}
+		
+		writer.write(']');
+	}
+	
+	private void close() {
+		if (iterator instanceof Closeable) {
+			try {
+				((Closeable) iterator).close();
+			} catch (IOException e) {
+				logger.warn("Failed to close [" + iterator + "]", e);
+			}
+		}
+	}
+	
+}
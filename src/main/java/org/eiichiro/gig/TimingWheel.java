@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@code TimingWheel} is the hashed timing wheel to expire the timeouts in 
+ * amortized constant time: each timeout is put into the slot of the tick its 
+ * deadline falls in, and the slots of the elapsed ticks are visited when the 
+ * wheel is advanced, so the timeouts are never scanned on each access. 
+ * The timeouts whose deadlines are beyond a revolution of the wheel are 
+ * visited once per revolution until they are due, and the cancelled ones are 
+ * dropped when their slots are visited.
+ * The wheel is advanced by the callers (e.g. on each access to the store) 
+ * rather than by a dedicated thread; only one caller visits the slots at a 
+ * time and the others return immediately.
+ * The slots are allocated on the first timeout put into them, so the wheel 
+ * holding a few timeouts costs little more than the slot array.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public abstract class TimingWheel<T extends TimingWheel.Timeout> {
+	
+	private final long tick;
+	
+	private final AtomicReferenceArray<ConcurrentLinkedQueue<T>> slots;
+	
+	private final AtomicBoolean advancing = new AtomicBoolean();
+	
+	// The number of the timeouts in the slots.
+	private final AtomicInteger size = new AtomicInteger();
+	
+	private final AtomicInteger allocated = new AtomicInteger();
+	
+	private volatile long current;
+	
+	/**
+	 * The timeout scheduled on {@code TimingWheel}.
+	 * 
+	 * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+	 */
+	public static interface Timeout {
+		
+		/**
+		 * Returns the deadline in milliseconds since the epoch.
+		 * 
+		 * @return The deadline in milliseconds since the epoch.
+		 */
+		public long expires();
+		
+		/**
+		 * Returns whether this timeout has been cancelled.
+		 * 
+		 * @return {@code true} if this timeout has been cancelled.
+		 */
+		public boolean cancelled();
+		
+	}
+	
+	/**
+	 * Constructs a new {@code TimingWheel}.
+	 * 
+	 * @param tick The duration of a tick in milliseconds.
+	 * @param size The number of the slots (ticks per revolution).
+	 * @param now The current time in milliseconds since the epoch.
+	 */
+	public TimingWheel(long tick, int size, long now) {
+		this.tick = tick;
+		this.slots = new AtomicReferenceArray<ConcurrentLinkedQueue<T>>(size);
+		current = now / tick;
+	}
+	
+	/**
+	 * Schedules the specified timeout.
+	 * 
+	 * @param timeout The timeout to be scheduled.
+	 */
+	public void schedule(T timeout) {
+		int index = (int) ((timeout.expires() / tick) % slots.length());
+		ConcurrentLinkedQueue<T> slot = slots.get(index);
+		
+		if (slot == null) {
+			slot = new ConcurrentLinkedQueue<T>();
+			
+			if (slots.compareAndSet(index, null, slot)) {
+				allocated.incrementAndGet();
+			} else {
+				slot = slots.get(index);
+			}
+		}
+		
+		size.incrementAndGet();
+		slot.offer(timeout);
+	}
+	
+	/**
+	 * Advances the wheel to the specified time and expires the timeouts due 
+	 * by then.
+	 * 
+	 * @param now The current time in milliseconds since the epoch.
+	 */
+	public void advance(long now) {
+		long target = now / tick;
+		
+		if (target <= current || !advancing.compareAndSet(false, true)) {
+			return;
+		}
+		
+		try {
+			long from = current;
+			long ticks = Math.min(target - from, slots.length());
+			
+			for (long i = 0; i < ticks; i++) {
+				ConcurrentLinkedQueue<T> slot = slots.get((int) ((from + i) % slots.length()));
+				
+				if (slot != null) {
+					visit(slot, now);
+				}
+			}
+			
+			current = target;
+		} finally {
+			advancing.set(false);
+		}
+	}
+	
+	private void visit(ConcurrentLinkedQueue<T> slot, long now) {
+		for (int i = slot.size(); i > 0; i--) {
+			T timeout = slot.poll();
+			
+			if (timeout == null) {
+				return;
+			} else if (timeout.cancelled()) {
+				size.decrementAndGet();
+			} else if (timeout.expires() <= now) {
+				size.decrementAndGet();
+				expire(timeout);
+			} else {
+				slot.offer(timeout);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of the timeouts scheduled (including the cancelled 
+	 * ones which have not been dropped yet).
+	 * 
+	 * @return The number of the timeouts scheduled.
+	 */
+	public int size() {
+		return size.get();
+	}
+	
+	/**
+	 * Returns the estimated heap usage of this wheel in bytes: the slot array, 
+	 * the slots allocated and their nodes (not including the timeouts).
+	 * 
+	 * @return The estimated heap usage of this wheel in bytes.
+	 */
+	public long heap() {
+		return 16 + 4L * slots.length() + 40L * allocated.get() + 24L * size.get();
+	}
+	
+	/**
+	 * Expires the specified timeout which is due.
+	 * 
+	 * @param timeout The timeout which is due.
+	 */
+	protected abstract void expire(T timeout);
+	
+}
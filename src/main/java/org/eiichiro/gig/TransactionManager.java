@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * {@code TransactionManager} runs the units of work in the transactions on the 
+ * pooled transactional resources (e.g. the database connections or sessions), 
+ * and is used by {@link TransactionalInterceptor} to run the methods 
+ * annotated with {@link Transactional}. The subclass installed as a 
+ * component implements how to open, begin, commit, roll back and close the 
+ * resource.
+ * <ul>
+ * <li>The resources are pooled up to the specified size. If all of them are 
+ * in use, the transaction waits for the released one until the timeout.</li>
+ * <li>The nested unit of work in the same thread joins the transaction in 
+ * progress. If it fails, the transaction is marked as rollback-only and is 
+ * rolled back at the end of the outermost unit of work.</li>
+ * <li>With group commit enabled (the subclass must override 
+ * {@link #commit(List)}), the commits of the concurrent transactions 
+ * are batched: while a group of the commits is in progress, the following 
+ * commits are queued and committed as the next group by the first of them 
+ * (no dedicated thread), so the short transactions share the cost of the 
+ * commit.</li>
+ * </ul>
+ * The transaction is rolled back if the unit of work throws any exception.
+ * 
+ * @param <R> The type of the transactional resource.
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public abstract class TransactionManager<R> {
+	
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	
+	private final Semaphore permits;
+	
+	private final BlockingQueue<R> idle;
+	
+	private final long timeout;
+	
+	private final boolean group;
+	
+	private final ThreadLocal<Transaction<R>> transaction = new ThreadLocal<Transaction<R>>();
+	
+	private final Object lock = new Object();
+	
+	private List<Commit<R>> queue = new ArrayList<Commit<R>>();
+	
+	private boolean committing;
+	
+	private final AtomicLong commits = new AtomicLong();
+	
+	private final AtomicLong groups = new AtomicLong();
+	
+	private final AtomicLong rollbacks = new AtomicLong();
+	
+	/**
+	 * Constructs a new {@code TransactionManager}.
+	 * 
+	 * @param size The maximum number of the resources.
+	 * @param timeout The maximum time to wait for the resource.
+	 * @param unit The unit of the timeout.
+	 * @param group Whether the commits are batched (group commit).
+	 * @throws IllegalArgumentException If group commit is enabled but the 
+	 * subclass does not override {@link #commit(List)}.
+	 */
+	protected TransactionManager(int size, long timeout, TimeUnit unit, boolean group) {
+		Preconditions.checkArgument(size > 0, "Parameter 'size' must be greater than [0]");
+		Preconditions.checkNotNull(unit, "Parameter 'unit' must not be [null]");
+		Preconditions.checkArgument(!group || overrides(getClass()), 
+				"Group commit requires [" + getClass().getName() + "] to override commit(List)");
+		permits = new Semaphore(size);
+		idle = new ArrayBlockingQueue<R>(size);
+		this.timeout = unit.toNanos(timeout);
+		this.group = group;
+	}
+	
+	/**
+	 * Opens a new resource.
+	 * 
+	 * @return The new resource.
+	 * @throws Exception If the resource cannot be opened.
+	 */
+	protected abstract R open() throws Exception;
+	
+	/**
+	 * Begins the transaction on the specified resource.
+	 * 
+	 * @param resource The resource.
+	 * @throws Exception If the transaction cannot be begun.
+	 */
+	protected abstract void begin(R resource) throws Exception;
+	
+	/**
+	 * Commits the transaction on the specified resource.
+	 * 
+	 * @param resource The resource.
+	 * @throws Exception If the transaction cannot be committed.
+	 */
+	protected abstract void commit(R resource) throws Exception;
+	
+	/**
+	 * Commits the transactions on the specified resources as a group, which 
+	 * is called instead of {@link #commit(Object)} if group commit is enabled. 
+	 * The subclass enabling group commit must override this to commit them at 
+	 * once and all-or-nothing (e.g. with a batched write or a single flush of 
+	 * the log): if this throws, all the transactions of the group fail and are 
+	 * rolled back. This implementation throws 
+	 * {@code UnsupportedOperationException}.
+	 * 
+	 * @param resources The resources.
+	 * @throws Exception If the transactions cannot be committed.
+	 */
+	protected void commit(List<R> resources) throws Exception {
+		throw new UnsupportedOperationException("Group commit is not supported");
+	}
+	
+	/**
+	 * Rolls back the transaction on the specified resource.
+	 * 
+	 * @param resource The resource.
+	 * @throws Exception If the transaction cannot be rolled back.
+	 */
+	protected abstract void rollback(R resource) throws Exception;
+	
+	/**
+	 * Closes the specified resource, which is called when the resource is 
+	 * discarded from the pool after the failure.
+	 * 
+	 * @param resource The resource.
+	 * @throws Exception If the resource cannot be closed.
+	 */
+	protected abstract void close(R resource) throws Exception;
+	
+	/**
+	 * Runs the specified unit of work in the transaction. If the current 
+	 * thread is in the transaction, the unit of work joins it.
+	 * 
+	 * @param <T> The type of the result.
+	 * @param work The unit of work.
+	 * @return The result of the unit of work.
+	 * @throws TimeoutException If no resource is available until the timeout.
+	 * @throws IllegalStateException If the transaction has been marked as 
+	 * rollback-only by the nested unit of work which has failed.
+	 * @throws Exception If the unit of work throws it, or the transaction 
+	 * cannot be begun or committed.
+	 */
+	public <T> T execute(Callable<T> work) throws Exception {
+		Preconditions.checkNotNull(work, "Parameter 'work' must not be [null]");
+		Transaction<R> transaction = this.transaction.get();
+		
+		if (transaction != null) {
+			try {
+				return work.call();
+			} catch (Exception e) {
+				transaction.rollbackOnly = true;
+				throw e;
+			} catch (Error e) {
+				transaction.rollbackOnly = true;
+				throw e;
+			}
+		}
+		
+		transaction = new Transaction<R>(acquire());
+		this.transaction.set(transaction);
+		boolean broken = true;
+		
+		try {
+			begin(transaction.resource);
+			T result;
+			
+			try {
+				result = work.call();
+			} catch (Exception e) {
+				broken = !abort(transaction.resource);
+				throw e;
+			} catch (Error e) {
+				broken = !abort(transaction.resource);
+				throw e;
+			}
+			
+			if (transaction.rollbackOnly) {
+				broken = !abort(transaction.resource);
+				throw new IllegalStateException("Transaction has been marked as rollback-only");
+			}
+			
+			try {
+				if (group) {
+					group(transaction.resource);
+				} else {
+					commit(transaction.resource);
+				}
+				
+			} catch (Exception e) {
+				abort(transaction.resource);
+				throw e;
+			} catch (Error e) {
+				abort(transaction.resource);
+				throw e;
+			}
+			
+			commits.incrementAndGet();
+			broken = false;
+			return result;
+		} finally {
+			this.transaction.remove();
+			release(transaction.resource, broken);
+		}
+	}
+	
+	/**
+	 * Returns the resource of the transaction of the current thread.
+	 * 
+	 * @return The resource of the transaction of the current thread.
+	 * @throws IllegalStateException If the current thread is not in the 
+	 * transaction.
+	 */
+	public R resource() {
+		Transaction<R> transaction = this.transaction.get();
+		Preconditions.checkState(transaction != null, "Current thread is not in transaction");
+		return transaction.resource;
+	}
+	
+	/**
+	 * Marks the transaction of the current thread as rollback-only.
+	 * 
+	 * @throws IllegalStateException If the current thread is not in the 
+	 * transaction.
+	 */
+	public void setRollbackOnly() {
+		Transaction<R> transaction = this.transaction.get();
+		Preconditions.checkState(transaction != null, "Current thread is not in transaction");
+		transaction.rollbackOnly = true;
+	}
+	
+	/**
+	 * Returns the number of the committed transactions.
+	 * 
+	 * @return The number of the committed transactions.
+	 */
+	public long commits() {
+		return commits.get();
+	}
+	
+	/**
+	 * Returns the number of the groups the transactions have been committed 
+	 * in (with group commit enabled).
+	 * 
+	 * @return The number of the groups.
+	 */
+	public long groups() {
+		return groups.get();
+	}
+	
+	/**
+	 * Returns the number of the rolled back transactions.
+	 * 
+	 * @return The number of the rolled back transactions.
+	 */
+	public long rollbacks() {
+		return rollbacks.get();
+	}
+	
+	private R acquire() throws Exception {
+		long deadline = System.nanoTime() + timeout;
+		
+		while (true) {
+			R resource = idle.poll();
+			
+			if (resource != null) {
+				return resource;
+			}
+			
+			if (permits.tryAcquire()) {
+				try {
+					return open();
+				} catch (Exception e) {
+					permits.release();
+					throw e;
+				}
+			}
+			
+			long remaining = deadline - System.nanoTime();
+			
+			if (remaining <= 0) {
+				throw new TimeoutException("No transactional resource is available in "
+						+ TimeUnit.NANOSECONDS.toMillis(timeout) + " ms");
+			}
+			
+			// Polls in short intervals to notice the permit released by the 
+			// discarded resource.
+			resource = idle.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(10)), TimeUnit.NANOSECONDS);
+			
+			if (resource != null) {
+				return resource;
+			}
+		}
+	}
+	
+	private void release(R resource, boolean broken) {
+		if (!broken && idle.offer(resource)) {
+			return;
+		}
+		
+		try {
+			close(resource);
+		} catch (Exception e) {
+			logger.warn("Failed to close transactional resource [" + resource + "]", e);
+		} finally {
+			permits.release();
+		}
+	}
+	
+	private boolean abort(R resource) {
+		rollbacks.incrementAndGet();
+		
+		try {
+			rollback(resource);
+			return true;
+		} catch (Exception e) {
+			logger.warn("Failed to roll back transaction on [" + resource + "]", e);
+			return false;
+		}
+	}
+	
+	private void group(R resource) throws Exception {
+		Commit<R> commit = new Commit<R>(resource);
+		List<Commit<R>> group;
+		
+		boolean interrupted = false;
+		
+		synchronized (lock) {
+			queue.add(commit);
+			
+			// The queued commit is committed by the other thread anyway, so 
+			// it waits uninterruptibly.
+			while (committing && !commit.done) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			
+			if (commit.done) {
+				commit.check();
+				return;
+			}
+			
+			// The first of the queued commits commits them as a group.
+			committing = true;
+			group = queue;
+			queue = new ArrayList<Commit<R>>();
+		}
+		
+		List<R> resources = new ArrayList<R>(group.size());
+		
+		for (Commit<R> c : group) {
+			resources.add(c.resource);
+		}
+		
+		Throwable throwable = null;
+		
+		try {
+			commit(resources);
+			groups.incrementAndGet();
+		} catch (Throwable t) {
+			throwable = t;
+		} finally {
+			synchronized (lock) {
+				for (Commit<R> c : group) {
+					c.throwable = throwable;
+					c.done = true;
+				}
+				
+				committing = false;
+				lock.notifyAll();
+			}
+		}
+		
+		commit.check();
+	}
+	
+	private static boolean overrides(Class<?> clazz) {
+		for (Class<?> c = clazz; c != TransactionManager.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("commit", List.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// Go through.
+			}
+		}
+		
+		return false;
+	}
+	
+	private static final class Transaction<R> {
+		
+		private final R resource;
+		
+		private boolean rollbackOnly;
+		
+		private Transaction(R resource) {
+			this.resource = resource;
+		}
+		
+	}
+	
+	private static final class Commit<R> {
+		
+		private final R resource;
+		
+		private boolean done;
+		
+		private Throwable throwable;
+		
+		private Commit(R resource) {
+			this.resource = resource;
+		}
+		
+		// Throws the failure of the group commit to each member of the group.
+		private void check() throws Exception {
+			if (throwable instanceof Exception) {
+				throw (Exception) throwable;
+			} else if (throwable instanceof Error) {
+				throw (Error) throwable;
+			} else if (throwable != null) {
+				throw new UndeclaredThrowableException(throwable);
+			}
+		}
+		
+	}
+	
+}
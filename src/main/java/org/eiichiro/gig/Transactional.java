@@ -23,7 +23,9 @@ import org.eiichiro.jaguar.interceptor.Intercept;
 
 /**
  * {@code Transactional} is a intercept annotation to control Acid Houses' NoSQL 
- * database transaction declaratively.
+ * database transaction declaratively. The annotated methods are run in the 
+ * transactions by {@link TransactionalInterceptor} if a 
+ * {@link TransactionManager} component is installed.
  * 
  * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
  */
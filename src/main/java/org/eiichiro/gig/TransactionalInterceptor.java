@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+
+import org.eiichiro.jaguar.Builtin;
+import org.eiichiro.jaguar.inject.Inject;
+import org.eiichiro.jaguar.interceptor.Around;
+import org.eiichiro.jaguar.interceptor.Interceptor;
+import org.eiichiro.jaguar.interceptor.InvocationContext;
+
+/**
+ * {@code TransactionalInterceptor} is the built-in interceptor to run the 
+ * methods annotated with {@link Transactional} (e.g. of the 
+ * {@link Repository} components) in the transactions with the 
+ * {@link TransactionManager} component installed. The nested 
+ * {@link Transactional} method calls join the transaction in progress.
+ * If no {@link TransactionManager} is installed, the method is just invoked 
+ * (so the interceptor of the component set can control the transaction).
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+@Builtin
+@Interceptor
+@Transactional
+public class TransactionalInterceptor {
+	
+	@Inject private TransactionManager<?> manager;
+	
+	/**
+	 * Invokes the intercepted method in the transaction.
+	 * 
+	 * @param context The invocation context.
+	 * @return The result of the method.
+	 * @throws Throwable If the method throws it, or the transaction cannot be 
+	 * begun or committed.
+	 */
+	@Around
+	public Object intercept(final InvocationContext context) throws Throwable {
+		if (manager == null) {
+			return context.proceed();
+		}
+		
+		return manager.execute(new Callable<Object>() {
+			
+			@Override
+			public Object call() throws Exception {
+				try {
+					return context.proceed();
+				} catch (Exception e) {
+					throw e;
+				} catch (Error e) {
+					throw e;
+				} catch (Throwable t) {
+					throw new UndeclaredThrowableException(t);
+				}
+			}
+			
+		});
+	}
+	
+}
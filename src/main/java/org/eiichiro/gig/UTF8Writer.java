@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2012 Eiichiro Uchiumi. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eiichiro.gig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * {@code UTF8Writer} is the {@code Writer} which encodes the characters into 
+ * UTF-8 in the buffer acquired from the {@link BufferPool} and writes it to 
+ * the underlying {@code OutputStream} when the buffer is full or flushed. 
+ * Unlike {@code OutputStreamWriter}, it allocates neither the encoder nor the 
+ * intermediate arrays (including the substrings on 
+ * {@link #append(CharSequence, int, int)}), and the buffer is returned to the 
+ * pool on {@link #close()}. The underlying {@code OutputStream} is not closed.
+ * 
+ * @author <a href="mailto:eiichiro@eiichiro.org">Eiichiro Uchiumi</a>
+ */
+public class UTF8Writer extends Writer {
+	
+	private final OutputStream out;
+	
+	private final BufferPool pool;
+	
+	private ByteBuffer buffer;
+	
+	private char high;
+	
+	/**
+	 * Constructs a new {@code UTF8Writer}.
+	 * 
+	 * @param out The underlying {@code OutputStream}.
+	 * @param pool The {@link BufferPool} to acquire the buffer from.
+	 */
+	public UTF8Writer(OutputStream out, BufferPool pool) {
+		this.out = out;
+		this.pool = pool;
+	}
+	
+	@Override
+	public void write(int c) throws IOException {
+		encode((char) c);
+	}
+	
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			encode(cbuf[i]);
+		}
+	}
+	
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			encode(str.charAt(i));
+		}
+	}
+	
+	@Override
+	public Writer append(CharSequence csq) throws IOException {
+		return (csq == null) ? append("null", 0, 4) : append(csq, 0, csq.length());
+	}
+	
+	@Override
+	public Writer append(CharSequence csq, int start, int end) throws IOException {
+		if (csq == null) {
+			return append("null", start, end);
+		}
+		
+		for (int i = start; i < end; i++) {
+			encode(csq.charAt(i));
+		}
+		
+		return this;
+	}
+	
+	@Override
+	public Writer append(char c) throws IOException {
+		encode(c);
+		return this;
+	}
+	
+	private void encode(char c) throws IOException {
+		if (high != 0) {
+			char h = high;
+			high = 0;
+			
+			if (Character.isLowSurrogate(c)) {
+				int code = Character.toCodePoint(h, c);
+				put(4, (byte) (0xF0 | (code >> 18)), (byte) (0x80 | ((code >> 12) & 0x3F)), 
+						(byte) (0x80 | ((code >> 6) & 0x3F)), (byte) (0x80 | (code & 0x3F)));
+				return;
+			}
+			
+			put(1, (byte) '?', (byte) 0, (byte) 0, (byte) 0);
+		}
+		
+		if (c < 0x80) {
+			put(1, (byte) c, (byte) 0, (byte) 0, (byte) 0);
+		} else if (c < 0x800) {
+			put(2, (byte) (0xC0 | (c >> 6)), (byte) (0x80 | (c & 0x3F)), (byte) 0, (byte) 0);
+		} else if (Character.isHighSurrogate(c)) {
+			high = c;
+		} else if (Character.isLowSurrogate(c)) {
+			put(1, (byte) '?', (byte) 0, (byte) 0, (byte) 0);
+		} else {
+			put(3, (byte) (0xE0 | (c >> 12)), (byte) (0x80 | ((c >> 6) & 0x3F)), 
+					(byte) (0x80 | (c & 0x3F)), (byte) 0);
+		}
+	}
+	
+	private void put(int length, byte b0, byte b1, byte b2, byte b3) throws IOException {
+		if (buffer == null) {
+			buffer = pool.acquire();
+		}
+		
+		if (buffer.remaining() < length) {
+			drain();
+		}
+		
+		buffer.put(b0);
+		
+		if (length > 1) {
+			buffer.put(b1);
+		}
+		
+		if (length > 2) {
+			buffer.put(b2);
+		}
+		
+		if (length > 3) {
+			buffer.put(b3);
+		}
+	}
+	
+	private void drain() throws IOException {
+		if (buffer != null && buffer.position() > 0) {
+			out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+			buffer.clear();
+		}
+	}
+	
+	/**
+	 * Writes the buffered bytes to the underlying {@code OutputStream} and 
+	 * flushes it.
+	 * 
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+	
+	/**
+	 * Writes the buffered bytes to the underlying {@code OutputStream} and 
+	 * returns the buffer to the {@link BufferPool}.
+	 * 
+	 * @throws IOException If any I/O error has occurred.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (buffer == null && high == 0) {
+			return;
+		}
+		
+		try {
+			if (high != 0) {
+				high = 0;
+				put(1, (byte) '?', (byte) 0, (byte) 0, (byte) 0);
+			}
+			
+			drain();
+		} finally {
+			pool.release(buffer);
+			buffer = null;
+		}
+	}
+	
+}
@@ -0,0 +1,154 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncResponseTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testTo() throws Exception {
+		final AsyncResponse<String> response = new AsyncResponse<String>();
+		new Thread() {
+			
+			@Override
+			public void run() {
+				response.complete("Hello");
+			}
+			
+		}.start();
+		Map<String, Object> written = new HashMap<String, Object>();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		response.to(request(false, written), response(written, body));
+		assertThat(written.get("setContentType"), is((Object) "text/plain"));
+		assertThat(new String(body.toByteArray(), "UTF-8"), is("Hello"));
+		
+		written.clear();
+		body.reset();
+		AsyncResponse<Object> async = new AsyncResponse<Object>();
+		async.to(request(true, written), response(written, body));
+		assertThat(written.get("complete"), is(nullValue()));
+		assertThat(body.size(), is(0));
+		async.complete(Collections.singletonMap("a", 1));
+		assertThat(written.get("complete"), is((Object) true));
+		assertThat(written.get("setContentType"), is((Object) "application/json"));
+		assertThat(new String(body.toByteArray(), "UTF-8"), is("{\"a\":1}"));
+		
+		written.clear();
+		new AsyncResponse<Object>(10, TimeUnit.MILLISECONDS).to(request(false, written), response(written, body));
+		assertThat(written.get("sendError"), is((Object) 503));
+		
+		written.clear();
+		async = new AsyncResponse<Object>();
+		async.fail(new IllegalStateException());
+		async.to(request(true, written), response(written, body));
+		assertThat(written.get("sendError"), is((Object) 500));
+		assertThat(written.get("complete"), is((Object) true));
+		
+		// The timeout after the completion does not complete again.
+		((AsyncListener) written.get("listener")).onTimeout(null);
+		assertThat(written.get("completes"), is((Object) 1));
+		
+		written.clear();
+		async = new AsyncResponse<Object>();
+		async.to(request(true, written), response(written, body));
+		((AsyncListener) written.get("listener")).onTimeout(null);
+		assertThat(written.get("sendError"), is((Object) 503));
+		assertThat(written.get("completes"), is((Object) 1));
+		async.complete("Hello");
+		assertThat(written.get("completes"), is((Object) 1));
+	}
+	
+	private HttpServletRequest request(final boolean async, final Map<String, Object> written) {
+		return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("isAsyncSupported")) {
+					return async;
+				} else if (method.getName().equals("startAsync")) {
+					return context(args[1], written);
+				}
+				
+				return null;
+			}
+			
+		});
+	}
+	
+	private AsyncContext context(final Object response, final Map<String, Object> written) {
+		return (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {AsyncContext.class}, new InvocationHandler() {
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getResponse")) {
+					return response;
+				} else if (method.getName().equals("complete")) {
+					written.put("complete", true);
+					Integer completes = (Integer) written.get("completes");
+					written.put("completes", (completes == null) ? 1 : completes + 1);
+				} else if (method.getName().equals("addListener")) {
+					written.put("listener", args[0]);
+				}
+				
+				return null;
+			}
+			
+		});
+	}
+	
+	private HttpServletResponse response(final Map<String, Object> written, final ByteArrayOutputStream body) {
+		return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {HttpServletResponse.class}, new InvocationHandler() {
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getOutputStream")) {
+					return new ServletOutputStream() {
+						
+						@Override
+						public void write(int b) throws IOException {
+							body.write(b);
+						}
+						
+					};
+				} else if (args != null && args.length == 1) {
+					written.put(method.getName(), args[0]);
+				}
+				
+				return null;
+			}
+			
+		});
+	}
+	
+}
@@ -0,0 +1,186 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchTest {
+	
+	@Before
+	public void setUp() throws Exception {
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testExecute() throws Exception {
+		final Route route = new Route("Endpoint3/test", Endpoint3.class, Endpoint3.class.getMethod("test"));
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger max = new AtomicInteger();
+		GigFilter filter = new GigFilter() {
+			
+			@Override
+			protected Route route(HttpServletRequest request) {
+				return request.getRequestURI().startsWith("/gig/Endpoint3/") ? route : null;
+			}
+			
+			@Override
+			boolean reserved(HttpServletRequest request) {
+				return request.getRequestURI().equals("/gig/batch");
+			}
+			
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response, 
+					FilterChain chain) throws IOException, ServletException {
+				HttpServletRequest req = (HttpServletRequest) request;
+				int current = running.incrementAndGet();
+				
+				try {
+					if (current > max.get()) {
+						max.set(current);
+					}
+					
+					Thread.sleep(10);
+					
+					if (req.getParameter("fail") != null) {
+						throw new ServletException("fail");
+					}
+					
+					assertThat((String) req.getAttribute("user"), is("eiichiro"));
+					req.setAttribute("id", req.getParameter("id"));
+					response.setContentType(req.getParameter("type"));
+					response.getWriter().print(req.getAttribute("id"));
+				} catch (InterruptedException e) {
+					throw new ServletException(e);
+				} finally {
+					running.decrementAndGet();
+				}
+			}
+			
+		};
+		Map<String, String[]> parameters = new HashMap<String, String[]>();
+		parameters.put(Batch.REQUEST, new String[] {
+				"/Endpoint3/test?id=1&type=application%2Fjson", 
+				"/Endpoint3/test?id=%22a%22&type=text%2Fplain", 
+				"/Endpoint3/test?fail", 
+				"/Endpoint1/test"});
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		try {
+			for (Batch batch : new Batch[] {new Batch(filter, executor, 4), 
+					new Batch(filter, executor, 4, 1), new Batch(filter, null, 4)}) {
+				max.set(0);
+				Map<String, Object> written = new HashMap<String, Object>();
+				ByteArrayOutputStream body = new ByteArrayOutputStream();
+				HttpServletRequest request = request(parameters);
+				request.setAttribute("user", "eiichiro");
+				batch.execute(request, response(written, body), null);
+				assertThat(new String(body.toByteArray(), "UTF-8"), is("["
+						+ "{\"request\":\"/Endpoint3/test?id=1&type=application%2Fjson\",\"status\":200,\"contentType\":\"application/json\",\"body\":1},"
+						+ "{\"request\":\"/Endpoint3/test?id=%22a%22&type=text%2Fplain\",\"status\":200,\"contentType\":\"text/plain\",\"body\":\"\\\"a\\\"\"},"
+						+ "{\"request\":\"/Endpoint3/test?fail\",\"status\":500,\"error\":\"javax.servlet.ServletException: fail\"},"
+						+ "{\"request\":\"/Endpoint1/test\",\"status\":404}]"));
+				assertThat(max.get() <= 4, is(true));
+				assertNull(request.getAttribute("id"));
+			}
+			
+			max.set(0);
+			new Batch(filter, executor, 4, 1).execute(request(parameters), 
+					response(new HashMap<String, Object>(), new ByteArrayOutputStream()), null);
+			assertThat(max.get(), is(1));
+			
+		} finally {
+			executor.shutdown();
+		}
+		
+		Map<String, Object> written = new HashMap<String, Object>();
+		new Batch(filter, executor, 1).execute(request(parameters), response(written, new ByteArrayOutputStream()), null);
+		assertThat(written.get("status"), is((Object) 400));
+		
+		written.clear();
+		parameters.put(Batch.REQUEST, new String[] {"/Endpoint3/test?id=1", "/batch?request=%2Fbatch"});
+		new Batch(filter, null, 4).execute(request(parameters), response(written, new ByteArrayOutputStream()), null);
+		assertThat(written.get("status"), is((Object) 400));
+	}
+	
+	private HttpServletRequest request(final Map<String, String[]> parameters) {
+		final Map<String, Object> attributes = Collections.synchronizedMap(new HashMap<String, Object>());
+		return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getParameterValues")) {
+					return parameters.get(args[0]);
+				} else if (method.getName().equals("getContextPath")) {
+					return "/gig";
+				} else if (method.getName().equals("getAttribute")) {
+					return attributes.get(args[0]);
+				} else if (method.getName().equals("getAttributeNames")) {
+					return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
+				} else if (method.getName().equals("setAttribute")) {
+					attributes.put((String) args[0], args[1]);
+				} else if (method.getReturnType().equals(int.class)) {
+					return 0;
+				} else if (method.getReturnType().equals(boolean.class)) {
+					return false;
+				}
+				
+				return null;
+			}
+			
+		});
+	}
+	
+	private HttpServletResponse response(final Map<String, Object> written, final ByteArrayOutputStream body) {
+		return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {HttpServletResponse.class}, new InvocationHandler() {
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("sendError")) {
+					written.put("status", args[0]);
+				} else if (method.getName().equals("getOutputStream")) {
+					return new ServletOutputStream() {
+						
+						@Override
+						public void write(int b) throws IOException {
+							body.write(b);
+						}
+						
+					};
+				}
+				
+				return null;
+			}
+			
+		});
+	}
+	
+}
@@ -0,0 +1,40 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testAcquire() {
+		BufferPool pool = new BufferPool(2, 1, 16);
+		ByteBuffer buffer = pool.acquire();
+		assertThat(buffer.capacity(), is(16));
+		assertThat(pool.misses(), is(1L));
+		buffer.put((byte) 1);
+		pool.release(buffer);
+		ByteBuffer another = pool.acquire();
+		assertSame(buffer, another);
+		assertThat(another.position(), is(0));
+		assertThat(pool.hits(), is(1L));
+		assertNotSame(buffer, pool.acquire());
+		assertThat(pool.misses(), is(2L));
+		pool.release(ByteBuffer.allocate(8));
+		assertThat(pool.acquire().capacity(), is(16));
+	}
+	
+}
@@ -0,0 +1,92 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BufferedResponseTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testBody() throws Exception {
+		byte[] bytes = new byte[BufferPool.shared().capacity() * 2 + 1];
+		
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		BufferedResponse buffered = new BufferedResponse(response(body));
+		buffered.getOutputStream().write(bytes, 0, 10);
+		buffered.getOutputStream().write(bytes[10]);
+		buffered.getOutputStream().write(bytes, 11, bytes.length - 11);
+		assertTrue(Arrays.equals(buffered.body(), bytes));
+		buffered.writeTo(response(body));
+		assertTrue(Arrays.equals(body.toByteArray(), bytes));
+		
+		long hits = BufferPool.shared().hits();
+		buffered.release();
+		assertThat(buffered.body().length, is(0));
+		buffered = new BufferedResponse(response(body));
+		buffered.getWriter().print("Hello");
+		assertThat(new String(buffered.body(), "ISO-8859-1"), is("Hello"));
+		assertThat(BufferPool.shared().hits(), is(hits + 1));
+	}
+	
+	@Test
+	public void testSetsCookies() throws Exception {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		BufferedResponse buffered = new BufferedResponse(response(body));
+		assertThat(buffered.setsCookies(), is(false));
+		buffered.addCookie(new Cookie("JSESSIONID", "1"));
+		assertThat(buffered.setsCookies(), is(true));
+		buffered = new BufferedResponse(response(body));
+		buffered.addHeader("Set-Cookie", "JSESSIONID=1");
+		assertThat(buffered.setsCookies(), is(true));
+	}
+	
+	private HttpServletResponse response(final ByteArrayOutputStream body) {
+		return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {HttpServletResponse.class}, new InvocationHandler() {
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getOutputStream")) {
+					return new ServletOutputStream() {
+						
+						@Override
+						public void write(int b) throws IOException {
+							body.write(b);
+						}
+						
+					};
+				}
+				
+				return null;
+			}
+			
+		});
+	}
+	
+}
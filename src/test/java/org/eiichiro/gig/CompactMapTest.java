@@ -0,0 +1,76 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactMapTest {
+	
+	@Before
+	public void setUp() throws Exception {
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testMap() {
+		CompactMap map = new CompactMap(true, 2, 64);
+		assertNull(map.put("key1", new byte[] {1}));
+		assertThat(map.put("key1", new byte[] {2, 2}), is(new byte[] {1}));
+		assertThat(map.get("key1"), is(new byte[] {2, 2}));
+		assertThat(map.putIfAbsent("key1", new byte[] {3}), is(new byte[] {2, 2}));
+		assertNull(map.putIfAbsent("\u30ad\u30fc", new byte[] {3}));
+		assertThat(map.get("\u30ad\u30fc"), is(new byte[] {3}));
+		assertThat(map.replace("key1", new byte[] {1}, new byte[] {4}), is(false));
+		assertThat(map.replace("key1", new byte[] {2, 2}, new byte[] {4}), is(true));
+		assertThat(map.remove("key1", new byte[] {1}), is(false));
+		assertThat(map.remove("key1", new byte[] {4}), is(true));
+		assertNull(map.get("key1"));
+		assertThat(map.size(), is(1));
+		assertThat(map.offHeap() > 0, is(true));
+		
+		Map<String, byte[]> expected = new HashMap<String, byte[]>();
+		
+		for (int i = 0; i < 1000; i++) {
+			byte[] value = new byte[i % 32 + 1];
+			value[0] = (byte) i;
+			map.put("key" + (i % 300), value);
+			expected.put("key" + (i % 300), value);
+			
+			if (i % 7 == 0) {
+				map.remove("key" + (i % 50));
+				expected.remove("key" + (i % 50));
+			}
+		}
+		
+		expected.put("\u30ad\u30fc", new byte[] {3});
+		assertThat(map.size(), is(expected.size()));
+		
+		for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+			assertThat(map.get(entry.getKey()), is(entry.getValue()));
+		}
+		
+		assertThat(map.entrySet().size(), is(expected.size()));
+		map.clear();
+		assertThat(map.size(), is(0));
+		assertNull(map.get("key1"));
+		
+		map.put("key1", new byte[] {1});
+		map.release();
+		assertThat(map.size(), is(0));
+		assertThat(map.offHeap(), is(0L));
+		assertNull(map.get("key1"));
+		map.put("key2", new byte[] {2});
+		assertThat(map.get("key2"), is(new byte[] {2}));
+		assertThat(map.offHeap() > 0, is(true));
+	}
+	
+}
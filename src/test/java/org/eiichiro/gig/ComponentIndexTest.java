@@ -0,0 +1,116 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eiichiro.gig.ComponentScanner.Reason;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComponentIndexTest {
+
+	private File file;
+	
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("gig", ".index");
+		file.delete();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+	
+	@Test
+	public void testGetPut() throws Exception {
+		URL url = ComponentIndexTest.class.getProtectionDomain().getCodeSource().getLocation();
+		ComponentIndex index = new ComponentIndex(file);
+		assertNull(index.get(url));
+		Map<String, Reason> components = Collections.singletonMap(Endpoint1.class.getName(), Reason.ENDPOINT);
+		index.put(url, components);
+		assertThat(index.get(url), is(components));
+		
+		index.store();
+		assertTrue(file.exists());
+		index = new ComponentIndex(file);
+		assertThat(index.get(url), is(components));
+	}
+	
+	@Test
+	public void testScan() throws Exception {
+		Set<URL> urls = new LinkedHashSet<URL>();
+		urls.add(ComponentIndexTest.class.getProtectionDomain().getCodeSource().getLocation());
+		ComponentScanner scanner = new ComponentScanner(
+				Thread.currentThread().getContextClassLoader(), new ComponentIndex(file));
+		Map<String, Reason> components = scanner.scan(urls);
+		assertThat(components.size(), is(8));
+		assertTrue(file.exists());
+		
+		ComponentIndex index = new ComponentIndex(file);
+		assertThat(index.get(urls.iterator().next()), is(components));
+		scanner = new ComponentScanner(Thread.currentThread().getContextClassLoader(), index);
+		assertThat(scanner.scan(urls), is(components));
+	}
+	
+	@Test
+	public void testStore() throws Exception {
+		URL url1 = ComponentIndexTest.class.getProtectionDomain().getCodeSource().getLocation();
+		File directory = new File(file.getPath() + ".d");
+		directory.mkdirs();
+		
+		try {
+			URL url2 = directory.toURI().toURL();
+			ComponentIndex index = new ComponentIndex(file);
+			Map<String, Reason> components = Collections.singletonMap(Endpoint1.class.getName(), Reason.ENDPOINT);
+			index.put(url1, components);
+			index.put(url2, Collections.<String, Reason>emptyMap());
+			index.store();
+			
+			index = new ComponentIndex(file);
+			assertThat(index.get(url1), is(components));
+			index.store();
+			index = new ComponentIndex(file);
+			assertNull(index.get(url2));
+			assertThat(index.get(url1), is(components));
+		} finally {
+			directory.delete();
+		}
+	}
+	
+	@Test
+	public void testScanChanged() throws Exception {
+		Set<URL> urls = new LinkedHashSet<URL>();
+		URL url = ComponentIndexTest.class.getProtectionDomain().getCodeSource().getLocation();
+		urls.add(url);
+		File directory = new File(file.getPath() + ".d");
+		directory.mkdirs();
+		File classFile = new File(directory, "Changed.class");
+		
+		try {
+			urls.add(directory.toURI().toURL());
+			Map<String, Reason> components = new ComponentScanner(
+					Thread.currentThread().getContextClassLoader(), new ComponentIndex(file)).scan(urls);
+			
+			// The stale results of the other entry are not used.
+			ComponentIndex index = new ComponentIndex(file);
+			index.put(url, Collections.<String, Reason>emptyMap());
+			index.store();
+			classFile.createNewFile();
+			assertThat(new ComponentScanner(Thread.currentThread().getContextClassLoader(), 
+					new ComponentIndex(file)).scan(urls), is(components));
+		} finally {
+			classFile.delete();
+			directory.delete();
+		}
+	}
+	
+}
@@ -0,0 +1,42 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+
+import org.eiichiro.jaguar.Jaguar;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComponentInstantiatorTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testInstantiate() {
+		Jaguar.bootstrap();
+		Jaguar.install(Endpoint3.class);
+		Jaguar.install(Namespace.class);
+		ComponentInstantiator instantiator = new ComponentInstantiator();
+		assertNotNull(instantiator.instantiate(Endpoint3.class));
+		assertNotNull(instantiator.instantiate(Endpoint3.class));
+		assertNotNull(instantiator.instantiate(Endpoint1.class));
+		assertNull(instantiator.instantiate(Object3.class));
+		Namespace namespace = instantiator.instantiate(Namespace.class);
+		assertNotNull(namespace);
+		assertSame(namespace, instantiator.instantiate(Namespace.class));
+		assertSame(Jaguar.component(Namespace.class), namespace);
+		Jaguar.shutdown();
+		
+		Jaguar.bootstrap();
+		Jaguar.install(Namespace.class);
+		assertNotSame(namespace, instantiator.instantiate(Namespace.class));
+		Jaguar.shutdown();
+	}
+	
+}
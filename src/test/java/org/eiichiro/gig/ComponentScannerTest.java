@@ -0,0 +1,108 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.matchers.JUnitMatchers.*;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.eiichiro.gig.ComponentScanner.Reason;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComponentScannerTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testUrls() throws Exception {
+		ComponentScanner scanner = new ComponentScanner(Thread.currentThread().getContextClassLoader());
+		Set<URL> urls = scanner.urls();
+		assertTrue(urls.contains(location()));
+	}
+	
+	@Test
+	public void testScan() throws Exception {
+		ComponentScanner scanner = new ComponentScanner(Thread.currentThread().getContextClassLoader());
+		Map<String, Reason> reasons = scanner.scan(location());
+		Set<String> components = reasons.keySet();
+		assertThat(components, hasItems(Endpoint1.class.getName(), Endpoint2.class.getName(), 
+				Endpoint3.class.getName(), Object3.class.getName(), Object5.class.getName(), 
+				Object6.class.getName(), Object7.class.getName(), Component2.class.getName()));
+		assertFalse(components.contains(Endpoint4.class.getName()));
+		assertFalse(components.contains(Object1.class.getName()));
+		assertFalse(components.contains(Object2.class.getName()));
+		assertFalse(components.contains(Object4.class.getName()));
+		assertFalse(components.contains(Object8.class.getName()));
+		assertFalse(components.contains(Object9.class.getName()));
+		assertFalse(components.contains(Component1.class.getName()));
+		assertFalse(components.contains(Component3.class.getName()));
+		assertThat(reasons.get(Endpoint1.class.getName()), is(Reason.ENDPOINT));
+		assertThat(reasons.get(Object3.class.getName()), is(Reason.STEREOTYPE));
+		assertThat(reasons.get(Object5.class.getName()), is(Reason.DEPLOYMENT));
+		assertThat(reasons.get(Object6.class.getName()), is(Reason.BINDING));
+		assertThat(reasons.get(Object7.class.getName()), is(Reason.SCOPE));
+		assertThat(reasons.get(Component2.class.getName()), is(Reason.COMPONENT));
+		assertThat(scanner.scan(), is(scanner.scan()));
+	}
+	
+	@Test
+	public void testScanScope() throws Exception {
+		ScanScope scope = new ScanScope(Collections.singleton(location()),
+				Arrays.asList("org.eiichiro"), Arrays.asList("org.eiichiro.gig"),
+				ScanScope.DEFAULT_SKIPS);
+		ComponentScanner scanner = new ComponentScanner(Thread.currentThread().getContextClassLoader(), null, scope);
+		assertThat(scanner.urls(), is(Collections.singleton(location())));
+		assertTrue(scanner.scan().isEmpty());
+		scope = new ScanScope(Collections.singleton(location()),
+				Arrays.asList("org.eiichiro.gig"), Collections.<String>emptyList(),
+				ScanScope.DEFAULT_SKIPS);
+		scanner = new ComponentScanner(Thread.currentThread().getContextClassLoader(), null, scope);
+		Set<String> components = scanner.scan().keySet();
+		assertThat(components, hasItems(Endpoint1.class.getName(), Endpoint2.class.getName(), 
+				Endpoint3.class.getName(), Object3.class.getName(), Object5.class.getName(), 
+				Object6.class.getName(), Object7.class.getName(), Component2.class.getName()));
+		assertFalse(components.contains(Endpoint4.class.getName()));
+		assertFalse(components.contains(Component3.class.getName()));
+	}
+	
+	@Test
+	public void testMatches() throws Exception {
+		ComponentScanner scanner = new ComponentScanner(Thread.currentThread().getContextClassLoader());
+		assertTrue(scanner.matches(classFile(Endpoint1.class)));
+		assertFalse(scanner.matches(classFile(Endpoint4.class)));
+		assertTrue(scanner.matches(classFile(Component2.class)));
+		assertFalse(scanner.matches(classFile(Component3.class)));
+		assertFalse(scanner.matches(classFile(Object8.class)));
+		assertTrue(scanner.matches(classFile(Object7.class)));
+	}
+	
+	private URL location() throws Exception {
+		return ComponentScannerTest.class.getProtectionDomain().getCodeSource().getLocation();
+	}
+	
+	private ClassFile classFile(Class<?> clazz) throws Exception {
+		InputStream in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class");
+		
+		try {
+			ClassFile classFile = ClassFile.read(in);
+			assertThat(classFile.name(), is(clazz.getName()));
+			return classFile;
+		} finally {
+			in.close();
+		}
+	}
+	
+}
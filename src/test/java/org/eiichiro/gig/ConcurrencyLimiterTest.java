@@ -0,0 +1,112 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testAcquire() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10);
+		assertTrue(limiter.acquire());
+		assertTrue(limiter.acquire());
+		assertFalse(limiter.acquire());
+		assertThat(limiter.inFlight(), is(2));
+		assertThat(limiter.rejections(), is(1L));
+		limiter.cancel();
+		assertTrue(limiter.acquire());
+		
+		try {
+			new ConcurrencyLimiter(0, 1, 10);
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	@Test
+	public void testAdjust() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 8);
+		
+		for (int i = 0; i < 1000; i++) {
+			while (limiter.acquire()) {}
+			
+			while (limiter.inFlight() > 0) {
+				limiter.release(1000000, false);
+			}
+		}
+		
+		assertThat(limiter.limit(), is(8));
+		Thread.sleep(5);
+		
+		for (int i = 0; i < 3; i++) {
+			limiter.acquire();
+			limiter.release(1000000, true);
+			Thread.sleep(5);
+		}
+		
+		assertThat(limiter.limit(), is(5));
+		
+		for (int i = 0; i < 2; i++) {
+			limiter.acquire();
+			limiter.release(3000000, false);
+			Thread.sleep(5);
+		}
+		
+		assertThat(limiter.limit(), is(4));
+		
+		for (int i = 0; i < 100; i++) {
+			limiter.acquire();
+			limiter.release(1000000, true);
+			Thread.sleep(2);
+		}
+		
+		assertThat(limiter.limit(), is(1));
+	}
+	
+	@Test
+	public void testRecover() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 8);
+		
+		for (int i = 0; i < 100; i++) {
+			while (limiter.acquire()) {}
+			
+			while (limiter.inFlight() > 0) {
+				limiter.release(1000000, false);
+			}
+		}
+		
+		assertThat(limiter.limit(), is(8));
+		Thread.sleep(5);
+		
+		// The latency steps up 3x for good.
+		for (int i = 0; i < 3; i++) {
+			limiter.acquire();
+			limiter.release(3000000, false);
+			Thread.sleep(5);
+		}
+		
+		assertThat(limiter.limit() < 8, is(true));
+		
+		for (int i = 0; i < 1000; i++) {
+			while (limiter.acquire()) {}
+			
+			while (limiter.inFlight() > 0) {
+				limiter.release(3000000, false);
+			}
+		}
+		
+		assertThat(limiter.limit(), is(8));
+	}
+	
+}
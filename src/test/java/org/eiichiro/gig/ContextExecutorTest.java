@@ -0,0 +1,75 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eiichiro.jaguar.WebFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContextExecutorTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		WebFilter.request(null);
+	}
+	
+	@Test
+	public void testSubmit() throws Exception {
+		HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+				new InvocationHandler() {
+					
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						return null;
+					}
+					
+				});
+		ExecutorService virtual = ContextExecutor.virtual();
+		ExecutorService executor = new ContextExecutor((virtual == null) ? Executors.newSingleThreadExecutor() : virtual);
+		
+		try {
+			Callable<HttpServletRequest> callable = new Callable<HttpServletRequest>() {
+				
+				@Override
+				public HttpServletRequest call() throws Exception {
+					return WebFilter.request();
+				}
+				
+			};
+			assertNull(executor.submit(callable).get());
+			WebFilter.request(request);
+			assertSame(request, executor.submit(callable).get());
+			WebFilter.request(null);
+			assertNull(executor.submit(callable).get());
+		} finally {
+			executor.shutdown();
+		}
+		
+		assertTrue(executor.isShutdown());
+	}
+	
+	@Test
+	public void testExecutor() throws Exception {
+		DefaultConfiguration configuration = new DefaultConfiguration();
+		ExecutorService executor = configuration.executor();
+		assertTrue(executor instanceof ContextExecutor);
+		assertSame(executor, configuration.executor());
+		executor.shutdown();
+	}
+	
+}
@@ -4,6 +4,8 @@ import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
 
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 
 import org.eiichiro.jaguar.Jaguar;
 import org.eiichiro.jaguar.Module;
@@ -55,6 +57,23 @@ public class DefaultConfigurationTest {
 		assertFalse(components.contains(Component3.class));
 	}
 
+	@Test
+	public void testModuleDeferred() {
+		DefaultConfiguration configuration = new DefaultConfiguration() {
+			
+			@Override
+			protected boolean deferred() {
+				return true;
+			}
+			
+		};
+		Set<Class<?>> components = configuration.module().components();
+		assertEquals(new DefaultConfiguration().module().components(), components);
+		assertTrue(components.contains(Endpoint3.class));
+		assertTrue(components.contains(Component2.class));
+		assertFalse(components.contains(Object9.class));
+	}
+	
 	@Test
 	public void testInstantiator() {
 		Jaguar.bootstrap();
@@ -81,4 +100,66 @@ public class DefaultConfigurationTest {
 		assertSame(loader, configuration.loader());
 	}
 
+	@Test
+	public void testShutdown() {
+		DefaultConfiguration configuration = new DefaultConfiguration();
+		configuration.shutdown();
+		ExecutorService executor = configuration.executor();
+		assertThat(executor.isShutdown(), is(false));
+		configuration.shutdown();
+		assertThat(executor.isShutdown(), is(true));
+	}
+
+	@Test
+	public void testExecutor() throws Exception {
+		DefaultConfiguration configuration = new DefaultConfiguration() {
+			
+			@Override
+			protected int threads() {
+				return 1;
+			}
+			
+			@Override
+			protected int queue() {
+				return 1;
+			}
+			
+		};
+		ExecutorService executor = configuration.executor();
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Thread[] threads = new Thread[3];
+		
+		try {
+			for (int i = 0; i < threads.length; i++) {
+				final int n = i;
+				executor.execute(new Runnable() {
+					
+					@Override
+					public void run() {
+						threads[n] = Thread.currentThread();
+						
+						try {
+							if (n == 0) {
+								latch.await();
+							}
+							
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+					
+				});
+			}
+			
+			// The worker is busy and the queue is full.
+			assertThat(threads[2], is(Thread.currentThread()));
+		} finally {
+			latch.countDown();
+			configuration.shutdown();
+		}
+		
+		assertThat(threads[0].getName(), is("gig-worker-1"));
+		assertThat(threads[0].isDaemon(), is(true));
+	}
+	
 }
@@ -0,0 +1,101 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EmbeddedServerTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testParse() throws Exception {
+		byte[] bytes = ("POST /Endpoint3/test?a=1&b=%20 HTTP/1.1\r\nHost: localhost\r\n"
+				+ "Content-Type: application/x-www-form-urlencoded\r\nContent-Length: 7\r\n\r\na=2&c=3"
+				+ "GET / HTTP/1.0\r\n\r\n").getBytes("ISO-8859-1");
+		assertNull(EmbeddedServer.parse(bytes, 20));
+		assertNull(EmbeddedServer.parse(bytes, 130));
+		EmbeddedServer.Exchange exchange = EmbeddedServer.parse(bytes, bytes.length);
+		assertThat(exchange.method, is("POST"));
+		assertThat(exchange.path, is("/Endpoint3/test"));
+		assertThat(exchange.parameters.toString(), is("{a=1, b= , c=3}"));
+		assertTrue(exchange.keepAlive);
+		assertThat(exchange.length, is(bytes.length - 18));
+		
+		byte[] next = new byte[18];
+		System.arraycopy(bytes, exchange.length, next, 0, next.length);
+		exchange = EmbeddedServer.parse(next, next.length);
+		assertThat(exchange.path, is("/"));
+		assertFalse(exchange.keepAlive);
+		
+		try {
+			EmbeddedServer.parse("GET /\r\n\r\n".getBytes("ISO-8859-1"), 9);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		bytes = "POST / HTTP/1.1\r\nContent-Length: 1\r\nContent-Length: 2\r\n\r\nab".getBytes("ISO-8859-1");
+		
+		try {
+			EmbeddedServer.parse(bytes, bytes.length);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		bytes = "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n".getBytes("ISO-8859-1");
+		
+		try {
+			EmbeddedServer.parse(bytes, bytes.length);
+			fail();
+		} catch (UnsupportedOperationException e) {}
+	}
+	
+	@Test
+	public void testServe() throws Exception {
+		EmbeddedServer server = new EmbeddedServer(new DefaultConfiguration(), new InetSocketAddress("127.0.0.1", 0));
+		server.start();
+		
+		try {
+			Socket socket = new Socket("127.0.0.1", server.port());
+			
+			try {
+				OutputStream out = socket.getOutputStream();
+				out.write(("GET /Unknown/method HTTP/1.1\r\n\r\n"
+						+ "DELETE /Unknown/method HTTP/1.1\r\n\r\n"
+						+ "POST /Unknown/method HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+						+ "0\r\n\r\nGET /Unknown/method HTTP/1.1\r\n\r\n").getBytes("ISO-8859-1"));
+				out.flush();
+				InputStream in = socket.getInputStream();
+				ByteArrayOutputStream response = new ByteArrayOutputStream();
+				
+				for (int b = in.read(); b >= 0; b = in.read()) {
+					response.write(b);
+				}
+				
+				assertThat(response.toString("ISO-8859-1"), is(
+						"HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: keep-alive\r\n\r\n"
+						+ "HTTP/1.1 501 Not Implemented\r\nContent-Length: 0\r\nConnection: keep-alive\r\n\r\n"
+						+ "HTTP/1.1 501 Not Implemented\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"));
+			} finally {
+				socket.close();
+			}
+			
+		} finally {
+			server.stop();
+		}
+	}
+	
+}
@@ -0,0 +1,76 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eiichiro.bootleg.annotation.Endpoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EndpointsTest {
+	
+	@Endpoint
+	static class Overloaded {
+		
+		public void get() {}
+		
+		public void get(String id) {}
+		
+		public void list() {}
+		
+	}
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testEndpoints() {
+		Set<Class<?>> components = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+				Endpoint1.class, Endpoint2.class, Endpoint3.class, Object3.class, Component2.class));
+		Endpoints endpoints = new Endpoints(components);
+		assertThat(endpoints.components().size(), is(3));
+		assertTrue(endpoints.components().contains(Endpoint3.class));
+		assertTrue(endpoints.components().contains(Object3.class));
+		assertTrue(endpoints.components().contains(Component2.class));
+		assertThat(endpoints.endpoints().size(), is(3));
+		assertTrue(endpoints.contains(Endpoint1.class));
+		assertTrue(endpoints.contains(Endpoint2.class));
+		assertTrue(endpoints.contains(Endpoint3.class));
+		assertFalse(endpoints.contains(Object3.class));
+		assertThat(endpoints.route(Endpoint3.class), is("Endpoint3"));
+		assertNull(endpoints.route(Object3.class));
+		assertSame(Endpoint3.class, endpoints.endpoint("Endpoint3"));
+		assertNull(endpoints.endpoint("Object3"));
+		Route route = endpoints.route("/Endpoint3/test");
+		assertSame(Endpoint3.class, route.endpoint());
+		assertThat(route.method().getName(), is("test"));
+		assertSame(route, endpoints.route("/Endpoint3/test/1"));
+		assertNull(endpoints.route("/Endpoint3"));
+		assertNull(endpoints.route("/Endpoint3/notFound"));
+		assertNull(route.annotation(Cached.class));
+		
+		try {
+			endpoints.components().clear();
+			fail();
+		} catch (UnsupportedOperationException e) {}
+	}
+	
+	@Test
+	public void testOverloaded() {
+		Endpoints endpoints = new Endpoints(Collections.<Class<?>>singleton(Overloaded.class));
+		assertNull(endpoints.route("/Overloaded/get"));
+		assertThat(endpoints.route("/Overloaded/list").method().getName(), is("list"));
+	}
+	
+}
@@ -112,4 +112,23 @@ public class GigListenerTest {
 		tester.stop();
 	}
 
+	@Test
+	public void testBootReport() throws Exception {
+		tester.setContextPath("/gig");
+		tester.addEventListener(new GigListener());
+		tester.addServlet(DefaultServlet.class, "/");
+		tester.start();
+		BootReport report = (BootReport) tester.getContext().getServletContext().getAttribute(GigListener.BOOT_REPORT);
+		assertNotNull(report);
+		assertTrue(report.nanos("total") > 0);
+		assertTrue(report.nanos("configuration") >= 0);
+		assertTrue(report.nanos("module") >= 0);
+		assertTrue(report.nanos("install") >= 0);
+		assertTrue(report.nanos("total") >= report.nanos("bootstrap"));
+		assertTrue(report.slowInstalls().containsKey(Endpoint3.class.getName()));
+		assertTrue(report.toString().startsWith("{\"phases\":{\"configuration\":"));
+		assertNull(BootReport.current());
+		tester.stop();
+	}
+
 }
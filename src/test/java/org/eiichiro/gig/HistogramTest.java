@@ -0,0 +1,48 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testIndex() {
+		for (long value = 0; value < 100000; value++) {
+			int index = Histogram.index(value);
+			assertTrue(value <= Histogram.upper(index));
+			assertTrue(index == 0 || value > Histogram.upper(index - 1));
+		}
+		
+		assertThat(Histogram.upper(Histogram.index(Long.MAX_VALUE)), is(Long.MAX_VALUE));
+	}
+	
+	@Test
+	public void testQuantile() {
+		Histogram histogram = new Histogram();
+		assertThat(histogram.quantile(0.5), is(0L));
+		
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+		
+		assertThat(histogram.count(), is(1000L));
+		assertThat(histogram.max(), is(1000000L));
+		assertThat(histogram.mean(), is(500500.0));
+		assertTrue(Math.abs(histogram.quantile(0.5) - 500000) <= 500000 / 8);
+		assertTrue(Math.abs(histogram.quantile(0.99) - 990000) <= 990000 / 8);
+		assertThat(histogram.quantile(1.0), is(1000000L));
+	}
+	
+}
@@ -0,0 +1,71 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JSONCodecGeneratorTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testSource() {
+		JSONCodecGenerator generator = new JSONCodecGenerator();
+		assertThat(generator.source(Bean.class), is(
+				"public void encode(Object object, org.eiichiro.gig.JSONEncoder encoder, java.lang.Appendable appendable) throws java.io.IOException {\n"
+				+ "org.eiichiro.gig.JSONCodecGeneratorTest$Bean bean = (org.eiichiro.gig.JSONCodecGeneratorTest$Bean) object;\n"
+				+ "appendable.append(\"{\\\"active\\\":\");\n"
+				+ "appendable.append(String.valueOf(bean.isActive()));\n"
+				+ "appendable.append(\",\\\"count\\\":\");\n"
+				+ "org.eiichiro.gig.JSONEncoder.integer((long) bean.getCount(), appendable);\n"
+				+ "appendable.append(\",\\\"name\\\":\");\n"
+				+ "encoder.encode(bean.getName(), appendable);\n"
+				+ "appendable.append('}');\n}"));
+		assertThat(generator.source(Empty.class), is(
+				"public void encode(Object object, org.eiichiro.gig.JSONEncoder encoder, java.lang.Appendable appendable) throws java.io.IOException {\n"
+				+ "org.eiichiro.gig.JSONCodecGeneratorTest$Empty bean = (org.eiichiro.gig.JSONCodecGeneratorTest$Empty) object;\n"
+				+ "appendable.append('{');\n"
+				+ "appendable.append('}');\n}"));
+		assertNull(generator.generate(String.class));
+	}
+	
+	@Test
+	public void testGenerate() throws Exception {
+		JSONCodec codec = new JSONCodecGenerator().generate(Bean.class);
+		assertNotNull(codec);
+		StringBuilder generated = new StringBuilder();
+		codec.encode(new Bean(), JSONEncoder.shared(), generated);
+		StringBuilder reflective = new StringBuilder();
+		JSONCodec.reflective(Bean.class).encode(new Bean(), JSONEncoder.shared(), reflective);
+		assertThat(generated.toString(), is(reflective.toString()));
+		assertThat(generated.toString(), is("{\"active\":true,\"count\":3,\"name\":\"bean\"}"));
+	}
+	
+	public static class Empty {}
+	
+	public static class Bean {
+		
+		public boolean isActive() {
+			return true;
+		}
+		
+		public int getCount() {
+			return 3;
+		}
+		
+		public String getName() {
+			return "bean";
+		}
+		
+	}
+	
+}
@@ -0,0 +1,139 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JSONEncoderTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testEncode() throws Exception {
+		JSONEncoder encoder = new JSONEncoder();
+		StringBuilder builder = new StringBuilder();
+		encoder.encode(null, builder);
+		assertThat(builder.toString(), is("null"));
+		
+		builder = new StringBuilder();
+		encoder.encode("a\"b\\c\nd\u0001\u2028", builder);
+		assertThat(builder.toString(), is("\"a\\\"b\\\\c\\nd\\u0001\\u2028\""));
+		
+		builder = new StringBuilder();
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("i", 1);
+		map.put("b", true);
+		map.put("d", new Date(1000));
+		map.put("e", Thread.State.NEW);
+		map.put("a", new int[] {1, 2});
+		map.put("l", Arrays.asList("x", null));
+		encoder.encode(map, builder);
+		assertThat(builder.toString(), is("{\"i\":1,\"b\":true,\"d\":1000,\"e\":\"NEW\",\"a\":[1,2],\"l\":[\"x\",null]}"));
+		
+		builder = new StringBuilder();
+		encoder.encode(new Object[] {0, -12, (short) 305, Long.MIN_VALUE, Long.MAX_VALUE, 1.5}, builder);
+		assertThat(builder.toString(), is("[0,-12,305,-9223372036854775808,9223372036854775807,1.5]"));
+		
+		builder = new StringBuilder();
+		encoder.encode(Arrays.asList(new Bean("x", 1), new Bean("y", 2)), builder);
+		assertThat(builder.toString(), is("[{\"name\":\"x\",\"value\":1},{\"name\":\"y\",\"value\":2}]"));
+	}
+	
+	@Test
+	public void testPrepare() throws Exception {
+		JSONEncoder encoder = new JSONEncoder();
+		encoder.prepare(Endpoint.class.getMethod("beans").getGenericReturnType());
+		JSONCodec codec = encoder.codec(Bean.class);
+		assertNotNull(codec);
+		assertSame(codec, encoder.codec(Bean.class));
+		assertNotNull(encoder.codec(Node.class));
+		
+		StringBuilder builder = new StringBuilder();
+		Node node = new Node();
+		node.next = new Node();
+		encoder.encode(node, builder);
+		assertThat(builder.toString(), is("{\"next\":{\"next\":null}}"));
+	}
+	
+	@Test
+	public void testNonFinite() throws Exception {
+		JSONEncoder encoder = new JSONEncoder();
+		StringBuilder builder = new StringBuilder();
+		encoder.encode(Arrays.asList(1.5, Double.NaN, Double.POSITIVE_INFINITY, 
+				Float.NEGATIVE_INFINITY, 0.1f), builder);
+		assertThat(builder.toString(), is("[1.5,null,null,null,0.1]"));
+		
+		builder = new StringBuilder();
+		encoder.encode(Arrays.asList(new Decimal(0.5), new Decimal(Double.NaN), 
+				new Decimal(Double.NEGATIVE_INFINITY)), builder);
+		assertThat(builder.toString(), is("[{\"value\":0.5},{\"value\":null},{\"value\":null}]"));
+	}
+	
+	public static class Endpoint {
+		
+		public Iterable<Node[]> beans() {
+			return null;
+		}
+		
+	}
+	
+	public static class Node {
+		
+		private Node next;
+		
+		public Node getNext() {
+			return next;
+		}
+		
+	}
+	
+	public static class Bean {
+		
+		private final String name;
+		
+		private final int value;
+		
+		public Bean(String name, int value) {
+			this.name = name;
+			this.value = value;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public int getValue() {
+			return value;
+		}
+		
+	}
+	
+	public static class Decimal {
+		
+		private final double value;
+		
+		public Decimal(double value) {
+			this.value = value;
+		}
+		
+		public double getValue() {
+			return value;
+		}
+		
+	}
+	
+}
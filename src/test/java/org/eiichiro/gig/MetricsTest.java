@@ -0,0 +1,65 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testMetrics() throws Exception {
+		Metrics metrics = new Metrics();
+		Route route = new Route("Endpoint3/test", Endpoint3.class, Endpoint3.class.getMethod("test"));
+		EndpointMetrics endpoint = metrics.endpoint(route);
+		assertSame(endpoint, metrics.endpoint(route));
+		endpoint.record(EndpointMetrics.outcome(200), 2000000);
+		endpoint.record(EndpointMetrics.outcome(404), 1000000);
+		endpoint.record(EndpointMetrics.EXCEPTION, 3000000);
+		metrics.instantiation(Endpoint3.class).record(1000);
+		metrics.gauge("gig_test", new Metrics.Gauge() {
+			
+			@Override
+			public long value() {
+				return 7;
+			}
+			
+		});
+		assertThat(endpoint.getRequests(), is(3L));
+		assertThat(endpoint.getClientErrors(), is(1L));
+		assertThat(endpoint.getServerErrors(), is(1L));
+		assertThat(endpoint.getMaxMillis(), is(3.0));
+		
+		StringWriter writer = new StringWriter();
+		metrics.writeTo(writer);
+		String text = writer.toString();
+		assertTrue(text.contains("gig_requests_total{route=\"Endpoint3/test\",outcome=\"2xx\"} 1\n"));
+		assertTrue(text.contains("gig_requests_total{route=\"Endpoint3/test\",outcome=\"exception\"} 1\n"));
+		assertTrue(text.contains("gig_request_seconds_count{route=\"Endpoint3/test\"} 3\n"));
+		assertTrue(text.contains("gig_instantiation_seconds_count{endpoint=\"org.eiichiro.gig.Endpoint3\"} 1\n"));
+		assertTrue(text.contains("gig_test 7\n"));
+		
+		metrics.register("/gig", Collections.singleton(route));
+		ObjectName name = new ObjectName("org.eiichiro.gig:type=Endpoint,context=\"/gig\",name=\"Endpoint3/test\"");
+		assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Requests"), is((Object) 3L));
+		metrics.unregister();
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+	
+}
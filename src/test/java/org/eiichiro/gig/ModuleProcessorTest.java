@@ -0,0 +1,129 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ModuleProcessorTest {
+	
+	private File directory;
+	
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("gig", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		delete(directory);
+	}
+	
+	@Test
+	public void testProcess() throws Exception {
+		File out = new File(directory, "classes");
+		File generated = new File(directory, "generated");
+		out.mkdirs();
+		generated.mkdirs();
+		File service = source("processor/Service1.java", 
+				"package processor; @org.eiichiro.gig.Service public class Service1 {}");
+		File object = source("processor/Object1.java", 
+				"package processor; public class Object1 { @org.eiichiro.gig.Repository public static class Repository1 {} }");
+		File endpoint = source("processor/Endpoint1.java", 
+				"package processor; @org.eiichiro.bootleg.annotation.Endpoint public interface Endpoint1 {}");
+		assertTrue(compile(out, generated, service, object, endpoint));
+		assertTrue(new File(generated, "org/eiichiro/gig/Module_.java").exists());
+		Set<String> components = components(out);
+		assertEquals(new HashSet<String>(Arrays.asList("processor.Service1", 
+				"processor.Object1$Repository1", "processor.Endpoint1")), components);
+		
+		// Incremental compilation.
+		File repository = source("processor/Repository2.java", 
+				"package processor; @org.eiichiro.gig.Repository public class Repository2 {}");
+		assertTrue(compile(out, generated, repository));
+		components = components(out);
+		assertEquals(new HashSet<String>(Arrays.asList("processor.Service1", 
+				"processor.Object1$Repository1", "processor.Endpoint1", 
+				"processor.Repository2")), components);
+	}
+	
+	private File source(String name, String content) throws Exception {
+		File file = new File(directory, "src/" + name);
+		file.getParentFile().mkdirs();
+		Writer writer = new FileWriter(file);
+		
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		
+		return file;
+	}
+	
+	private boolean compile(File out, File generated, File... sources) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		List<String> args = new ArrayList<String>();
+		args.addAll(Arrays.asList("-processor", ModuleProcessor.class.getName(), 
+				"-d", out.getPath(), "-s", generated.getPath(), "-classpath", 
+				System.getProperty("java.class.path") + File.pathSeparator + out.getPath()));
+		
+		for (File source : sources) {
+			args.add(source.getPath());
+		}
+		
+		return compiler.run(null, null, null, args.toArray(new String[args.size()])) == 0;
+	}
+	
+	private Set<String> components(File out) throws Exception {
+		Set<String> components = new HashSet<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(new File(out, ModuleProcessor.COMPONENTS)), "UTF-8"));
+		
+		try {
+			String line;
+			
+			while ((line = reader.readLine()) != null) {
+				if (!line.startsWith("#")) {
+					components.add(line);
+				}
+			}
+			
+		} finally {
+			reader.close();
+		}
+		
+		return components;
+	}
+	
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		
+		if (files != null) {
+			for (File f : files) {
+				delete(f);
+			}
+		}
+		
+		file.delete();
+	}
+	
+}
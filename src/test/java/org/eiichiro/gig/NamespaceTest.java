@@ -0,0 +1,294 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.eiichiro.gig.Namespace.Store;
+import org.eiichiro.jaguar.Jaguar;
+import org.eiichiro.jaguar.scope.Singleton;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+
+public class NamespaceTest {
+	
+	@Before
+	public void setUp() throws Exception {
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testStore() throws Exception {
+		test(new Store());
+	}
+	
+	@Test
+	public void testCompactStore() throws Exception {
+		Store store = new Store();
+		store.compact(true);
+		test(store);
+		assertThat(store.offHeap() > 0, is(true));
+	}
+	
+	@Test
+	public void testCompactStoreExpiration() throws Exception {
+		Store store = new Store();
+		store.compact(false);
+		long expires = System.currentTimeMillis() + 1000;
+		store.set("key1", "value1", expires);
+		store.set("key1", "value1'", 0);
+		store.set("key2", "value2", expires);
+		Thread.sleep(2100);
+		assertThat((String) store.get("key1"), is("value1'"));
+		assertThat(store.size(), is(1));
+	}
+	
+	@Test
+	public void testHeap() throws Exception {
+		Store store = new Store();
+		store.set("key1", "value1", 0);
+		long heap = store.heap();
+		assertThat(heap, is(104L + 2 * 4 + 40 + 2 * 6));
+		store.set("key1", "value1", System.currentTimeMillis() + 60000);
+		assertThat(store.heap() > heap + 2048, is(true));
+	}
+	
+	@Test
+	public void testDelta() throws Exception {
+		Store store = new Store();
+		store.set("key1", "value1", 0);
+		store.set("key2", 2, 0);
+		store.set("key3", "value3", System.currentTimeMillis() + 60000);
+		assertThat(store.dirty(), is(true));
+		Store replica = copy(store);
+		assertThat(store.dirty(), is(false));
+		
+		store.set("key1", "value1'", 0);
+		store.remove("key2");
+		store.set("key4", 4L, 0);
+		store.set("key5", true, 0);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		store.writeDelta(out);
+		out.close();
+		assertThat(store.dirty(), is(false));
+		replica.readDelta(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertThat((String) replica.get("key1"), is("value1'"));
+		assertNull(replica.get("key2"));
+		assertThat((String) replica.get("key3"), is("value3"));
+		assertThat((Long) replica.get("key4"), is(4L));
+		assertThat((Boolean) replica.get("key5"), is(true));
+		assertThat(replica.size(), is(4));
+		assertThat(replica.dirty(), is(false));
+	}
+	
+	@Test
+	public void testDistributedStore() throws Exception {
+		LocalNamespaceBackend backend = new LocalNamespaceBackend();
+		ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+		Store store1 = new Store();
+		store1.distribute(backend, "scope", flusher);
+		Store store2 = new Store();
+		store2.distribute(backend, "scope", flusher);
+		
+		store1.set("key1", "value1", 0);
+		assertThat((String) store1.get("key1"), is("value1"));
+		assertNull(store2.get("key1"));
+		Thread.sleep(500);
+		assertThat((String) store2.get("key1"), is("value1"));
+		store1.set("key1", "value1'", 0);
+		Thread.sleep(500);
+		assertThat((String) store2.get("key1"), is("value1'"));
+		
+		Function<Integer, Integer> increment = new Function<Integer, Integer>() {
+			
+			@Override
+			public Integer apply(Integer input) {
+				return (input == null) ? 1 : input + 1;
+			}
+			
+		};
+		assertThat(store1.compute("key2", Integer.class, increment), is(1));
+		assertThat(store2.compute("key2", Integer.class, increment), is(2));
+		assertThat(store1.compute("key2", Integer.class, increment), is(3));
+		assertThat((Integer) store2.putIfAbsent("key2", 0, 0), is(3));
+		
+		long writes = backend.writes();
+		List<String> keys = new ArrayList<String>();
+		
+		for (int i = 0; i < 200; i++) {
+			store1.set("key" + (i + 3), i, 0);
+			keys.add("key" + (i + 3));
+		}
+		
+		store1.flush();
+		assertThat(backend.get("scope", keys).keySet(), is((Set<String>) new HashSet<String>(keys)));
+		assertThat(backend.writes() - writes < keys.size(), is(true));
+		long reads = backend.reads();
+		store2.prefetch(keys);
+		
+		for (int i = 0; i < 200; i++) {
+			assertThat((Integer) store2.get("key" + (i + 3)), is(i));
+		}
+		
+		assertThat(backend.reads() - reads, is(1L));
+		store1.remove("key3");
+		store1.putIfAbsent("key4", 0, 0);
+		assertNull(store2.get("key3"));
+		store1.set("key203", "value203", System.currentTimeMillis() - 1);
+		store1.flush();
+		assertNull(store2.get("key203"));
+		assertNull(store1.get("key203"));
+		
+		flusher.shutdown();
+		writes = backend.writes();
+		store1.set("key1", "value1''", 0);
+		assertThat(backend.writes() - writes, is(1L));
+	}
+	
+	@Test
+	public void testDistributedStoreLoad() throws Exception {
+		final Store[] store = new Store[1];
+		LocalNamespaceBackend backend = new LocalNamespaceBackend() {
+			
+			@Override
+			public Map<String, byte[]> get(String scope, Collection<String> keys) {
+				Map<String, byte[]> values = super.get(scope, keys);
+				
+				// The key is written while the stale value is loaded.
+				if (keys.contains("key1")) {
+					store[0].set("key1", "value1'", 0);
+					store[0].flush();
+				}
+				
+				return values;
+			}
+			
+		};
+		ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+		
+		try {
+			Store other = new Store();
+			other.distribute(backend, "scope", flusher);
+			other.set("key1", "value1", 0);
+			other.flush();
+			store[0] = new Store();
+			store[0].distribute(backend, "scope", flusher);
+			assertThat((String) store[0].get("key1"), is("value1"));
+			assertThat((String) store[0].get("key1"), is("value1'"));
+		} finally {
+			flusher.shutdown();
+		}
+	}
+	
+	@Test
+	public void testConcurrentFirstSet() throws Exception {
+		Jaguar.bootstrap();
+		
+		try {
+			Jaguar.install(Namespace.class);
+			final Namespace namespace = Jaguar.component(Namespace.class);
+			int threads = 16;
+			final CountDownLatch start = new CountDownLatch(1);
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			
+			for (int i = 0; i < threads; i++) {
+				final int n = i;
+				futures.add(executor.submit(new Callable<Void>() {
+					
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						namespace.set(Singleton.class, "key" + n, "value" + n);
+						return null;
+					}
+					
+				}));
+			}
+			
+			start.countDown();
+			
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			
+			executor.shutdown();
+			assertThat(namespace.usage(Singleton.class).stores(), is(1));
+			assertThat(namespace.usage(Singleton.class).entries(), is((long) threads));
+			
+			for (int i = 0; i < threads; i++) {
+				assertThat(namespace.get(Singleton.class, "key" + i), is("value" + i));
+			}
+		} finally {
+			Jaguar.shutdown();
+		}
+	}
+	
+	private static Store copy(Store store) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(store);
+		out.close();
+		return (Store) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	}
+	
+	private void test(Store store) throws Exception {
+		store.set("key1", "value1", 0);
+		store.set("key2", 2, System.currentTimeMillis() - 1);
+		assertThat((String) store.get("key1"), is("value1"));
+		assertNull(store.get("key2"));
+		assertThat(store.size(), is(1));
+		assertNull(store.putIfAbsent("key2", 2, 0));
+		assertThat((Integer) store.putIfAbsent("key2", 3, 0), is(2));
+		Function<Integer, Integer> increment = new Function<Integer, Integer>() {
+			
+			@Override
+			public Integer apply(Integer input) {
+				return (input == null) ? 1 : input + 1;
+			}
+			
+		};
+		assertThat(store.compute("key2", Integer.class, increment), is(3));
+		assertThat(store.compute("key3", Integer.class, increment), is(1));
+		assertNull(store.compute("key3", Integer.class, new Function<Integer, Integer>() {
+			
+			@Override
+			public Integer apply(Integer input) {
+				return null;
+			}
+			
+		}));
+		assertNull(store.get("key3"));
+		store.remove("key1");
+		assertNull(store.get("key1"));
+		
+		store.set("key4", "value4", System.currentTimeMillis() + 60000);
+		Store deserialized = copy(store);
+		assertThat((Integer) deserialized.get("key2"), is(3));
+		assertThat((String) deserialized.get("key4"), is("value4"));
+	}
+	
+}
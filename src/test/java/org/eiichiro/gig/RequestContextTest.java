@@ -0,0 +1,75 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eiichiro.jaguar.WebFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestContextTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		WebFilter.request(null);
+	}
+	
+	@Test
+	public void testWrap() throws Exception {
+		HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+				new InvocationHandler() {
+					
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						return null;
+					}
+					
+				});
+		WebFilter.request(request);
+		RequestContext context = RequestContext.capture();
+		assertSame(request, context.request());
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		try {
+			Callable<HttpServletRequest> callable = new Callable<HttpServletRequest>() {
+				
+				@Override
+				public HttpServletRequest call() throws Exception {
+					return WebFilter.request();
+				}
+				
+			};
+			assertNull(executor.submit(callable).get());
+			assertSame(request, executor.submit(context.wrap(callable)).get());
+			assertNull(executor.submit(callable).get());
+		} finally {
+			executor.shutdown();
+		}
+		
+		WebFilter.request(null);
+		assertSame(request, context.call(new Callable<HttpServletRequest>() {
+			
+			@Override
+			public HttpServletRequest call() throws Exception {
+				return WebFilter.request();
+			}
+			
+		}));
+		assertNull(WebFilter.request());
+	}
+	
+}
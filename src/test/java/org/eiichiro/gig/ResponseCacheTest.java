@@ -0,0 +1,153 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testCache() throws Exception {
+		Map<String, Object> headers = new HashMap<String, Object>();
+		headers.put("Accept", "text/plain");
+		Map<String, String[]> parameters = new HashMap<String, String[]>();
+		parameters.put("b", new String[] {"2"});
+		parameters.put("a", new String[] {"1"});
+		String key = ResponseCache.key(request("/gig/Endpoint3/test", parameters, headers), "Accept");
+		assertThat(key, is("15:/Endpoint3/test?1:a1:11:b1:2\n6:Accept10:text/plain"));
+		headers.clear();
+		assertThat(ResponseCache.key(request("/gig/Endpoint3/test", parameters, headers), "Accept"), 
+				is("15:/Endpoint3/test?1:a1:11:b1:2\n6:Accept-"));
+		headers.put("Accept", "null");
+		assertThat(ResponseCache.key(request("/gig/Endpoint3/test", parameters, headers), "Accept"), 
+				is("15:/Endpoint3/test?1:a1:11:b1:2\n6:Accept4:null"));
+		headers.put("Accept", "text/plain");
+		Map<String, String[]> ambiguous = new HashMap<String, String[]>();
+		ambiguous.put("a", new String[] {"1&b=2"});
+		assertThat(ResponseCache.key(request("/gig/Endpoint3/test", ambiguous, headers), "Accept").equals(key), is(false));
+		assertThat(ResponseCache.key(request("/gig/Endpoint3/test/1", parameters, headers), "Accept").equals(
+				ResponseCache.key(request("/gig/Endpoint3/test/2", parameters, headers), "Accept")), is(false));
+		
+		ResponseCache cache = new ResponseCache(2, 1024);
+		assertNull(cache.get(key));
+		BufferedResponse buffered = new BufferedResponse(response(new HashMap<String, Object>(), new ByteArrayOutputStream()));
+		buffered.setContentType("text/plain; charset=UTF-8");
+		buffered.getWriter().print("Hello");
+		ResponseCache.Entry entry = cache.put(key, buffered, 60);
+		assertSame(entry, cache.get(key));
+		assertThat(cache.hits(), is(1L));
+		assertThat(cache.misses(), is(1L));
+		
+		Map<String, Object> written = new HashMap<String, Object>();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		entry.writeTo(request("/gig/Endpoint3/test", parameters, headers), response(written, body));
+		assertThat(written.get("status"), is((Object) 200));
+		assertThat(written.get("ETag"), is((Object) entry.etag()));
+		assertThat(new String(body.toByteArray(), "UTF-8"), is("Hello"));
+		
+		headers.put("If-None-Match", entry.etag());
+		written.clear();
+		body.reset();
+		entry.writeTo(request("/gig/Endpoint3/test", parameters, headers), response(written, body));
+		assertThat(written.get("status"), is((Object) 304));
+		assertThat(body.size(), is(0));
+		
+		buffered = new BufferedResponse(response(new HashMap<String, Object>(), new ByteArrayOutputStream()));
+		buffered.sendError(404);
+		cache.put("404", buffered, 60);
+		assertNull(cache.get("404"));
+		
+		buffered = buffered();
+		buffered.addCookie(new Cookie("id", "1"));
+		assertNull(cache.put("cookie", buffered, 60).etag());
+		assertNull(cache.get("cookie"));
+		
+		cache.put("1", buffered(), 60);
+		cache.put("2", buffered(), 60);
+		assertThat(cache.size(), is(2));
+		assertNull(cache.get(key));
+		cache.put("3", buffered(), 0);
+		assertNull(cache.get("3"));
+	}
+	
+	private BufferedResponse buffered() throws IOException {
+		BufferedResponse buffered = new BufferedResponse(response(new HashMap<String, Object>(), new ByteArrayOutputStream()));
+		buffered.getOutputStream().write(new byte[10]);
+		return buffered;
+	}
+	
+	private HttpServletRequest request(final String uri, final Map<String, String[]> parameters, 
+			final Map<String, Object> headers) {
+		return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getParameterMap")) {
+					return parameters;
+				} else if (method.getName().equals("getHeader")) {
+					return headers.get(args[0]);
+				} else if (method.getName().equals("getRequestURI")) {
+					return uri;
+				} else if (method.getName().equals("getContextPath")) {
+					return "/gig";
+				}
+				
+				return null;
+			}
+			
+		});
+	}
+	
+	private HttpServletResponse response(final Map<String, Object> written, final ByteArrayOutputStream body) {
+		return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {HttpServletResponse.class}, new InvocationHandler() {
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("setStatus")) {
+					written.put("status", args[0]);
+				} else if (method.getName().endsWith("Header")) {
+					written.put((String) args[0], args[1]);
+				} else if (method.getName().equals("getOutputStream")) {
+					return new ServletOutputStream() {
+						
+						@Override
+						public void write(int b) throws IOException {
+							body.write(b);
+						}
+						
+					};
+				}
+				
+				return null;
+			}
+			
+		});
+	}
+	
+}
@@ -0,0 +1,51 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScanScopeTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testAccepts() throws Exception {
+		ScanScope scope = new ScanScope();
+		assertFalse(scope.accepts(new URL("file:/lib/guava-11.0.2.jar")));
+		assertFalse(scope.accepts(new URL("file:/lib/servlet-api-2.5.jar")));
+		assertFalse(scope.accepts(new URL("file:/lib/jetty-server-8.1.8.jar")));
+		assertTrue(scope.accepts(new URL("file:/lib/jaguar-2.0-rc4.jar")));
+		assertTrue(scope.accepts(new URL("file:/lib/guava/")));
+		assertTrue(scope.accepts(""));
+		assertTrue(scope.accepts("com.example"));
+		
+		scope = new ScanScope(Collections.<URL>emptySet(), Arrays.asList("com.example"),
+				Arrays.asList("com.example.internal"), Arrays.asList("lib?.jar"));
+		assertFalse(scope.accepts(new URL("file:/lib/lib1.jar")));
+		assertTrue(scope.accepts(new URL("file:/lib/lib10.jar")));
+		assertFalse(scope.accepts(""));
+		assertFalse(scope.accepts("com"));
+		assertFalse(scope.accepts("com.examples"));
+		assertTrue(scope.accepts("com.example"));
+		assertTrue(scope.accepts("com.example.web"));
+		assertFalse(scope.accepts("com.example.internal"));
+		assertFalse(scope.accepts("com.example.internal.web"));
+		assertTrue(scope.traverses("com"));
+		assertTrue(scope.traverses("com.example.web"));
+		assertFalse(scope.traverses("org"));
+		assertFalse(scope.traverses("com.example.internal"));
+	}
+	
+}
@@ -0,0 +1,203 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleFlightTest {
+	
+	@Before
+	public void setUp() throws Exception {
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testExecute() throws Exception {
+		final SingleFlight flights = new SingleFlight();
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<Integer> call = new Callable<Integer>() {
+			
+			@Override
+			public Integer call() throws Exception {
+				started.countDown();
+				release.await();
+				return calls.incrementAndGet();
+			}
+			
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		
+		try {
+			futures.add(executor.submit(new Callable<Integer>() {
+				
+				@Override
+				public Integer call() throws Exception {
+					return flights.execute("key", call);
+				}
+				
+			}));
+			started.await();
+			
+			for (int i = 0; i < 7; i++) {
+				futures.add(executor.submit(new Callable<Integer>() {
+					
+					@Override
+					public Integer call() throws Exception {
+						return flights.execute("key", call);
+					}
+					
+				}));
+			}
+			
+			while (flights.shares() < 7) {
+				Thread.sleep(1);
+			}
+			
+			release.countDown();
+			
+			for (Future<Integer> future : futures) {
+				assertThat(future.get(5, TimeUnit.SECONDS), is(1));
+			}
+			
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		assertThat(calls.get(), is(1));
+		assertThat(flights.executions(), is(1L));
+		assertThat(flights.size(), is(0));
+		assertThat(flights.execute("key", call), is(2));
+	}
+	
+	@Test
+	public void testFailure() throws Exception {
+		final SingleFlight flights = new SingleFlight();
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<Object> call = new Callable<Object>() {
+			
+			@Override
+			public Object call() throws Exception {
+				release.await();
+				throw new IllegalStateException("failure");
+			}
+			
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		
+		try {
+			Future<Object> leader = executor.submit(new Callable<Object>() {
+				
+				@Override
+				public Object call() throws Exception {
+					return flights.execute("key", call);
+				}
+				
+			});
+			
+			while (flights.size() == 0) {
+				Thread.sleep(1);
+			}
+			
+			Future<Object> follower = executor.submit(new Callable<Object>() {
+				
+				@Override
+				public Object call() throws Exception {
+					return flights.execute("key", call);
+				}
+				
+			});
+			
+			while (flights.shares() == 0) {
+				Thread.sleep(1);
+			}
+			
+			release.countDown();
+			
+			try {
+				leader.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+			}
+			
+			try {
+				follower.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertThat(e.getCause(), instanceOf(ExecutionException.class));
+				assertThat(e.getCause().getCause(), instanceOf(IllegalStateException.class));
+			}
+			
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testTimeout() throws Exception {
+		final SingleFlight flights = new SingleFlight();
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		
+		try {
+			Future<Integer> leader = executor.submit(new Callable<Integer>() {
+				
+				@Override
+				public Integer call() throws Exception {
+					return flights.execute("key", new Callable<Integer>() {
+						
+						@Override
+						public Integer call() throws Exception {
+							release.await();
+							return calls.incrementAndGet();
+						}
+						
+					});
+				}
+				
+			});
+			
+			while (flights.size() == 0) {
+				Thread.sleep(1);
+			}
+			
+			// The leader hangs, so the follower runs the call by itself.
+			int result = flights.execute("key", new Callable<Integer>() {
+				
+				@Override
+				public Integer call() throws Exception {
+					return calls.incrementAndGet();
+				}
+				
+			}, 50, TimeUnit.MILLISECONDS);
+			assertThat(result, is(1));
+			assertThat(flights.timeouts(), is(1L));
+			release.countDown();
+			assertThat(leader.get(5, TimeUnit.SECONDS), is(2));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+}
@@ -0,0 +1,60 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingResponseTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testWriteTo() throws Exception {
+		StringWriter writer = new StringWriter();
+		new StreamingResponse<Object>(Arrays.asList("a", 1, null)).writeTo(writer);
+		assertThat(writer.toString(), is("[\"a\",1,null]"));
+		
+		writer = new StringWriter();
+		new StreamingResponse<Object>(Collections.emptyList()).writeTo(writer);
+		assertThat(writer.toString(), is("[]"));
+		
+		writer = new StringWriter();
+		new StreamingResponse<Integer>(new Iterator<Integer>() {
+			
+			private int i = 0;
+			
+			@Override
+			public boolean hasNext() {
+				return i < 100000;
+			}
+			
+			@Override
+			public Integer next() {
+				return i++;
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+			
+		}).writeTo(writer);
+		assertTrue(writer.toString().startsWith("[0,1,2,"));
+		assertTrue(writer.toString().endsWith(",99999]"));
+	}
+	
+}
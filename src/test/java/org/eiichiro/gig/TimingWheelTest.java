@@ -0,0 +1,78 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimingWheelTest {
+	
+	private static final class Task implements TimingWheel.Timeout {
+		
+		private final long expires;
+		
+		private boolean cancelled;
+		
+		private Task(long expires) {
+			this.expires = expires;
+		}
+		
+		@Override
+		public long expires() {
+			return expires;
+		}
+		
+		@Override
+		public boolean cancelled() {
+			return cancelled;
+		}
+		
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testAdvance() {
+		final List<Task> expired = new ArrayList<Task>();
+		TimingWheel<Task> wheel = new TimingWheel<Task>(1000, 4, 0) {
+			
+			@Override
+			protected void expire(Task task) {
+				expired.add(task);
+			}
+			
+		};
+		Task task1 = new Task(1500);
+		Task task2 = new Task(2500);
+		Task task3 = new Task(2600);
+		Task task4 = new Task(9500);
+		wheel.schedule(task1);
+		wheel.schedule(task2);
+		wheel.schedule(task3);
+		wheel.schedule(task4);
+		task3.cancelled = true;
+		wheel.advance(1999);
+		assertThat(expired.isEmpty(), is(true));
+		wheel.advance(3000);
+		assertThat(expired.size(), is(2));
+		assertThat(expired.get(0), is(task1));
+		assertThat(expired.get(1), is(task2));
+		wheel.advance(7000);
+		assertThat(expired.size(), is(2));
+		wheel.advance(10000);
+		assertThat(expired.size(), is(3));
+		assertThat(expired.get(2), is(task4));
+	}
+	
+}
@@ -0,0 +1,281 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransactionManagerTest {
+	
+	private static class Resource {
+		
+		private final List<String> log = new ArrayList<String>();
+		
+	}
+	
+	private static class Manager extends TransactionManager<Resource> {
+		
+		private final AtomicInteger opened = new AtomicInteger();
+		
+		private Manager(int size, boolean group) {
+			super(size, 100, TimeUnit.MILLISECONDS, group);
+		}
+		
+		@Override
+		protected Resource open() throws Exception {
+			opened.incrementAndGet();
+			return new Resource();
+		}
+		
+		@Override
+		protected void begin(Resource resource) throws Exception {
+			resource.log.add("begin");
+		}
+		
+		@Override
+		protected void commit(Resource resource) throws Exception {
+			resource.log.add("commit");
+		}
+		
+		@Override
+		protected void rollback(Resource resource) throws Exception {
+			resource.log.add("rollback");
+		}
+		
+		@Override
+		protected void close(Resource resource) throws Exception {}
+		
+	}
+	
+	private static class GroupManager extends Manager {
+		
+		private volatile Error error;
+		
+		private GroupManager(int size) {
+			super(size, true);
+		}
+		
+		@Override
+		protected void commit(List<Resource> resources) throws Exception {
+			Thread.sleep(5);
+			
+			if (error != null) {
+				throw error;
+			}
+			
+			for (Resource resource : resources) {
+				commit(resource);
+			}
+		}
+		
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testExecute() throws Exception {
+		final Manager manager = new Manager(1, false);
+		String result = manager.execute(new Callable<String>() {
+			
+			@Override
+			public String call() throws Exception {
+				final Resource resource = manager.resource();
+				return manager.execute(new Callable<String>() {
+					
+					@Override
+					public String call() throws Exception {
+						assertThat(manager.resource(), is(resource));
+						return "result";
+					}
+					
+				});
+			}
+			
+		});
+		assertThat(result, is("result"));
+		
+		try {
+			manager.execute(new Callable<String>() {
+				
+				@Override
+				public String call() throws Exception {
+					throw new IllegalArgumentException();
+				}
+				
+			});
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		try {
+			manager.execute(new Callable<String>() {
+				
+				@Override
+				public String call() throws Exception {
+					try {
+						manager.execute(new Callable<String>() {
+							
+							@Override
+							public String call() throws Exception {
+								throw new IllegalArgumentException();
+							}
+							
+						});
+					} catch (IllegalArgumentException e) {}
+					
+					return "result";
+				}
+				
+			});
+			fail();
+		} catch (IllegalStateException e) {}
+		
+		Resource resource = manager.execute(new Callable<Resource>() {
+			
+			@Override
+			public Resource call() throws Exception {
+				return manager.resource();
+			}
+			
+		});
+		assertThat(resource.log.toString(), 
+				is("[begin, commit, begin, rollback, begin, rollback, begin, commit]"));
+		assertThat(manager.opened.get(), is(1));
+		assertThat(manager.commits(), is(2L));
+		assertThat(manager.rollbacks(), is(2L));
+		
+		try {
+			manager.resource();
+			fail();
+		} catch (IllegalStateException e) {}
+	}
+	
+	@Test
+	public void testPool() throws Exception {
+		final Manager manager = new Manager(1, false);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		try {
+			Future<Object> future = executor.submit(new Callable<Object>() {
+				
+				@Override
+				public Object call() throws Exception {
+					return manager.execute(new Callable<Object>() {
+						
+						@Override
+						public Object call() throws Exception {
+							started.countDown();
+							release.await();
+							return null;
+						}
+						
+					});
+				}
+				
+			});
+			started.await();
+			
+			try {
+				manager.execute(new Callable<Object>() {
+					
+					@Override
+					public Object call() throws Exception {
+						return null;
+					}
+					
+				});
+				fail();
+			} catch (TimeoutException e) {}
+			
+			release.countDown();
+			future.get();
+			assertThat(manager.opened.get(), is(1));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testGroupCommit() throws Exception {
+		final GroupManager manager = new GroupManager(16);
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			
+			for (int i = 0; i < 200; i++) {
+				futures.add(executor.submit(new Callable<Object>() {
+					
+					@Override
+					public Object call() throws Exception {
+						return manager.execute(new Callable<Object>() {
+							
+							@Override
+							public Object call() throws Exception {
+								return null;
+							}
+							
+						});
+					}
+					
+				}));
+			}
+			
+			for (Future<Object> future : futures) {
+				future.get();
+			}
+			
+			assertThat(manager.commits(), is(200L));
+			assertThat(manager.groups() < 200, is(true));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testGroupCommitError() throws Exception {
+		try {
+			new Manager(1, true);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		
+		final GroupManager manager = new GroupManager(1);
+		manager.error = new AssertionError();
+		
+		try {
+			manager.execute(new Callable<Object>() {
+				
+				@Override
+				public Object call() throws Exception {
+					return null;
+				}
+				
+			});
+			fail();
+		} catch (AssertionError e) {}
+		
+		assertThat(manager.commits(), is(0L));
+		assertThat(manager.rollbacks(), is(1L));
+	}
+	
+}
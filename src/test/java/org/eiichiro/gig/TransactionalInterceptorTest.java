@@ -0,0 +1,88 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eiichiro.jaguar.Jaguar;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransactionalInterceptorTest {
+	
+	public static class Manager extends TransactionManager<Object> {
+		
+		private static final ThreadLocal<Boolean> active = new ThreadLocal<Boolean>();
+		
+		private static final AtomicInteger commits = new AtomicInteger();
+		
+		public Manager() {
+			super(1, 100, TimeUnit.MILLISECONDS, false);
+		}
+		
+		@Override
+		protected Object open() throws Exception {
+			return new Object();
+		}
+		
+		@Override
+		protected void begin(Object resource) throws Exception {
+			active.set(true);
+		}
+		
+		@Override
+		protected void commit(Object resource) throws Exception {
+			active.remove();
+			commits.incrementAndGet();
+		}
+		
+		@Override
+		protected void rollback(Object resource) throws Exception {
+			active.remove();
+		}
+		
+		@Override
+		protected void close(Object resource) throws Exception {}
+		
+	}
+	
+	public static class Repository1 {
+		
+		@Transactional
+		public boolean save() {
+			return Manager.active.get() != null;
+		}
+		
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testIntercept() {
+		Jaguar.bootstrap();
+		
+		try {
+			Jaguar.install(Manager.class);
+			Jaguar.install(Repository1.class);
+			GigListener.install(new Endpoints(Collections.<Class<?>>emptySet()), new BootReport());
+			assertTrue(Jaguar.installed(TransactionalInterceptor.class));
+			int commits = Manager.commits.get();
+			assertThat(Jaguar.component(Repository1.class).save(), is(true));
+			assertThat(Manager.commits.get(), is(commits + 1));
+			assertNull(Manager.active.get());
+		} finally {
+			Jaguar.shutdown();
+		}
+	}
+	
+}
@@ -0,0 +1,43 @@
+package org.eiichiro.gig;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UTF8WriterTest {
+
+	@Before
+	public void setUp() throws Exception {
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+	
+	@Test
+	public void testWrite() throws Exception {
+		BufferPool pool = new BufferPool(1, 1, 4);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		UTF8Writer writer = new UTF8Writer(out, pool);
+		String string = "a\u00e9\u3042\ud83d\ude00b";
+		writer.write(string);
+		writer.append("xyz", 1, 2);
+		writer.append('!');
+		writer.close();
+		assertThat(out.toString("UTF-8"), is(string + "y!"));
+		assertThat(pool.acquire().capacity(), is(4));
+		assertThat(pool.hits(), is(1L));
+		
+		out = new ByteArrayOutputStream();
+		writer = new UTF8Writer(out, pool);
+		writer.write("\ud83d");
+		writer.close();
+		assertThat(out.toString("UTF-8"), is("?"));
+	}
+	
+}